@@ -0,0 +1,88 @@
+package com.theta360.opencvdetection;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Throughput of ClipEncoder with 1..N encoder threads, to compare with the preview frame rate.
+ * The frame rates are written to the log with the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ClipEncoderBenchmark {
+
+    private static final String TAG = "ClipEncoderBenchmark";
+    private static final int WIDTH = Constants.PREVIEW_SIZE_WIDTH;
+    private static final int HEIGHT = Constants.PREVIEW_SIZE_HEIGHT;
+    private static final int FRAMES = 120;
+
+    private Mat mYuv;
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        assertTrue(OpenCVLoader.initDebug());
+        mYuv = new Mat(HEIGHT + HEIGHT / 2, WIDTH, CvType.CV_8UC1);
+        Core.randn(mYuv, 128, 20);
+        mFile = File.createTempFile("clip", ".avi");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mYuv.release();
+        mFile.delete();
+    }
+
+    @Test
+    public void throughput() throws Exception {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            final CountDownLatch written = new CountDownLatch(1);
+            final int[] frameCount = new int[1];
+            ClipEncoder encoder = new ClipEncoder(WIDTH, HEIGHT, threads, Constants.CLIP_BUFFER_COUNT,
+                    Constants.CLIP_FRAME_RATE, Constants.CLIP_JPEG_QUALITY, new ClipEncoder.Listener() {
+                        @Override
+                        public void onClipWritten(String path, int count) {
+                            frameCount[0] = count;
+                            written.countDown();
+                        }
+
+                        @Override
+                        public void onError(String path, IOException e) {
+                            fail(e.toString());
+                        }
+                    });
+
+            long start = System.nanoTime();
+            assertTrue(encoder.start(mFile.getPath()));
+            for (int i = 0; i < FRAMES; i++) {
+                // as fast as the encoder takes them
+                while (!encoder.addFrame(mYuv, System.nanoTime())) {
+                    Thread.yield();
+                }
+            }
+            encoder.stop();
+            assertTrue(written.await(60, TimeUnit.SECONDS));
+            double fps = FRAMES * 1e9 / (System.nanoTime() - start);
+            Log.i(TAG, String.format("%d threads: %.1f fps, %d kB, %s", threads, fps,
+                    mFile.length() / 1024, encoder.dump()));
+            encoder.release();
+            assertEquals(FRAMES, frameCount[0]);
+        }
+    }
+}
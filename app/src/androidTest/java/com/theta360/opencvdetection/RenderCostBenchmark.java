@@ -0,0 +1,93 @@
+package com.theta360.opencvdetection;
+
+import android.graphics.Bitmap;
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.theta360.opencvdetection.frame.RgbaCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.android.Utils;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-frame cost of the headless mode against the rendering mode on the frame delivery thread.
+ * Headless only copies the frame for the pipeline; rendering also converts it to RGBA and copies
+ * it into the cache bitmap. Locking the canvas needs a visible surface and is not included, so the
+ * difference is a lower bound; the whole-run fps and CPU of both modes are logged by MainActivity.
+ * The times are written to the log with the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RenderCostBenchmark {
+
+    private static final String TAG = "RenderCostBenchmark";
+    private static final int WIDTH = Constants.PREVIEW_SIZE_WIDTH;
+    private static final int HEIGHT = Constants.PREVIEW_SIZE_HEIGHT;
+    private static final int WARM_UP_FRAMES = 30;
+    private static final int FRAMES = 300;
+
+    private Mat mYuv;
+    private Mat mCopy;
+    private RgbaCache mRgba;
+    private Bitmap mBitmap;
+
+    @Before
+    public void setUp() throws Exception {
+        assertTrue(OpenCVLoader.initDebug());
+        mYuv = new Mat(HEIGHT + HEIGHT / 2, WIDTH, CvType.CV_8UC1);
+        Core.randu(mYuv, 0, 256);
+        mCopy = new Mat(HEIGHT + HEIGHT / 2, WIDTH, CvType.CV_8UC1);
+        mRgba = new RgbaCache(mYuv, WIDTH, HEIGHT);
+        mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mBitmap.recycle();
+        mRgba.release();
+        mCopy.release();
+        mYuv.release();
+    }
+
+    @Test
+    public void headlessAgainstRendering() throws Exception {
+        double[] headless = measure(false);
+        double[] rendering = measure(true);
+        Log.i(TAG, String.format("headless: %.3f ms/frame, cpu %.3f ms/frame", headless[0], headless[1]));
+        Log.i(TAG, String.format("rendering: %.3f ms/frame, cpu %.3f ms/frame", rendering[0], rendering[1]));
+        Log.i(TAG, String.format("rendering costs %.3f ms and %.3f ms cpu more per frame",
+                rendering[0] - headless[0], rendering[1] - headless[1]));
+        assertTrue(rendering[1] >= headless[1]);
+    }
+
+    private double[] measure(boolean render) {
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            deliver(render);
+        }
+        long start = System.nanoTime();
+        long startCpu = Debug.threadCpuTimeNanos();
+        for (int i = 0; i < FRAMES; i++) {
+            deliver(render);
+        }
+        double wall = (System.nanoTime() - start) / 1e6 / FRAMES;
+        double cpu = (Debug.threadCpuTimeNanos() - startCpu) / 1e6 / FRAMES;
+        return new double[]{wall, cpu};
+    }
+
+    private void deliver(boolean render) {
+        mYuv.copyTo(mCopy);
+        if (render) {
+            mRgba.invalidate();
+            Utils.matToBitmap(mRgba.get(), mBitmap);
+        }
+    }
+}
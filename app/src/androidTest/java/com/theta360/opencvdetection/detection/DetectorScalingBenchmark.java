@@ -0,0 +1,101 @@
+package com.theta360.opencvdetection.detection;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.theta360.opencvdetection.Constants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scaling benchmark of TiledMovingAreaDetector with 1..N bands against MovingAreaDetector,
+ * and comparison of the box extraction by contours and by connected-component labeling.
+ * The times are written to the log with the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectorScalingBenchmark {
+
+    private static final String TAG = "DetectorScalingBenchmark";
+    private static final int WIDTH = Constants.PREVIEW_SIZE_WIDTH;
+    private static final int HEIGHT = Constants.PREVIEW_SIZE_HEIGHT;
+    private static final int FRAME_COUNT = 16;
+    private static final int WARM_UP_ROUNDS = 2;
+    private static final int ROUNDS = 10;
+
+    private Mat[] mFrames;
+    private RectBuffer mRects;
+
+    @Before
+    public void setUp() throws Exception {
+        assertTrue(OpenCVLoader.initDebug());
+        // a noisy background with an object crossing the frame diagonally, over the band seams
+        mFrames = new Mat[FRAME_COUNT];
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mFrames[i] = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+            Core.randn(mFrames[i], 80, 2);
+            int x = i * (WIDTH - 80) / FRAME_COUNT;
+            int y = i * (HEIGHT - 80) / FRAME_COUNT;
+            Imgproc.rectangle(mFrames[i], new Point(x, y), new Point(x + 80, y + 80), new Scalar(250), -1);
+        }
+        mRects = new RectBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Mat frame : mFrames) {
+            frame.release();
+        }
+    }
+
+    @Test
+    public void scaling() throws Exception {
+        MovingAreaDetector single = new MovingAreaDetector(WIDTH, HEIGHT);
+        double baseline = measure(single);
+        single.release();
+        Log.i(TAG, String.format("single: %.2f ms/frame", baseline));
+
+        int maxBands = Runtime.getRuntime().availableProcessors();
+        for (int bands = 1; bands <= maxBands; bands++) {
+            TiledMovingAreaDetector tiled = new TiledMovingAreaDetector(WIDTH, HEIGHT, bands, null);
+            double time = measure(tiled);
+            int count = tiled.detect(mFrames[FRAME_COUNT / 2], mRects);
+            tiled.release();
+            Log.i(TAG, String.format("tiled %d: %.2f ms/frame, speedup %.2f, %d areas",
+                    bands, time, baseline / time, count));
+        }
+    }
+
+    @Test
+    public void boxExtraction() throws Exception {
+        for (boolean useContours : new boolean[]{true, false}) {
+            MovingAreaDetector detector = new MovingAreaDetector(WIDTH, HEIGHT);
+            detector.setUseContours(useContours);
+            double time = measure(detector);
+            detector.release();
+            Log.i(TAG, String.format("%s: %.2f ms/frame", useContours ? "contours" : "labeling", time));
+        }
+    }
+
+    private double measure(AreaDetector detector) {
+        for (int i = 0; i < WARM_UP_ROUNDS * FRAME_COUNT; i++) {
+            detector.detect(mFrames[i % FRAME_COUNT], mRects);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS * FRAME_COUNT; i++) {
+            detector.detect(mFrames[i % FRAME_COUNT], mRects);
+        }
+        return (System.nanoTime() - start) / 1e6 / (ROUNDS * FRAME_COUNT);
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection;
+
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.hardware.Camera.PreviewCallback;
+import android.util.Log;
+
+import com.theta360.opencvdetection.frame.FrameBuffer;
+import com.theta360.opencvdetection.frame.FrameBufferPool;
+import com.theta360.opencvdetection.frame.FrameSource;
+
+/**
+ * Frame source delivering the live preview of the THETA camera.
+ * The THETA specific preview parameters are set in the open method.
+ * All buffers of the pool are queued to the camera, and a buffer released by the consumer is
+ * queued again, so the camera fills the next buffer while the consumer works on the previous one.
+ */
+public class CameraFrameSource implements FrameSource, PreviewCallback, FrameBufferPool.RecycleListener {
+
+    private static final int MAGIC_TEXTURE_ID = 10;
+    private static final String TAG = "Plug-in::CameraFrameSource";
+
+    private Camera mCamera;
+    private SurfaceTexture mSurfaceTexture;
+    private FrameBufferPool mBufferPool;
+    private boolean[] mQueued;
+    private int mFrameWidth;
+    private int mFrameHeight;
+    private FrameListener mListener;
+
+    @Override
+    public boolean open() {
+        Log.d(TAG, "Open camera");
+        mCamera = Camera.open();
+        if (mCamera == null)
+            return false;
+
+        try {
+            Camera.Parameters params = mCamera.getParameters();
+
+            // set the parameter of Live View and its frame size
+            Log.d(TAG, "Set preview size to " + Constants.PREVIEW_SIZE_WIDTH + "x" + Constants.PREVIEW_SIZE_HEIGHT);
+            params.setPreviewSize(Constants.PREVIEW_SIZE_WIDTH, Constants.PREVIEW_SIZE_HEIGHT);
+            params.set("RIC_SHOOTING_MODE", Constants.RIC_MOVIE_PREVIEW);
+
+            mCamera.setParameters(params);
+            params = mCamera.getParameters();
+
+            mFrameWidth = params.getPreviewSize().width;
+            mFrameHeight = params.getPreviewSize().height;
+
+            int size = mFrameWidth * mFrameHeight;
+            size = size * ImageFormat.getBitsPerPixel(params.getPreviewFormat()) / 8;
+            mBufferPool = new FrameBufferPool(Constants.FRAME_BUFFER_COUNT, size);
+            mQueued = new boolean[Constants.FRAME_BUFFER_COUNT];
+            for (int i = 0; i < Constants.FRAME_BUFFER_COUNT; i++) {
+                mBufferPool.acquire();
+            }
+            mBufferPool.setRecycleListener(this);
+        } catch (Exception e) {
+            e.printStackTrace();
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int getFrameWidth() {
+        return mFrameWidth;
+    }
+
+    @Override
+    public int getFrameHeight() {
+        return mFrameHeight;
+    }
+
+    @Override
+    public FrameBufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    @Override
+    public void start(FrameListener listener) {
+        mListener = listener;
+        try {
+            resumePreviewCallback();
+
+            mSurfaceTexture = new SurfaceTexture(MAGIC_TEXTURE_ID);
+            mCamera.setPreviewTexture(mSurfaceTexture);
+
+            /* Finally we are ready to start the preview */
+            Log.d(TAG, "startPreview");
+            mCamera.startPreview();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mCamera != null) {
+            mCamera.stopPreview();
+            mCamera.setPreviewCallback(null);
+
+            mCamera.release();
+        }
+        mCamera = null;
+        mListener = null;
+    }
+
+    /**
+     * Acquire the opened camera, e.g. to switch it into still capture mode
+     * @return Camera, or null if the source is closed
+     */
+    public Camera getCamera() {
+        return mCamera;
+    }
+
+    /**
+     * Restore frame delivery after the preview callback was removed for still capture
+     */
+    public synchronized void resumePreviewCallback() {
+        if (mCamera == null)
+            return;
+
+        // removing the callback cleared the camera's buffer queue; queue the buffers the consumer does not hold
+        for (int i = 0; i < mBufferPool.getCapacity(); i++) {
+            FrameBuffer buffer = mBufferPool.get(i);
+            mQueued[i] = mBufferPool.isOwnedByProducer(buffer);
+            if (mQueued[i])
+                mCamera.addCallbackBuffer(buffer.getData());
+        }
+        mCamera.setPreviewCallbackWithBuffer(this);
+    }
+
+    @Override
+    public synchronized void onRecycle(FrameBuffer buffer) {
+        if (mCamera != null && !mQueued[buffer.getIndex()]) {
+            mQueued[buffer.getIndex()] = true;
+            mCamera.addCallbackBuffer(buffer.getData());
+        }
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        FrameBuffer frame = mBufferPool.find(data);
+        if (frame == null)
+            return;
+
+        synchronized (this) {
+            mQueued[frame.getIndex()] = false;
+        }
+        frame.setTimestamp(System.nanoTime());
+        mBufferPool.handOver(frame);
+
+        FrameListener listener = mListener;
+        if (listener != null)
+            listener.onFrame(frame);
+        else
+            frame.release();
+    }
+}
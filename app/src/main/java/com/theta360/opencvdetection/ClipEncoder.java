@@ -0,0 +1,423 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection;
+
+import android.util.Log;
+
+import com.theta360.opencvdetection.metrics.Metrics;
+import com.theta360.opencvdetection.storage.AviMjpegWriter;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Encoder of event clips from preview frames into Motion JPEG AVI files
+ *
+ * The frame delivery thread copies each NV21 frame into a pooled slot and returns; a pool of
+ * encoder threads converts and JPEG-encodes the slots in parallel, and one appender thread writes
+ * them in capture order to a single AVI file, so an event produces one sequential write. A frame
+ * that finds no free slot is dropped and counted. One clip is written at a time.
+ */
+class ClipEncoder {
+
+    /**
+     * Receiver of the results, called on the appender thread
+     */
+    interface Listener {
+        /**
+         * Called when a clip is written and synced
+         * @param path Path of the clip
+         * @param frameCount Number of frames in the clip
+         */
+        void onClipWritten(String path, int frameCount);
+
+        /**
+         * Called when a clip cannot be written
+         * @param path Path of the clip
+         * @param e Cause
+         */
+        void onError(String path, IOException e);
+    }
+
+    private static final String TAG = "Plug-in::ClipEncoder";
+
+    private static final int IDLE = 0;
+    private static final int RECORDING = 1;
+    private static final int FINISHING = 2;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final double mFrameRate;
+    private final Listener mListener;
+    private final MatOfInt mJpegParams;
+    private final Slot[] mSlots;
+    private final Slot[] mEncoded;
+    private final ArrayDeque<Slot> mFreeSlots;
+    private final ArrayBlockingQueue<Slot> mEncodeQueue;
+    private final Slot mStop;
+    private final Thread[] mEncoderThreads;
+    private final Thread mAppenderThread;
+
+    private final Object mLock = new Object();
+    private int mState = IDLE;
+    private boolean mQuit;
+    private String mPath;
+    private long mNextSeq;
+    private long mFirstSeq;
+    private long mEndSeq;
+    private long mClipCount;
+    private long mFrameCount;
+    private long mDroppedCount;
+    private long mFailedCount;
+    private long mEncodeNanos;
+    private volatile Metrics mMetrics;
+
+    /**
+     * Constructor, starting the threads
+     *
+     * @param width Frame width
+     * @param height Frame height
+     * @param threadCount Number of encoder threads
+     * @param bufferCount Number of frames that can be waiting, encoding or appending at the same time
+     * @param frameRate Nominal frames per second, used when the capture times give no rate
+     * @param jpegQuality JPEG quality between 0 and 100
+     * @param listener Receiver of the results
+     */
+    ClipEncoder(int width, int height, int threadCount, int bufferCount, double frameRate, int jpegQuality,
+                Listener listener) {
+        mWidth = width;
+        mHeight = height;
+        mFrameRate = frameRate;
+        mListener = listener;
+        mJpegParams = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, jpegQuality);
+        mSlots = new Slot[bufferCount];
+        mEncoded = new Slot[bufferCount];
+        mFreeSlots = new ArrayDeque<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            mSlots[i] = new Slot(width, height);
+            mFreeSlots.add(mSlots[i]);
+        }
+        mEncodeQueue = new ArrayBlockingQueue<>(bufferCount + threadCount);
+        mStop = new Slot(0, 0);
+
+        mEncoderThreads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            mEncoderThreads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    encodeLoop();
+                }
+            }, "ClipEncoder-" + i);
+            mEncoderThreads[i].start();
+        }
+        mAppenderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                appendLoop();
+            }
+        }, "ClipAppender");
+        mAppenderThread.start();
+    }
+
+    /**
+     * Set the receiver of the encoding latencies and the drops
+     * @param metrics Metrics to record into, or null to record nothing
+     */
+    void setMetrics(Metrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Start a clip; the frames added from now on are written to it
+     * @param path Path of the AVI file
+     * @return true if started, false if the previous clip is still being written
+     */
+    boolean start(String path) {
+        synchronized (mLock) {
+            if (mState != IDLE || mQuit) {
+                return false;
+            }
+            mPath = path;
+            mFirstSeq = mNextSeq;
+            mEndSeq = -1;
+            mState = RECORDING;
+            mLock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Check whether a clip takes frames
+     * @return true between start and stop
+     */
+    boolean isRecording() {
+        synchronized (mLock) {
+            return mState == RECORDING;
+        }
+    }
+
+    /**
+     * Add a frame to the clip without waiting for its encoding
+     * @param yuv NV21 frame, copied before returning
+     * @param timestamp Capture time in nanoseconds
+     * @return true if added, false if no clip is recording or all slots are in use
+     */
+    boolean addFrame(Mat yuv, long timestamp) {
+        Slot slot;
+        synchronized (mLock) {
+            if (mState != RECORDING) {
+                return false;
+            }
+            slot = mFreeSlots.poll();
+            if (slot == null) {
+                mDroppedCount++;
+                Metrics metrics = mMetrics;
+                if (metrics != null) {
+                    metrics.drop(Metrics.Drop.CLIP);
+                }
+                return false;
+            }
+            slot.mSeq = mNextSeq++;
+        }
+        yuv.copyTo(slot.mYuv);
+        slot.mTimestamp = timestamp;
+        mEncodeQueue.add(slot);
+        return true;
+    }
+
+    /**
+     * End the clip after the frames added so far; the file is finished on the appender thread
+     */
+    void stop() {
+        synchronized (mLock) {
+            if (mState == RECORDING) {
+                mEndSeq = mNextSeq;
+                mState = FINISHING;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Finish the current clip, stop the threads and release the slots
+     */
+    void release() {
+        stop();
+        synchronized (mLock) {
+            mQuit = true;
+            mLock.notifyAll();
+        }
+        try {
+            mAppenderThread.join();
+            for (int i = 0; i < mEncoderThreads.length; i++) {
+                mEncodeQueue.add(mStop);
+            }
+            for (Thread thread : mEncoderThreads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (Slot slot : mSlots) {
+            slot.release();
+        }
+        mJpegParams.release();
+    }
+
+    /**
+     * Describe the counters in one line
+     * @return Clip, frame, drop and encoding failure counters and the average encoding time
+     */
+    String dump() {
+        synchronized (mLock) {
+            return String.format("clips=%d frames=%d dropped=%d failed=%d encode=%.2fms/frame", mClipCount,
+                    mFrameCount, mDroppedCount, mFailedCount, mFrameCount > 0 ? mEncodeNanos / 1e6 / mFrameCount : 0);
+        }
+    }
+
+    private void encodeLoop() {
+        while (true) {
+            Slot slot;
+            try {
+                slot = mEncodeQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (slot == mStop) {
+                return;
+            }
+            long start = System.nanoTime();
+            boolean failed = false;
+            try {
+                slot.encode(mJpegParams);
+            } catch (RuntimeException e) {
+                // the slot is still published, so that the appender does not wait for it
+                Log.e(TAG, "Cannot encode frame " + slot.mSeq, e);
+                slot.mLength = 0;
+                failed = true;
+            }
+            long time = System.nanoTime() - start;
+            Metrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.record(Metrics.Stage.CLIP_ENCODE, time);
+            }
+            synchronized (mLock) {
+                mEncodeNanos += time;
+                if (failed) {
+                    mFailedCount++;
+                }
+                // at most bufferCount frames are in flight, so their sequence numbers map to distinct entries
+                mEncoded[(int) (slot.mSeq % mEncoded.length)] = slot;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    private void appendLoop() {
+        while (true) {
+            String path;
+            long seq;
+            synchronized (mLock) {
+                while (mState == IDLE && !mQuit) {
+                    waitLock();
+                }
+                if (mState == IDLE) {
+                    return;
+                }
+                path = mPath;
+                seq = mFirstSeq;
+            }
+
+            AviMjpegWriter writer = null;
+            IOException error = null;
+            try {
+                writer = new AviMjpegWriter(new File(path), mWidth, mHeight, mFrameRate);
+            } catch (IOException e) {
+                error = e;
+            }
+            long firstTimestamp = 0;
+            long lastTimestamp = 0;
+
+            while (true) {
+                Slot slot;
+                synchronized (mLock) {
+                    int index = (int) (seq % mEncoded.length);
+                    while ((mEncoded[index] == null || mEncoded[index].mSeq != seq) && mEndSeq != seq) {
+                        waitLock();
+                    }
+                    if (mEndSeq == seq) {
+                        break;
+                    }
+                    slot = mEncoded[index];
+                    mEncoded[index] = null;
+                }
+                if (error == null && slot.mLength > 0) {
+                    try {
+                        writer.addFrame(slot.mBytes, slot.mLength);
+                        if (writer.getFrameCount() == 1) {
+                            firstTimestamp = slot.mTimestamp;
+                        }
+                        lastTimestamp = slot.mTimestamp;
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+                synchronized (mLock) {
+                    mFreeSlots.add(slot);
+                }
+                seq++;
+            }
+
+            int frameCount = writer != null ? writer.getFrameCount() : 0;
+            if (writer != null) {
+                if (frameCount > 1 && lastTimestamp > firstTimestamp) {
+                    writer.setFrameRate((frameCount - 1) * 1e9 / (lastTimestamp - firstTimestamp));
+                }
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+            if (error != null) {
+                mListener.onError(path, error);
+            } else {
+                mListener.onClipWritten(path, frameCount);
+            }
+            synchronized (mLock) {
+                mClipCount++;
+                mFrameCount += frameCount;
+                mState = IDLE;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    private void waitLock() {
+        try {
+            mLock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Slot {
+        final Mat mYuv;
+        private final Mat mBgr = new Mat();
+        private final MatOfByte mJpeg = new MatOfByte();
+        byte[] mBytes = new byte[0];
+        int mLength;
+        long mSeq;
+        long mTimestamp;
+
+        Slot(int width, int height) {
+            mYuv = new Mat(height + (height / 2), width, CvType.CV_8UC1);
+        }
+
+        void encode(MatOfInt params) {
+            Imgproc.cvtColor(mYuv, mBgr, Imgproc.COLOR_YUV2BGR_NV21);
+            if (!Imgcodecs.imencode(".jpg", mBgr, mJpeg, params)) {
+                // skipped by the appender
+                mLength = 0;
+                return;
+            }
+            mLength = (int) mJpeg.total();
+            if (mBytes.length < mLength) {
+                mBytes = new byte[mLength];
+            }
+            mJpeg.get(0, 0, mBytes);
+        }
+
+        void release() {
+            mJpeg.release();
+            mBgr.release();
+            mYuv.release();
+        }
+    }
+}
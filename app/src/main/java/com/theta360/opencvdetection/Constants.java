@@ -2,6 +2,9 @@ package com.theta360.opencvdetection;
 
 import android.os.Environment;
 
+import com.theta360.opencvdetection.detection.BackgroundModelType;
+import com.theta360.opencvdetection.frame.FrameRingBuffer;
+
 public final class Constants {
     private Constants() {}
 
@@ -9,6 +12,18 @@ public final class Constants {
     public static final String DCIM = Environment.getExternalStoragePublicDirectory(
             Environment.DIRECTORY_DCIM).getPath();
     public static final String PLUGIN_DIRECTORY = DCIM + "/MotionDetector";
+    // recorded NV21 preview frames; if this file exists, it is replayed instead of the camera preview
+    public static final String REPLAY_FILE = PLUGIN_DIRECTORY + "/replay.nv21";
+    // frame rate of the replay (0: as fast as possible)
+    public static final double REPLAY_FRAME_RATE = 0;
+    // generated frames with moving objects instead of the camera preview, for load tests.
+    // Overridden at startup by the boolean intent extra SYNTHETIC_EXTRA, e.g. am start --ez synthetic true
+    public static final boolean SYNTHETIC_FRAMES = false;
+    public static final String SYNTHETIC_EXTRA = "synthetic";
+    // number of moving objects, sensor noise in gray levels, and frame rate (0: as fast as possible)
+    public static final int SYNTHETIC_OBJECT_COUNT = 4;
+    public static final int SYNTHETIC_NOISE = 2;
+    public static final double SYNTHETIC_FRAME_RATE = 30;
 
     // Size
     // still picture size
@@ -39,8 +54,77 @@ public final class Constants {
 
 
     // Image Processing parameters
-    public static final int THRESHOLD_BINARIZATION = 3;
-    public static final int APPROXIMATED_ACCURACY_PARAM = 40;
-    public static final double THRESHOLD_AREA_SIZE = 50.0;
+    // the parameters of the detectors themselves are in DetectionConstants of the detection core
     public static final int SHOOTING_INTERVAL = 5000;
+    // detection region as pitch limits in degrees of the equirectangular frame;
+    // the camera body is around the nadir, and -90 or 90 disables the limit
+    public static final double DETECTION_MIN_PITCH = -60;
+    public static final double DETECTION_MAX_PITCH = 90;
+    // number of horizontal bands detected in parallel, 1 runs the single detector
+    public static final int DETECTION_BAND_COUNT = 1;
+    // downscaling factor of the detection (1, 2 or 4); the boxes are refined at full resolution
+    public static final int DETECTION_SCALE = 1;
+    // background model
+    public static final BackgroundModelType BACKGROUND_MODEL = BackgroundModelType.KNN;
+
+
+    // Frame buffers
+    // number of preview buffers shared by the camera and the frame consumer
+    public static final int FRAME_BUFFER_COUNT = 3;
+
+    // Pipeline parameters
+    // number of frames circulating in the pipeline
+    public static final int PIPELINE_FRAME_COUNT = 4;
+    // capacity of the queue in front of each stage
+    public static final int DETECT_QUEUE_CAPACITY = 2;
+    public static final int ANNOTATE_QUEUE_CAPACITY = 1;
+    public static final int RENDER_QUEUE_CAPACITY = 1;
+    // run without drawing the preview; frames are converted to RGBA only to save moving areas.
+    // Overridden at startup by the boolean intent extra HEADLESS_EXTRA, e.g. am start --ez headless true
+    public static final boolean HEADLESS = false;
+    public static final String HEADLESS_EXTRA = "headless";
+
+
+    // Frame scheduler parameters
+    // time without moving areas after which most frames are skipped
+    public static final int SCHEDULER_IDLE_AFTER = 10000;
+    // maximum time between two full detections while idle
+    public static final int SCHEDULER_MAX_LATENCY = 2000;
+    // number of frames between two change checks while idle
+    public static final int SCHEDULER_CHECK_INTERVAL = 3;
+
+    // Change pre-filter parameters
+    // while the scheduler processes every frame, run the detector only on changed frames, see
+    // DetectionConstants.PREFILTER_REFRESH_INTERVAL and PREFILTER_HOLD_FRAMES
+    public static final boolean PREFILTER_ENABLED = true;
+
+
+    // File writer parameters
+    // number of files that can wait for the writer, and number of writer threads
+    public static final int WRITER_QUEUE_CAPACITY = 4;
+    public static final int WRITER_THREAD_COUNT = 1;
+    // number of files synced together, and the longest time a file waits for its sync
+    public static final int WRITER_SYNC_BATCH = 4;
+    public static final int WRITER_SYNC_INTERVAL = 1000;
+    // number of detection windows that can be waiting or encoding at the same time
+    public static final int WINDOW_BUFFER_COUNT = 2;
+    // keep the recent preview frames and save them when an event is detected; NV21 clips can be replayed.
+    // Off by default: it copies every delivered frame, also the ones the scheduler skips
+    public static final boolean PRE_EVENT_ENABLED = false;
+    public static final FrameRingBuffer.Format PRE_EVENT_FORMAT = FrameRingBuffer.Format.NV21;
+    // memory of the recent frames in bytes; 12 MB hold 40 NV21 frames of 640x320
+    public static final long PRE_EVENT_MEMORY = 12L * 1024 * 1024;
+    // record a Motion JPEG clip of the preview on an event instead of taking a still, so detection goes on
+    public static final boolean EVENT_CLIP = false;
+    // length of a clip in milliseconds, shorter than the shooting interval
+    public static final int CLIP_DURATION = 4000;
+    // number of JPEG encoder threads, and number of frames in flight between capture and file
+    public static final int CLIP_THREAD_COUNT = 2;
+    public static final int CLIP_BUFFER_COUNT = 6;
+    // nominal frame rate of a clip, replaced by the rate measured from the capture times
+    public static final double CLIP_FRAME_RATE = 15;
+    public static final int CLIP_JPEG_QUALITY = 80;
+
+    // interval of logging the pipeline statistics
+    public static final int PIPELINE_STATS_INTERVAL = 10000;
 }
@@ -0,0 +1,50 @@
+package com.theta360.opencvdetection;
+
+import com.theta360.opencvdetection.detection.DetectionConstants;
+import com.theta360.opencvdetection.detection.RectBuffer;
+import com.theta360.opencvdetection.frame.RgbaCache;
+import com.theta360.opencvdetection.metrics.Metrics;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * A preview frame travelling through the detection pipeline.
+ * The NV21 data is copied from the camera frame so that the camera can reuse its buffers
+ * while the later stages are still working on this frame. The RGBA image is converted only
+ * when a later stage asks for it.
+ */
+class DetectionFrame {
+
+    final Mat yuv;
+    final Mat gray;
+    private final RgbaCache mRgba;
+    final RectBuffer movingAreas = new RectBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+
+    DetectionFrame(int width, int height, Metrics metrics) {
+        yuv = new Mat(height + (height / 2), width, CvType.CV_8UC1);
+        gray = yuv.submat(0, height, 0, width);
+        mRgba = new RgbaCache(yuv, width, height);
+        mRgba.setMetrics(metrics);
+    }
+
+    void set(ThetaView.ThetaCameraFrame frame) {
+        frame.yuv().copyTo(yuv);
+        mRgba.invalidate();
+        movingAreas.clear();
+    }
+
+    /**
+     * Acquire the RGBA image, converted at most once for this frame
+     * @return RGBA image; annotations drawn on it are kept until the next set
+     */
+    Mat rgba() {
+        return mRgba.get();
+    }
+
+    void release() {
+        mRgba.release();
+        gray.release();
+        yuv.release();
+    }
+}
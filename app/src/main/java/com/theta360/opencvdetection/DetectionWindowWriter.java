@@ -0,0 +1,156 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection;
+
+import com.theta360.opencvdetection.metrics.Metrics;
+import com.theta360.opencvdetection.storage.AsyncFileWriter;
+import com.theta360.opencvdetection.storage.WriteJob;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Saver of annotated detection windows as JPEG files
+ *
+ * The RGBA frame is copied into a pooled Mat and handed to an {@link AsyncFileWriter}; the colour
+ * conversion and the JPEG encoding run on the writer thread. When all pooled Mats are in use the
+ * window is dropped and counted, so a slow storage never holds up the pipeline.
+ */
+class DetectionWindowWriter {
+
+    private final AsyncFileWriter mWriter;
+    private final WindowJob[] mJobs;
+    private final ArrayBlockingQueue<WindowJob> mFreeJobs;
+    private long mDroppedCount;
+    private volatile Metrics mMetrics;
+
+    /**
+     * Constructor
+     *
+     * @param writer Writer of the files
+     * @param bufferCount Number of windows that can be waiting or encoding at the same time
+     * @param width Frame width
+     * @param height Frame height
+     */
+    DetectionWindowWriter(AsyncFileWriter writer, int bufferCount, int width, int height) {
+        mWriter = writer;
+        mJobs = new WindowJob[bufferCount];
+        mFreeJobs = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            mJobs[i] = new WindowJob(width, height);
+            mFreeJobs.add(mJobs[i]);
+        }
+    }
+
+    /**
+     * Queue a window without waiting
+     * @param rgba Annotated RGBA frame, copied before returning
+     * @param path Path of the JPEG file
+     * @return true if queued, false if dropped
+     */
+    boolean save(Mat rgba, String path) {
+        WindowJob job = mFreeJobs.poll();
+        if (job != null) {
+            rgba.copyTo(job.mRgba);
+            if (mWriter.submit(path, job)) {
+                return true;
+            }
+            job.recycle();
+        }
+        synchronized (this) {
+            mDroppedCount++;
+        }
+        Metrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.drop(Metrics.Drop.WINDOW);
+        }
+        return false;
+    }
+
+    /**
+     * Set the receiver of the encoding latencies and the drops
+     * @param metrics Metrics to record into, or null to record nothing
+     */
+    void setMetrics(Metrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Acquire number of dropped windows
+     * @return Number of windows dropped because no buffer or queue slot was free
+     */
+    synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * Release the pooled Mats. The writer must be closed before, so that no job is in use.
+     */
+    void release() {
+        for (WindowJob job : mJobs) {
+            job.release();
+        }
+    }
+
+    private class WindowJob implements WriteJob {
+        final Mat mRgba;
+        private final Mat mBgr = new Mat();
+        private final MatOfByte mJpeg = new MatOfByte();
+        private byte[] mBytes = new byte[0];
+
+        WindowJob(int width, int height) {
+            mRgba = new Mat(height, width, CvType.CV_8UC4);
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            long start = System.nanoTime();
+            Imgproc.cvtColor(mRgba, mBgr, Imgproc.COLOR_RGBA2BGR);
+            if (!Imgcodecs.imencode(".jpg", mBgr, mJpeg)) {
+                throw new IOException("JPEG encoding failed");
+            }
+            int length = (int) mJpeg.total();
+            if (mBytes.length < length) {
+                mBytes = new byte[length];
+            }
+            mJpeg.get(0, 0, mBytes);
+            out.write(mBytes, 0, length);
+            Metrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.record(Metrics.Stage.JPEG_WRITE, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void recycle() {
+            mFreeJobs.add(this);
+        }
+
+        void release() {
+            mJpeg.release();
+            mBgr.release();
+            mRgba.release();
+        }
+    }
+}
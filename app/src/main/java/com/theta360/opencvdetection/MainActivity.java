@@ -19,33 +19,48 @@ package com.theta360.opencvdetection;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Process;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.SurfaceView;
 
+import com.theta360.opencvdetection.detection.AreaDetector;
+import com.theta360.opencvdetection.detection.DetectionConstants;
+import com.theta360.opencvdetection.detection.DetectionMask;
+import com.theta360.opencvdetection.detection.FrameChangeCheck;
+import com.theta360.opencvdetection.detection.PreFilteredAreaDetector;
+import com.theta360.opencvdetection.detection.PyramidMovingAreaDetector;
+import com.theta360.opencvdetection.detection.RectBuffer;
+import com.theta360.opencvdetection.detection.TiledMovingAreaDetector;
+import com.theta360.opencvdetection.frame.FrameBufferPool;
+import com.theta360.opencvdetection.frame.FrameRingBuffer;
+import com.theta360.opencvdetection.frame.ReplayFrameSource;
+import com.theta360.opencvdetection.metrics.Metrics;
+import com.theta360.opencvdetection.pipeline.DropPolicy;
+import com.theta360.opencvdetection.pipeline.FramePipeline;
+import com.theta360.opencvdetection.pipeline.FrameScheduler;
+import com.theta360.opencvdetection.pipeline.RunMeter;
+import com.theta360.opencvdetection.storage.AsyncFileWriter;
+import com.theta360.opencvdetection.synthetic.SyntheticFrameGenerator;
+import com.theta360.opencvdetection.synthetic.SyntheticFrameSource;
 import com.theta360.pluginlibrary.activity.PluginActivity;
 import com.theta360.pluginlibrary.callback.KeyCallback;
 import com.theta360.pluginlibrary.receiver.KeyReceiver;
 
 import org.opencv.android.BaseLoaderCallback;
+import org.opencv.android.CameraBridgeViewBase;
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewListener2;
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
 import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
-import org.opencv.core.Rect;
+import org.opencv.core.Point;
 import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.video.BackgroundSubtractor;
-import org.opencv.video.Video;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -58,12 +73,30 @@ public class MainActivity extends PluginActivity implements CvCameraViewListener
     private ThetaController mOpenCvCameraView;
     private boolean isEnded = false;
 
-    private Mat mOutputFrame;
-    private BackgroundSubtractor mBackgroundSubtractor;
-    private Mat mMask;
-    private Mat mStructuringElement;
+    private static final Scalar BOX_COLOR = new Scalar(0, 255, 0);
+
+    private AreaDetector mMovingAreaDetector;
+    private PyramidMovingAreaDetector mPyramidDetector;
+    private PreFilteredAreaDetector mPreFilter;
+    private final Point mBoxTopLeft = new Point();
+    private final Point mBoxBottomRight = new Point();
     private long mStartProcessingTime;
 
+    private List<DetectionFrame> mDetectionFrames;
+    private FramePipeline<DetectionFrame> mPipeline;
+    private FrameScheduler mScheduler;
+    private FrameChangeCheck mChangeCheck;
+    private long mLastStatsTime;
+    private boolean mHeadless;
+    private RunMeter mRunMeter;
+    private AsyncFileWriter mFileWriter;
+    private DetectionWindowWriter mWindowWriter;
+    private FrameRingBuffer mPreEventFrames;
+    private PreEventWriter mPreEventWriter;
+    private ClipEncoder mClipEncoder;
+    private volatile long mClipStartTime;
+    private final Metrics mMetrics = new Metrics();
+
 
     private BaseLoaderCallback mLoaderCallback = new BaseLoaderCallback(this) {
         @Override
@@ -95,7 +128,11 @@ public class MainActivity extends PluginActivity implements CvCameraViewListener
 
             @Override
             public void onKeyUp(int keyCode, KeyEvent keyEvent) {
-
+                if (keyCode == KeyReceiver.KEYCODE_WLAN_ON_OFF) {
+                    switchDetectionScale();
+                } else if (keyCode == KeyReceiver.KEYCODE_CAMERA) {
+                    Log.d(TAG, "Metrics:\n" + mMetrics.dump());
+                }
             }
 
             @Override
@@ -115,6 +152,30 @@ public class MainActivity extends PluginActivity implements CvCameraViewListener
         mOpenCvCameraView.setVisibility(SurfaceView.VISIBLE);
         mOpenCvCameraView.setCvCameraViewListener(this);
         mOpenCvCameraView.setCFCallback(this);
+
+        mHeadless = getIntent().getBooleanExtra(Constants.HEADLESS_EXTRA, Constants.HEADLESS);
+        mOpenCvCameraView.setHeadless(mHeadless);
+        mOpenCvCameraView.setMetrics(mMetrics);
+        mOpenCvCameraView.setDrawListener(new CameraBridgeViewBase.DrawListener() {
+            @Override
+            public void onFrameDrawn(long uploadNanos, long drawNanos) {
+                mMetrics.record(Metrics.Stage.BITMAP_UPLOAD, uploadNanos);
+                mMetrics.record(Metrics.Stage.CANVAS_DRAW, drawNanos);
+            }
+        });
+        Log.d(TAG, mHeadless ? "Headless mode" : "Rendering mode");
+
+        File replayFile = new File(Constants.REPLAY_FILE);
+        if (getIntent().getBooleanExtra(Constants.SYNTHETIC_EXTRA, Constants.SYNTHETIC_FRAMES)) {
+            Log.d(TAG, "Synthetic frames with " + Constants.SYNTHETIC_OBJECT_COUNT + " objects and one crossing the seam");
+            mOpenCvCameraView.setFrameSource(createSyntheticSource());
+        } else if (replayFile.exists()) {
+            Log.d(TAG, "Replay frames from " + replayFile);
+            ReplayFrameSource replaySource = new ReplayFrameSource(replayFile,
+                    Constants.PREVIEW_SIZE_WIDTH, Constants.PREVIEW_SIZE_HEIGHT);
+            replaySource.setFrameRate(Constants.REPLAY_FRAME_RATE);
+            mOpenCvCameraView.setFrameSource(replaySource);
+        }
     }
 
     @Override
@@ -145,33 +206,224 @@ public class MainActivity extends PluginActivity implements CvCameraViewListener
     }
 
     public void onCameraViewStarted(int width, int height) {
-        mOutputFrame = new Mat(height, width, CvType.CV_8UC3);
-        mBackgroundSubtractor = Video.createBackgroundSubtractorKNN();
-        mMask = new Mat(height, width, CvType.CV_8UC1);
-        mStructuringElement = Imgproc.getStructuringElement(Imgproc.CV_SHAPE_ELLIPSE, new Size(3,3));
+        DetectionMask detectionMask = new DetectionMask(width, height);
+        detectionMask.excludeBelowPitch(Constants.DETECTION_MIN_PITCH);
+        detectionMask.excludeAbovePitch(Constants.DETECTION_MAX_PITCH);
+        mPyramidDetector = null;
+        mPreFilter = null;
+        if (Constants.DETECTION_BAND_COUNT > 1) {
+            mMovingAreaDetector = new TiledMovingAreaDetector(width, height,
+                    Constants.DETECTION_BAND_COUNT, detectionMask, Constants.BACKGROUND_MODEL.factory());
+        } else {
+            mPyramidDetector = new PyramidMovingAreaDetector(width, height,
+                    Constants.DETECTION_SCALE, detectionMask, Constants.BACKGROUND_MODEL.factory());
+            mMovingAreaDetector = mPyramidDetector;
+        }
+        mMovingAreaDetector.setMetrics(mMetrics);
+        if (Constants.PREFILTER_ENABLED) {
+            // the scheduler gates the idle periods, the pre-filter the unchanged frames of the active ones
+            mPreFilter = new PreFilteredAreaDetector(mMovingAreaDetector,
+                    width / DetectionConstants.SIGNATURE_BLOCK_SIZE, height / DetectionConstants.SIGNATURE_BLOCK_SIZE,
+                    DetectionConstants.SIGNATURE_THRESHOLD, DetectionConstants.PREFILTER_REFRESH_INTERVAL,
+                    DetectionConstants.PREFILTER_HOLD_FRAMES);
+            mMovingAreaDetector = mPreFilter;
+        }
+        Log.d(TAG, String.format("Detection region: %s, %.0f%% of the frame",
+                mMovingAreaDetector.getActiveRect(), detectionMask.getActiveRatio() * 100));
+        detectionMask.release();
 
         mStartProcessingTime = System.currentTimeMillis();
+
+        mScheduler = new FrameScheduler(Constants.SCHEDULER_IDLE_AFTER, Constants.SCHEDULER_MAX_LATENCY,
+                Constants.SCHEDULER_CHECK_INTERVAL);
+        mChangeCheck = new FrameChangeCheck(width / DetectionConstants.SIGNATURE_BLOCK_SIZE,
+                height / DetectionConstants.SIGNATURE_BLOCK_SIZE, DetectionConstants.SIGNATURE_THRESHOLD);
+
+        // capture (camera thread) -> detect -> annotate -> render, without render in headless mode
+        mDetectionFrames = new ArrayList<>();
+        for (int i = 0; i < Constants.PIPELINE_FRAME_COUNT; i++) {
+            mDetectionFrames.add(new DetectionFrame(width, height, mMetrics));
+        }
+        mPipeline = new FramePipeline<>(mDetectionFrames);
+        mPipeline.addStage("detect", Constants.DETECT_QUEUE_CAPACITY, DropPolicy.DROP_OLDEST,
+                new FramePipeline.StageHandler<DetectionFrame>() {
+                    @Override
+                    public boolean process(DetectionFrame frame) {
+                        long start = System.nanoTime();
+                        int count = mMovingAreaDetector.detect(frame.gray, frame.movingAreas);
+                        long end = System.nanoTime();
+                        mMetrics.record(Metrics.Stage.DETECTION, end - start);
+                        mScheduler.onProcessed(end, end - start, count);
+                        return true;
+                    }
+                });
+        mPipeline.addStage("annotate", Constants.ANNOTATE_QUEUE_CAPACITY, DropPolicy.DROP_OLDEST,
+                new FramePipeline.StageHandler<DetectionFrame>() {
+                    @Override
+                    public boolean process(DetectionFrame frame) {
+                        annotateFrame(frame);
+                        // without rendering, the frame is done once its moving areas are saved
+                        return !mHeadless;
+                    }
+                });
+        if (!mHeadless) {
+            mPipeline.addStage("render", Constants.RENDER_QUEUE_CAPACITY, DropPolicy.DROP_OLDEST,
+                    new FramePipeline.StageHandler<DetectionFrame>() {
+                        @Override
+                        public boolean process(DetectionFrame frame) {
+                            mOpenCvCameraView.drawFrame(frame.rgba());
+                            return true;
+                        }
+                    });
+        }
+        mPipeline.start();
+        mLastStatsTime = System.currentTimeMillis();
+        mRunMeter = new RunMeter(mHeadless ? "headless" : "rendering");
+        mRunMeter.start(System.nanoTime(), Process.getElapsedCpuTime());
+
+        // files are encoded and written off the pipeline; they are registered once synced
+        File outDir = new File(Constants.PLUGIN_DIRECTORY);
+        if (!outDir.exists()) {
+            outDir.mkdirs();
+        }
+        mFileWriter = new AsyncFileWriter(Constants.WRITER_QUEUE_CAPACITY, Constants.WRITER_THREAD_COUNT,
+                Constants.WRITER_SYNC_BATCH, Constants.WRITER_SYNC_INTERVAL, new AsyncFileWriter.Listener() {
+                    @Override
+                    public void onWritten(String path) {
+                        registerFile(path);
+                    }
+
+                    @Override
+                    public void onError(String path, IOException e) {
+                        Log.e(TAG, "Cannot write " + path, e);
+                    }
+                });
+        mWindowWriter = new DetectionWindowWriter(mFileWriter, Constants.WINDOW_BUFFER_COUNT, width, height);
+        mWindowWriter.setMetrics(mMetrics);
+        mOpenCvCameraView.setFileWriter(mFileWriter);
+        mPreEventFrames = null;
+        mPreEventWriter = null;
+        if (Constants.PRE_EVENT_ENABLED) {
+            mPreEventFrames = new FrameRingBuffer(width, height, Constants.PRE_EVENT_FORMAT,
+                    Constants.PRE_EVENT_MEMORY);
+            mPreEventWriter = new PreEventWriter(mFileWriter, mPreEventFrames);
+            Log.d(TAG, "Pre-event frames: " + mPreEventFrames.getCapacity());
+        }
+        mClipEncoder = null;
+        if (Constants.EVENT_CLIP) {
+            mClipEncoder = new ClipEncoder(width, height, Constants.CLIP_THREAD_COUNT, Constants.CLIP_BUFFER_COUNT,
+                    Constants.CLIP_FRAME_RATE, Constants.CLIP_JPEG_QUALITY, new ClipEncoder.Listener() {
+                        @Override
+                        public void onClipWritten(String path, int frameCount) {
+                            Log.d(TAG, "Clip of " + frameCount + " frames: " + path);
+                            registerFile(path);
+                        }
+
+                        @Override
+                        public void onError(String path, IOException e) {
+                            Log.e(TAG, "Cannot write " + path, e);
+                        }
+                    });
+            mClipEncoder.setMetrics(mMetrics);
+        }
     }
 
     public void onCameraViewStopped() {
-        mStructuringElement.release();
-        mMask.release();
-        mOutputFrame.release();
+        mPipeline.stop();
+        Log.d(TAG, "Pipeline: " + mPipeline.dump());
+        mRunMeter.sample(System.nanoTime(), Process.getElapsedCpuTime());
+        Log.d(TAG, "Run: " + mRunMeter.dump());
+        for (DetectionFrame frame : mDetectionFrames) {
+            frame.release();
+        }
+
+        if (mClipEncoder != null) {
+            // finishes the clip being recorded
+            mClipEncoder.release();
+            Log.d(TAG, "Clips: " + mClipEncoder.dump());
+        }
+
+        // a picture taken from now on is written on the camera callback thread
+        mOpenCvCameraView.setFileWriter(null);
+        mFileWriter.close();
+        Log.d(TAG, "File writer: " + mFileWriter.dump() + " windowDropped=" + mWindowWriter.getDroppedCount());
+        mWindowWriter.release();
+
+        mMovingAreaDetector.release();
+        mChangeCheck.release();
+        Log.d(TAG, "Scheduler: " + mScheduler.dump());
+        Log.d(TAG, "Metrics:\n" + mMetrics.dump());
     }
 
     public Mat onCameraFrame(CvCameraViewFrame inputFrame) {
-        // detect moving area
-        List<Rect> movingAreaList = getMovingAreaList(inputFrame.gray());
-        if (movingAreaList.isEmpty()) {
-            return inputFrame.rgba();
+        ThetaView.ThetaCameraFrame cameraFrame = (ThetaView.ThetaCameraFrame) inputFrame;
+        mRunMeter.onFrame();
+        if (mPreEventFrames != null) {
+            // every frame, also the skipped ones; the luma plane comes first in NV21
+            cameraFrame.yuv().get(0, 0, mPreEventFrames.beginPut());
+            mPreEventFrames.commit(System.nanoTime());
+        }
+        if (mClipEncoder != null && mClipEncoder.isRecording()) {
+            long nanoTime = System.nanoTime();
+            if (nanoTime - mClipStartTime > Constants.CLIP_DURATION * 1000000L) {
+                mClipEncoder.stop();
+            } else {
+                mClipEncoder.addFrame(cameraFrame.yuv(), nanoTime);
+            }
+        }
+        switch (mScheduler.next(System.nanoTime())) {
+            case PROCESS:
+                // capture stage: copy the frame and hand it to the pipeline without waiting for detection
+                DetectionFrame frame = mPipeline.acquire();
+                if (frame != null) {
+                    frame.set(cameraFrame);
+                    mPipeline.submit(frame);
+                } else {
+                    mMetrics.drop(Metrics.Drop.PIPELINE);
+                }
+                break;
+            case CHECK:
+                mScheduler.onChecked(System.nanoTime(), mChangeCheck.check(cameraFrame.gray()));
+                break;
+            default:
+                break;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - mLastStatsTime > Constants.PIPELINE_STATS_INTERVAL) {
+            mLastStatsTime = now;
+            mRunMeter.sample(System.nanoTime(), Process.getElapsedCpuTime());
+            Log.d(TAG, "Run: " + mRunMeter.dump());
+            Log.d(TAG, "Pipeline: " + mPipeline.dump());
+            Log.d(TAG, "Scheduler: " + mScheduler.dump());
+            Log.d(TAG, "Metrics:\n" + mMetrics.dump());
+            Log.d(TAG, "File writer: " + mFileWriter.dump() + " windowDropped=" + mWindowWriter.getDroppedCount());
+            if (mPreFilter != null) {
+                Log.d(TAG, String.format("Pre-filter: %.1f%% of the frames skipped",
+                        mPreFilter.getSkipRatio() * 100));
+            }
+            Log.d(TAG, String.format("Detection: %.2f ms/frame on %s",
+                    mMovingAreaDetector.getAverageDetectNanos() / 1e6, mMovingAreaDetector.getActiveRect()));
+            FrameBufferPool bufferPool = mOpenCvCameraView.getFrameBufferPool();
+            if (bufferPool != null) {
+                Log.d(TAG, "Frame buffers: " + bufferPool.dump());
+            }
         }
 
-        mOutputFrame = inputFrame.rgba();
-        for (Rect movingArea : movingAreaList) {
-            // draw bounding boxes
-            Imgproc.rectangle(mOutputFrame, movingArea.tl(), movingArea.br(), new Scalar(0, 255, 0), 2);
+        // the render stage draws the frame
+        return null;
+    }
+
+    private void annotateFrame(DetectionFrame frame) {
+        // a frame without moving areas is converted by the render stage, if at all
+        if (frame.movingAreas.isEmpty()) {
+            return;
         }
 
+        // draw bounding boxes
+        Mat rgba = frame.rgba();
+        drawMovingAreas(rgba, frame.movingAreas);
+
         // wait during starting camera period, and avoid continuous shooting
         if (canProcess()) {
             mStartProcessingTime = System.currentTimeMillis();
@@ -180,12 +432,66 @@ public class MainActivity extends PluginActivity implements CvCameraViewListener
              * ATTENTION:
              * 1. During a taking picture process, the preview sequence is stopped.
              * 2. The taken picture is saved slightly later than the detected frame.
+             * 3. With EVENT_CLIP, a clip of the preview is recorded instead and the detection goes on.
              */
-            takePicture(dateTimeStr);
-            saveProcessWindow(mOutputFrame, dateTimeStr);
+            savePreEventFrames(dateTimeStr);
+            if (mClipEncoder != null) {
+                startClip(dateTimeStr);
+            } else {
+                takePicture(dateTimeStr);
+            }
+            saveProcessWindow(rgba, dateTimeStr);
+        }
+    }
+
+    private SyntheticFrameSource createSyntheticSource() {
+        int width = Constants.PREVIEW_SIZE_WIDTH;
+        int height = Constants.PREVIEW_SIZE_HEIGHT;
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(width, height, System.nanoTime());
+        generator.setBackground(SyntheticFrameGenerator.Texture.RANDOM, 96, 32);
+        generator.setNoise(Constants.SYNTHETIC_NOISE);
+        generator.addRandomObjects(Constants.SYNTHETIC_OBJECT_COUNT, height / 16, height / 4, 3);
+        generator.addSeamCrossingObject(height / 2, height / 8, height / 8, 1, 230);
+        SyntheticFrameSource source = new SyntheticFrameSource(generator);
+        source.setFrameRate(Constants.SYNTHETIC_FRAME_RATE);
+        return source;
+    }
+
+    private void switchDetectionScale() {
+        PyramidMovingAreaDetector detector = mPyramidDetector;
+        if (detector == null) {
+            return;
+        }
+        // cycle through the scales; the detector applies it from the next frame
+        int[] scales = PyramidMovingAreaDetector.SCALES;
+        int next = 0;
+        for (int i = 0; i < scales.length; i++) {
+            if (scales[i] == detector.getScale()) {
+                next = (i + 1) % scales.length;
+            }
         }
+        detector.setScale(scales[next]);
+        Log.d(TAG, "Detection scale: " + scales[next]);
+    }
 
-        return mOutputFrame;
+    private void drawMovingAreas(Mat img, RectBuffer movingAreas) {
+        int width = img.cols();
+        for (int i = 0; i < movingAreas.size(); i++) {
+            int right = movingAreas.getRight(i);
+            drawBox(img, movingAreas.getX(i), movingAreas.getY(i), Math.min(right, width), movingAreas.getBottom(i));
+            if (right > width) {
+                // the part wrapped around the seam of the equirectangular frame
+                drawBox(img, 0, movingAreas.getY(i), right - width, movingAreas.getBottom(i));
+            }
+        }
+    }
+
+    private void drawBox(Mat img, int left, int top, int right, int bottom) {
+        mBoxTopLeft.x = left;
+        mBoxTopLeft.y = top;
+        mBoxBottomRight.x = right;
+        mBoxBottomRight.y = bottom;
+        Imgproc.rectangle(img, mBoxTopLeft, mBoxBottomRight, BOX_COLOR, 2);
     }
 
     private void closeCamera() {
@@ -199,35 +505,6 @@ public class MainActivity extends PluginActivity implements CvCameraViewListener
         isEnded = true;
     }
 
-    private List<Rect> getMovingAreaList(Mat gray) {
-        // do Background Subtractor
-        mBackgroundSubtractor.apply(gray, mMask);
-
-        // do binarization and remove noise
-        Imgproc.threshold(mMask.clone(), mMask, Constants.THRESHOLD_BINARIZATION, 255, Imgproc.THRESH_BINARY);
-        Imgproc.morphologyEx(mMask.clone(), mMask, Imgproc.MORPH_OPEN, mStructuringElement);
-
-        // get boundary rectangle
-        List<MatOfPoint> contours = new ArrayList<>();
-        Mat hierarchy = new Mat();
-        Imgproc.findContours(mMask, contours, hierarchy, Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
-        MatOfPoint2f[] contoursPoly = new MatOfPoint2f[contours.size()];
-        Rect[] boundRect = new Rect[contours.size()];
-        List<Rect> movingAreaList = new ArrayList<>();
-
-        for (int i = 0; i < contours.size(); i++) {
-            contoursPoly[i] = new MatOfPoint2f();
-            Imgproc.approxPolyDP(new MatOfPoint2f(contours.get(i).toArray()), contoursPoly[i], Constants.APPROXIMATED_ACCURACY_PARAM, true);
-            boundRect[i] = Imgproc.boundingRect(new MatOfPoint(contoursPoly[i].toArray()));
-
-            if(boundRect[i].area() > Constants.THRESHOLD_AREA_SIZE) {
-                movingAreaList.add(boundRect[i]);
-            }
-        }
-
-        return movingAreaList;
-    }
-
     private boolean canProcess() {
         if (System.currentTimeMillis() - mStartProcessingTime > Constants.SHOOTING_INTERVAL)
             return true;
@@ -244,18 +521,30 @@ public class MainActivity extends PluginActivity implements CvCameraViewListener
         mOpenCvCameraView.takePicture(fileUrl);
     }
 
-    private void saveProcessWindow(Mat img, String dateTimeStr) {
-        File outDir = new File(Constants.PLUGIN_DIRECTORY);
-        if (!outDir.exists()) {
-            outDir.mkdirs();
+    private void startClip(String dateTimeStr) {
+        String fileUrl = String.format("%s/%s.avi", Constants.PLUGIN_DIRECTORY, dateTimeStr);
+        mClipStartTime = System.nanoTime();
+        if (!mClipEncoder.start(fileUrl)) {
+            Log.d(TAG, "Clip skipped, the previous one is still written: " + fileUrl);
         }
+    }
 
+    private void saveProcessWindow(Mat img, String dateTimeStr) {
         String fileUrl = String.format("%s/%s_detect.jpg", Constants.PLUGIN_DIRECTORY, dateTimeStr);
+        if (!mWindowWriter.save(img, fileUrl)) {
+            Log.d(TAG, "Detection window dropped: " + fileUrl);
+        }
+    }
 
-        Mat rgbImage = new Mat();
-        Imgproc.cvtColor(img, rgbImage, Imgproc.COLOR_BGR2RGB);
-        Imgcodecs.imwrite(fileUrl, rgbImage);
-        registerFile(fileUrl);
+    private void savePreEventFrames(String dateTimeStr) {
+        if (mPreEventWriter == null) {
+            return;
+        }
+        String extension = mPreEventFrames.getFormat() == FrameRingBuffer.Format.NV21 ? "nv21" : "y8";
+        String fileUrl = String.format("%s/%s_pre.%s", Constants.PLUGIN_DIRECTORY, dateTimeStr, extension);
+        if (!mPreEventWriter.save(fileUrl)) {
+            Log.d(TAG, "Pre-event frames dropped: " + fileUrl);
+        }
     }
 
     private String getDateTimeStr() {
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection;
+
+import com.theta360.opencvdetection.frame.FrameRingBuffer;
+import com.theta360.opencvdetection.storage.AsyncFileWriter;
+import com.theta360.opencvdetection.storage.WriteJob;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Saver of the frames leading up to an event
+ *
+ * The frames are taken from a {@link FrameRingBuffer} on the writer thread and written as one
+ * file of concatenated frames, which a ReplayFrameSource can play when the ring stores NV21.
+ * The save ends with the frames stored when it was asked for, although the delivery thread keeps
+ * storing frames while the file is written. Only one save runs at a time, so the writer thread is
+ * the single reader of the ring.
+ */
+class PreEventWriter implements WriteJob {
+
+    private final AsyncFileWriter mWriter;
+    private final FrameRingBuffer mFrames;
+    private final byte[] mFrame;
+    private final AtomicBoolean mBusy = new AtomicBoolean();
+    private volatile long mEndSequence;
+    private volatile int mLastFrameCount;
+
+    /**
+     * Constructor
+     *
+     * @param writer Writer of the files
+     * @param frames Ring filled by the frame delivery thread
+     */
+    PreEventWriter(AsyncFileWriter writer, FrameRingBuffer frames) {
+        mWriter = writer;
+        mFrames = frames;
+        mFrame = new byte[frames.getFrameSize()];
+    }
+
+    /**
+     * Queue the frames stored so far without waiting
+     * @param path Path of the file
+     * @return true if queued, false if a save is still running or the writer is full
+     */
+    boolean save(String path) {
+        if (!mBusy.compareAndSet(false, true)) {
+            return false;
+        }
+        mEndSequence = mFrames.getHeadSequence();
+        if (!mWriter.submit(path, this)) {
+            mBusy.set(false);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Acquire number of frames of the last save
+     * @return Number of frames written to the last file
+     */
+    int getLastFrameCount() {
+        return mLastFrameCount;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        // the frames stored after the event stay in the ring
+        long endSequence = mEndSequence;
+        int count = 0;
+        while (mFrames.poll(mFrame, endSequence) != FrameRingBuffer.NONE) {
+            out.write(mFrame);
+            count++;
+        }
+        mLastFrameCount = count;
+    }
+
+    @Override
+    public void recycle() {
+        mBusy.set(false);
+    }
+}
@@ -7,6 +7,8 @@ import android.net.Uri;
 import android.util.AttributeSet;
 import android.util.Log;
 
+import com.theta360.opencvdetection.storage.AsyncFileWriter;
+
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -17,42 +19,74 @@ public class ThetaController extends ThetaView {
 
     private String mPictureFileName;
     private CFCallback mCallback;
-    private boolean isCapturing = false;
-    private boolean isShutter = false;
+    private AsyncFileWriter mFileWriter;
+    // written by the caller of takePicture and by the camera callbacks
+    private volatile boolean isCapturing = false;
+    private volatile boolean isShutter = false;
 
     public ThetaController(Context context, AttributeSet attrs) {
         super(context, attrs);
     }
 
+    /**
+     * Take a still picture. The capture runs on the camera worker thread, so it may be requested from any thread.
+     * @param fileName Path of the JPEG file to write
+     */
     public void takePicture(final String fileName) {
         if (isCapturing)
             return;
 
         isCapturing = true;
         isShutter = false;
+        if (!runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                capture(fileName);
+            }
+        })) {
+            Log.d(TAG, "No camera to take a picture");
+            isCapturing = false;
+        }
+    }
+
+    private void capture(String fileName) {
+        final Camera camera = getCamera();
+        if (camera == null) {
+            Log.d(TAG, "No camera to take a picture");
+            isCapturing = false;
+            return;
+        }
 
         Log.d(TAG, "Taking picture");
         this.mPictureFileName = fileName;
 
-        mCamera.setPreviewCallback(null);
+        camera.setPreviewCallback(null);
 
-        Camera.Parameters params = mCamera.getParameters();
+        Camera.Parameters params = camera.getParameters();
         params.setPictureSize(Constants.STILL_SIZE_WIDTH, Constants.STILL_SIZE_HEIGHT);
         params.set("RIC_SHOOTING_MODE", Constants.RIC_STILL_CAPTURE_STD);
         params.set("RIC_EXPOSURE_MODE", Constants.RIC_AUTO_EXPOSURE_P);
         params.set("RIC_PROC_STITCHING", Constants.RIC_DYNAMIC_STITCHING_AUTO);
         params.set("recording-hint", "false");
         params.setJpegThumbnailSize(Constants.THUMBNAIL_SIZE_WIDTH, Constants.THUMBNAIL_SIZE_HEIGHT);
-        mCamera.setParameters(params);
+        camera.setParameters(params);
 
         // PictureCallback is implemented by the current class
-        mCamera.takePicture(onShutterCallback, null, onJpegPictureCallback);
+        camera.takePicture(onShutterCallback, null, onJpegPictureCallback);
     }
 
     public void setCFCallback(CFCallback callback) {
         this.mCallback = callback;
     }
 
+    /**
+     * Set the writer of the taken pictures
+     * @param fileWriter Writer registering the files once written, or null to write them on the callback thread
+     */
+    public void setFileWriter(AsyncFileWriter fileWriter) {
+        this.mFileWriter = fileWriter;
+    }
+
     private Camera.ShutterCallback onShutterCallback = new Camera.ShutterCallback() {
         @Override
         public void onShutter() {
@@ -68,27 +102,31 @@ public class ThetaController extends ThetaView {
         @Override
         public void onPictureTaken(byte[] data, Camera camera) {
 
-            mCamera.stopPreview();
+            camera.stopPreview();
 
-            // Write the image in a file (in jpeg format)
-            try (FileOutputStream fos = new FileOutputStream(mPictureFileName);) {
-                fos.write(data);
-            } catch (IOException e) {
-                Log.e(TAG, "Exception in photoCallback", e);
-                e.printStackTrace();
-            }
+            // Write the image in a file (in jpeg format); the camera does not reuse the array
+            AsyncFileWriter fileWriter = mFileWriter;
+            if (fileWriter == null || !fileWriter.writeOwned(mPictureFileName, data)) {
+                // never lose a still: write it here when the writer is closed or full
+                try (FileOutputStream fos = new FileOutputStream(mPictureFileName);) {
+                    fos.write(data);
+                } catch (IOException e) {
+                    Log.e(TAG, "Exception in photoCallback", e);
+                    e.printStackTrace();
+                }
 
-            registerFile(mPictureFileName);
+                registerFile(mPictureFileName);
+            }
 
             if (mCallback != null) mCallback.onPictureTaken();
 
-            Camera.Parameters params = mCamera.getParameters();
+            Camera.Parameters params = camera.getParameters();
             params.set("RIC_SHOOTING_MODE", Constants.RIC_MOVIE_PREVIEW);
             params.set("RIC_PROC_STITCHING", Constants.RIC_STATIC_STITCHING);
-            mCamera.setParameters(params);
+            camera.setParameters(params);
 
-            mCamera.startPreview();
-            mCamera.setPreviewCallback(ThetaController.this);
+            camera.startPreview();
+            resumePreviewCallback();
             isCapturing = false;
         }
     };
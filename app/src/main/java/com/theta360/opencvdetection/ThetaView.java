@@ -1,38 +1,39 @@
 package com.theta360.opencvdetection;
 
 import android.content.Context;
-import android.graphics.ImageFormat;
-import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
-import android.hardware.Camera.PreviewCallback;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.ViewGroup.LayoutParams;
 
+import com.theta360.opencvdetection.frame.FrameBuffer;
+import com.theta360.opencvdetection.frame.FrameBufferPool;
+import com.theta360.opencvdetection.frame.FrameSource;
+import com.theta360.opencvdetection.frame.RgbaCache;
+import com.theta360.opencvdetection.metrics.Metrics;
+
 import org.opencv.android.CameraBridgeViewBase;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
 
 /**
  * This is a customized class based on JavaCameraView of OpenCV library for RICOH THETA.
- * Some parameters for THETA are added in the initialize method.
+ * The frames are taken from a FrameSource; by default the THETA camera preview (see CameraFrameSource).
  */
-public class ThetaView extends CameraBridgeViewBase implements PreviewCallback {
+public class ThetaView extends CameraBridgeViewBase implements FrameSource.FrameListener {
 
-    private static final int MAGIC_TEXTURE_ID = 10;
     private static final String TAG = "Plug-in::ThetaView";
 
-    private byte mBuffer[];
-    private Mat[] mFrameChain;
-    private int mChainIdx = 0;
+    private Mat mFrameMat;
+    private ThetaCameraFrame[] mDirectFrames;
+    private FrameBuffer mPendingFrame;
+    private Runnable mPendingTask;
     private Thread mThread;
     private boolean mStopThread;
 
-    protected Camera mCamera;
-    protected ThetaCameraFrame[] mCameraFrame;
-    private SurfaceTexture mSurfaceTexture;
+    private FrameSource mFrameSource;
+    private Metrics mMetrics;
+    protected ThetaCameraFrame mCameraFrame;
 
     public static class JavaCameraSizeAccessor implements ListItemAccessor {
 
@@ -57,31 +58,71 @@ public class ThetaView extends CameraBridgeViewBase implements PreviewCallback {
         super(context, attrs);
     }
 
+    /**
+     * Set the source of the frames. The camera preview is used if no source is set.
+     * Must be called before the view is enabled.
+     * @param frameSource Source of NV21 frames
+     */
+    public void setFrameSource(FrameSource frameSource) {
+        mFrameSource = frameSource;
+    }
+
+    /**
+     * Set the receiver of the frame delivery latencies and the skipped preview frames.
+     * It takes effect when the camera is connected, so call it before enableView().
+     * @param metrics Metrics to record into, or null to record nothing
+     */
+    public void setMetrics(Metrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Acquire the camera when the frames come from the camera preview
+     * @return Camera, or null if another frame source is used or the camera is not opened
+     */
+    protected Camera getCamera() {
+        if (mFrameSource instanceof CameraFrameSource)
+            return ((CameraFrameSource) mFrameSource).getCamera();
+        return null;
+    }
+
+    /**
+     * Run a task on the camera worker thread, between two frame deliveries.
+     * The worker is joined before the camera is released, so the task never sees a released camera.
+     * @param task Task to run; it replaces a task not run yet
+     * @return true if the task is queued, false if the camera is disconnected
+     */
+    protected boolean runOnCameraThread(Runnable task) {
+        synchronized (this) {
+            if (mThread == null || mStopThread)
+                return false;
+            mPendingTask = task;
+            this.notify();
+        }
+        return true;
+    }
+
+    /**
+     * Restore the camera frame delivery after a still capture
+     */
+    protected void resumePreviewCallback() {
+        if (mFrameSource instanceof CameraFrameSource)
+            ((CameraFrameSource) mFrameSource).resumePreviewCallback();
+    }
+
     protected boolean initializeCamera(int width, int height) {
-        Log.d(TAG, "Initialize java camera");
+        Log.d(TAG, "Initialize frame source");
         boolean result = true;
         synchronized (this) {
-            mCamera = null;
+            if (mFrameSource == null)
+                mFrameSource = new CameraFrameSource();
 
-            mCamera = Camera.open();
-            if (mCamera == null)
+            if (!mFrameSource.open())
                 return false;
 
-            /* Now set camera parameters */
             try {
-                Camera.Parameters params = mCamera.getParameters();
-
-                // set the parameter of Live View and its frame size
-                Size frameSize = new Size(Constants.PREVIEW_SIZE_WIDTH, Constants.PREVIEW_SIZE_HEIGHT);
-                Log.d(TAG, "Set preview size to " + Integer.valueOf((int) frameSize.width) + "x" + Integer.valueOf((int) frameSize.height));
-                params.setPreviewSize((int) frameSize.width, (int) frameSize.height);
-                params.set("RIC_SHOOTING_MODE", Constants.RIC_MOVIE_PREVIEW);
-
-                mCamera.setParameters(params);
-                params = mCamera.getParameters();
-
-                mFrameWidth = params.getPreviewSize().width;
-                mFrameHeight = params.getPreviewSize().height;
+                mFrameWidth = mFrameSource.getFrameWidth();
+                mFrameHeight = mFrameSource.getFrameHeight();
 
                 if ((getLayoutParams().width == LayoutParams.MATCH_PARENT) && (getLayoutParams().height == LayoutParams.MATCH_PARENT))
                     mScale = Math.min(((float) height) / mFrameHeight, ((float) width) / mFrameWidth);
@@ -92,29 +133,27 @@ public class ThetaView extends CameraBridgeViewBase implements PreviewCallback {
                     mFpsMeter.setResolution(mFrameWidth, mFrameHeight);
                 }
 
-                int size = mFrameWidth * mFrameHeight;
-                size = size * ImageFormat.getBitsPerPixel(params.getPreviewFormat()) / 8;
-                mBuffer = new byte[size];
-
-                mCamera.addCallbackBuffer(mBuffer);
-                mCamera.setPreviewCallbackWithBuffer(this);
-
-                mFrameChain = new Mat[2];
-                mFrameChain[0] = new Mat(mFrameHeight + (mFrameHeight / 2), mFrameWidth, CvType.CV_8UC1);
-                mFrameChain[1] = new Mat(mFrameHeight + (mFrameHeight / 2), mFrameWidth, CvType.CV_8UC1);
+                // only the worker thread writes this Mat, so one is enough
+                mFrameMat = new Mat(mFrameHeight + (mFrameHeight / 2), mFrameWidth, CvType.CV_8UC1);
 
                 AllocateCache();
 
-                mCameraFrame = new ThetaCameraFrame[2];
-                mCameraFrame[0] = new ThetaCameraFrame(mFrameChain[0], mFrameWidth, mFrameHeight);
-                mCameraFrame[1] = new ThetaCameraFrame(mFrameChain[1], mFrameWidth, mFrameHeight);
-
-                mSurfaceTexture = new SurfaceTexture(MAGIC_TEXTURE_ID);
-                mCamera.setPreviewTexture(mSurfaceTexture);
+                mCameraFrame = new ThetaCameraFrame(mFrameMat, mFrameWidth, mFrameHeight);
+
+                // direct buffers are wrapped once in a Mat each, so their frames are never copied
+                FrameBufferPool pool = mFrameSource.getBufferPool();
+                mDirectFrames = null;
+                if (pool.get(0).isDirect()) {
+                    mDirectFrames = new ThetaCameraFrame[pool.getCapacity()];
+                    for (int i = 0; i < mDirectFrames.length; i++) {
+                        Mat yuv = new Mat(mFrameHeight + (mFrameHeight / 2), mFrameWidth, CvType.CV_8UC1,
+                                pool.get(i).getDirectData());
+                        mDirectFrames[i] = new ThetaCameraFrame(yuv, mFrameWidth, mFrameHeight);
+                    }
+                }
 
-                /* Finally we are ready to start the preview */
-                Log.d(TAG, "startPreview");
-                mCamera.startPreview();
+                /* Finally we are ready to start the frame delivery */
+                mFrameSource.start(this);
 
             } catch (Exception e) {
                 result = false;
@@ -126,21 +165,27 @@ public class ThetaView extends CameraBridgeViewBase implements PreviewCallback {
     }
 
     protected void releaseCamera() {
+        if (mFrameSource != null) {
+            // outside of the lock: a replay source waits for its thread, which may be in onFrame
+            mFrameSource.close();
+        }
         synchronized (this) {
-            if (mCamera != null) {
-                mCamera.stopPreview();
-                mCamera.setPreviewCallback(null);
-
-                mCamera.release();
+            if (mPendingFrame != null) {
+                mPendingFrame.release();
+                mPendingFrame = null;
             }
-            mCamera = null;
-            if (mFrameChain != null) {
-                mFrameChain[0].release();
-                mFrameChain[1].release();
+            if (mFrameMat != null) {
+                mFrameMat.release();
             }
             if (mCameraFrame != null) {
-                mCameraFrame[0].release();
-                mCameraFrame[1].release();
+                mCameraFrame.release();
+            }
+            if (mDirectFrames != null) {
+                for (ThetaCameraFrame directFrame : mDirectFrames) {
+                    directFrame.yuv().release();
+                    directFrame.release();
+                }
+                mDirectFrames = null;
             }
         }
     }
@@ -187,7 +232,10 @@ public class ThetaView extends CameraBridgeViewBase implements PreviewCallback {
         } catch (InterruptedException e) {
             e.printStackTrace();
         } finally {
-            mThread =  null;
+            synchronized (this) {
+                mThread = null;
+                mPendingTask = null;
+            }
         }
 
         /* Now release camera */
@@ -196,27 +244,71 @@ public class ThetaView extends CameraBridgeViewBase implements PreviewCallback {
         mCameraFrameReady = false;
     }
 
+    /**
+     * Acquire the buffer pool of the frame source, e.g. to log its counters
+     * @return Buffer pool, or null if the frame source is not opened
+     */
+    public FrameBufferPool getFrameBufferPool() {
+        return mFrameSource != null ? mFrameSource.getBufferPool() : null;
+    }
+
     @Override
-    public void onPreviewFrame(byte[] frame, Camera arg1) {
+    public void onFrame(FrameBuffer frame) {
+        // only hand the buffer over; the worker thread copies or wraps it
+        FrameBuffer skipped;
         synchronized (this) {
-            mFrameChain[mChainIdx].put(0, 0, frame);
+            skipped = mPendingFrame;
+            mPendingFrame = frame;
             mCameraFrameReady = true;
             this.notify();
         }
-        if (mCamera != null)
-            mCamera.addCallbackBuffer(mBuffer);
+        if (skipped != null) {
+            skipped.release();
+            if (mMetrics != null)
+                mMetrics.drop(Metrics.Drop.PREVIEW);
+        }
     }
 
-    private class ThetaCameraFrame implements CvCameraViewFrame {
+    public class ThetaCameraFrame implements CvCameraViewFrame {
+        /**
+         * This method returns the whole NV21 frame (luma plane followed by interleaved chroma)
+         */
+        public Mat yuv() {
+            return mYuvFrameData;
+        }
+
         @Override
         public Mat gray() {
-            return mYuvFrameData.submat(0, mHeight, 0, mWidth);
+            return mGray;
+        }
+
+        /**
+         * This method returns the interleaved V/U plane, one byte per column and half the rows of gray()
+         */
+        public Mat chroma() {
+            return mChroma;
         }
 
+        /**
+         * This method converts the frame at most once, however often it is called for the same frame
+         */
         @Override
         public Mat rgba() {
-            Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
-            return mRgba;
+            return mRgba.get();
+        }
+
+        /**
+         * This method converts only the given region, e.g. the part that will be displayed or saved
+         */
+        public Mat rgba(int x, int y, int width, int height) {
+            return mRgba.get(x, y, width, height);
+        }
+
+        /**
+         * This method returns the number of the frame, increased whenever new data is delivered
+         */
+        public long getGeneration() {
+            return mRgba.getGeneration();
         }
 
         public ThetaCameraFrame(Mat Yuv420sp, int width, int height) {
@@ -224,15 +316,26 @@ public class ThetaView extends CameraBridgeViewBase implements PreviewCallback {
             mWidth = width;
             mHeight = height;
             mYuvFrameData = Yuv420sp;
-            mRgba = new Mat();
+            // views on the frame data, created once instead of on every call
+            mGray = mYuvFrameData.submat(0, height, 0, width);
+            mChroma = mYuvFrameData.submat(height, height + (height / 2), 0, width);
+            mRgba = new RgbaCache(mYuvFrameData, width, height);
+        }
+
+        private void onNewData() {
+            mRgba.invalidate();
         }
 
         public void release() {
+            mGray.release();
+            mChroma.release();
             mRgba.release();
         }
 
         private Mat mYuvFrameData;
-        private Mat mRgba;
+        private Mat mGray;
+        private Mat mChroma;
+        private RgbaCache mRgba;
         private int mWidth;
         private int mHeight;
     };
@@ -242,10 +345,11 @@ public class ThetaView extends CameraBridgeViewBase implements PreviewCallback {
         @Override
         public void run() {
             do {
-                boolean hasFrame = false;
+                FrameBuffer frame = null;
+                Runnable task;
                 synchronized (ThetaView.this) {
                     try {
-                        while (!mCameraFrameReady && !mStopThread) {
+                        while (!mCameraFrameReady && mPendingTask == null && !mStopThread) {
                             ThetaView.this.wait();
                         }
                     } catch (InterruptedException e) {
@@ -253,18 +357,42 @@ public class ThetaView extends CameraBridgeViewBase implements PreviewCallback {
                     }
                     if (mCameraFrameReady)
                     {
-                        mChainIdx = 1 - mChainIdx;
+                        frame = mPendingFrame;
+                        mPendingFrame = null;
                         mCameraFrameReady = false;
-                        hasFrame = true;
                     }
+                    task = mPendingTask;
+                    mPendingTask = null;
                 }
 
-                if (!mStopThread && hasFrame) {
-                    if (!mFrameChain[1 - mChainIdx].empty())
-                        deliverAndDrawFrame(mCameraFrame[1 - mChainIdx]);
+                if (task != null && !mStopThread)
+                    task.run();
+
+                if (frame != null) {
+                    if (frame.isDirect()) {
+                        // the frame Mat is a view on the buffer, so hold it until the frame is drawn
+                        ThetaCameraFrame directFrame = mDirectFrames[frame.getIndex()];
+                        directFrame.onNewData();
+                        if (!mStopThread)
+                            deliver(directFrame);
+                        frame.release();
+                    } else {
+                        mFrameMat.put(0, 0, frame.getData());
+                        frame.release();
+                        mCameraFrame.onNewData();
+                        if (!mStopThread)
+                            deliver(mCameraFrame);
+                    }
                 }
             } while (!mStopThread);
             Log.d(TAG, "Finish processing thread");
         }
+
+        private void deliver(ThetaCameraFrame frame) {
+            long start = System.nanoTime();
+            deliverAndDrawFrame(frame);
+            if (mMetrics != null)
+                mMetrics.record(Metrics.Stage.PREVIEW_CALLBACK, System.nanoTime() - start);
+        }
     }
 }
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.bench;
+
+import com.theta360.opencvdetection.synthetic.SyntheticFrameGenerator;
+
+import org.opencv.core.Core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * NV21 input of the benchmarks: a synthetic sequence or recorded preview frames
+ *
+ * The synthetic frames come from a {@link SyntheticFrameGenerator}: a noisy gradient with a number
+ * of objects of random size moving in random directions, wrapping around the seam. Recorded
+ * frames are read from the file given by the system property {@link #RECORDED_FRAMES_PROPERTY}, in
+ * the format of the replay file.
+ */
+final class BenchFrames {
+
+    /** System property with the path of the recorded NV21 frames */
+    static final String RECORDED_FRAMES_PROPERTY = "bench.recordedFrames";
+    /** Source of synthetic frames */
+    static final String SYNTHETIC = "synthetic";
+    /** Source of recorded frames */
+    static final String RECORDED = "recorded";
+
+    private static final int SYNTHETIC_FRAME_COUNT = 64;
+    private static boolean sLibraryLoaded;
+
+    final int width;
+    final int height;
+    final byte[][] frames;
+
+    private BenchFrames(int width, int height, byte[][] frames) {
+        this.width = width;
+        this.height = height;
+        this.frames = frames;
+    }
+
+    /**
+     * Load the OpenCV native library once per JVM, from java.library.path
+     */
+    static synchronized void loadLibrary() {
+        if (!sLibraryLoaded) {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+            sLibraryLoaded = true;
+        }
+    }
+
+    /**
+     * Create the input of a benchmark
+     * @param resolution Frame size as width x height, e.g. 640x320
+     * @param source {@link #SYNTHETIC} or {@link #RECORDED}
+     * @param objects Number of moving objects of the synthetic frames; 0 gives a static scene
+     * @return Frames
+     * @throws IOException if the recorded frames cannot be read
+     */
+    static BenchFrames create(String resolution, String source, int objects) throws IOException {
+        int separator = resolution.indexOf('x');
+        int width = Integer.parseInt(resolution.substring(0, separator));
+        int height = Integer.parseInt(resolution.substring(separator + 1));
+        if (RECORDED.equals(source)) {
+            String path = System.getProperty(RECORDED_FRAMES_PROPERTY);
+            if (path == null) {
+                throw new IllegalStateException("No recorded frames, set -D" + RECORDED_FRAMES_PROPERTY);
+            }
+            return new BenchFrames(width, height, load(new File(path), width, height));
+        }
+        return new BenchFrames(width, height, synthesize(width, height, objects));
+    }
+
+    /**
+     * Acquire the frame size in bytes
+     * @return Size of an NV21 frame
+     */
+    int getFrameSize() {
+        return width * height * 3 / 2;
+    }
+
+    private static byte[][] load(File file, int width, int height) throws IOException {
+        int frameSize = width * height * 3 / 2;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            int count = (int) (channel.size() / frameSize);
+            if (count == 0) {
+                throw new IOException("No frame of " + width + "x" + height + " in " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * frameSize);
+            byte[][] frames = new byte[count][frameSize];
+            for (byte[] frame : frames) {
+                buffer.get(frame);
+            }
+            return frames;
+        }
+    }
+
+    private static byte[][] synthesize(int width, int height, int objects) {
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(width, height, 0);
+        generator.setBackground(SyntheticFrameGenerator.Texture.GRADIENT, 96, 64);
+        generator.setNoise(2);
+        generator.addRandomObjects(objects, height / 16, height / 6, width / 160f);
+        byte[][] frames = new byte[SYNTHETIC_FRAME_COUNT][generator.getFrameSize()];
+        for (byte[] frame : frames) {
+            generator.next(frame, null);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.bench;
+
+import com.theta360.opencvdetection.detection.RectBuffer;
+import com.theta360.opencvdetection.detection.RectBufferConverter;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.utils.Converters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer of rectangles between a Mat and Java: the original Converters path, its scratch-array
+ * overloads and the RectBuffer path of the detector
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertersBenchmark {
+
+    @Param({"4", "64"})
+    public int rects;
+
+    private Mat mMat;
+    private final Mat mDst = new Mat();
+    private final List<Rect> mList = new ArrayList<>();
+    private RectBuffer mBuffer;
+    private int[] mScratch;
+
+    @Setup
+    public void setUp() {
+        BenchFrames.loadLibrary();
+        mBuffer = new RectBuffer(rects);
+        for (int i = 0; i < rects; i++) {
+            mBuffer.add(i * 8, i * 4, 16 + i, 12 + i);
+        }
+        mMat = new Mat(rects, 1, CvType.CV_32SC4);
+        RectBufferConverter.toMat(mBuffer, mMat);
+        Converters.Mat_to_vector_Rect(mMat, mList);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDst.release();
+        mMat.release();
+    }
+
+    @Benchmark
+    public List<Rect> matToListAllocating() {
+        List<Rect> list = new ArrayList<>();
+        Converters.Mat_to_vector_Rect(mMat, list);
+        return list;
+    }
+
+    @Benchmark
+    public List<Rect> matToListScratch() {
+        mScratch = Converters.Mat_to_vector_Rect(mMat, mList, mScratch);
+        return mList;
+    }
+
+    @Benchmark
+    public RectBuffer matToRectBuffer() {
+        RectBufferConverter.fromMat(mMat, mBuffer);
+        return mBuffer;
+    }
+
+    @Benchmark
+    public int listToMatAllocating() {
+        Mat mat = Converters.vector_Rect_to_Mat(mList);
+        int count = mat.rows();
+        mat.release();
+        return count;
+    }
+
+    @Benchmark
+    public Mat listToMatScratch() {
+        mScratch = Converters.vector_Rect_to_Mat(mList, mDst, mScratch);
+        return mDst;
+    }
+
+    @Benchmark
+    public Mat rectBufferToMat() {
+        RectBufferConverter.toMat(mBuffer, mDst);
+        return mDst;
+    }
+}
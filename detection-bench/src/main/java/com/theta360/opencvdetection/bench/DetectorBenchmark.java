@@ -0,0 +1,118 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.bench;
+
+import com.theta360.opencvdetection.detection.AreaDetector;
+import com.theta360.opencvdetection.detection.DetectionConstants;
+import com.theta360.opencvdetection.detection.RectBuffer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moving area detection of a whole frame, from the luma plane to the boxes, as done by the detect
+ * stage of the pipeline for every processed frame
+ *
+ * The frames are played forward and backward in turn, so that the objects never jump from their
+ * position in the last frame to the one in the first frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectorBenchmark {
+
+    @Param({"640x320", "1920x960"})
+    public String resolution;
+
+    @Param({"0", "4", "16"})
+    public int objects;
+
+    @Param({BenchFrames.SYNTHETIC})
+    public String source;
+
+    /** labeling, contours, pyramid1, pyramid2 or tiled4 */
+    @Param({"labeling", "contours", "pyramid1", "pyramid2", "tiled4"})
+    public String detector;
+
+    private Mat[] mYuv;
+    private Mat[] mGray;
+    private AreaDetector mDetector;
+    private final RectBuffer mMovingAreas = new RectBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+    private int mNext;
+    private int mStep;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchFrames.loadLibrary();
+        BenchFrames frames = BenchFrames.create(resolution, source, objects);
+        int width = frames.width;
+        int height = frames.height;
+        mYuv = new Mat[frames.frames.length];
+        mGray = new Mat[frames.frames.length];
+        for (int i = 0; i < mYuv.length; i++) {
+            mYuv[i] = new Mat(height + height / 2, width, CvType.CV_8UC1);
+            mYuv[i].put(0, 0, frames.frames[i]);
+            mGray[i] = mYuv[i].submat(0, height, 0, width);
+        }
+        mDetector = Detectors.create(detector, width, height);
+
+        // the background is learnt before the measurement, as on a camera that has been running
+        for (Mat gray : mGray) {
+            mDetector.detect(gray, mMovingAreas);
+        }
+        // and the measurement goes on backward from the last learnt frame
+        mNext = Math.max(mGray.length - 2, 0);
+        mStep = -1;
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDetector.release();
+        for (int i = 0; i < mYuv.length; i++) {
+            mGray[i].release();
+            mYuv[i].release();
+        }
+    }
+
+    @Benchmark
+    public RectBuffer detect() {
+        mDetector.detect(mGray[mNext], mMovingAreas);
+        if (mNext + mStep < 0 || mNext + mStep >= mGray.length) {
+            mStep = -mStep;
+        }
+        mNext = Math.min(Math.max(mNext + mStep, 0), mGray.length - 1);
+        return mMovingAreas;
+    }
+}
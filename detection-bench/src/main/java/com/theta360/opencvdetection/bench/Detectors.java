@@ -0,0 +1,67 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.bench;
+
+import com.theta360.opencvdetection.detection.AreaDetector;
+import com.theta360.opencvdetection.detection.DetectionConstants;
+import com.theta360.opencvdetection.detection.MovingAreaDetector;
+import com.theta360.opencvdetection.detection.PreFilteredAreaDetector;
+import com.theta360.opencvdetection.detection.PyramidMovingAreaDetector;
+import com.theta360.opencvdetection.detection.TiledMovingAreaDetector;
+
+/**
+ * Detectors compared by the benchmarks and the regression harness
+ */
+final class Detectors {
+
+    private Detectors() {
+    }
+
+    /**
+     * Create a detector
+     * @param name labeling, contours, pyramid1 (the detector of the plug-in), pyramid2, tiled4, or
+     *             prefiltered (pyramid1 behind the change pre-filter)
+     * @param width Frame width
+     * @param height Frame height
+     * @return Detector, to be released by the caller
+     */
+    static AreaDetector create(String name, int width, int height) {
+        switch (name) {
+            case "labeling":
+                MovingAreaDetector labeling = new MovingAreaDetector(width, height);
+                labeling.setUseContours(false);
+                return labeling;
+            case "contours":
+                MovingAreaDetector contours = new MovingAreaDetector(width, height);
+                contours.setUseContours(true);
+                return contours;
+            case "pyramid1":
+                return new PyramidMovingAreaDetector(width, height, 1, null, null);
+            case "pyramid2":
+                return new PyramidMovingAreaDetector(width, height, 2, null, null);
+            case "tiled4":
+                return new TiledMovingAreaDetector(width, height, 4, null);
+            case "prefiltered":
+                int blockSize = DetectionConstants.SIGNATURE_BLOCK_SIZE;
+                return new PreFilteredAreaDetector(create("pyramid1", width, height), width / blockSize,
+                        height / blockSize, DetectionConstants.SIGNATURE_THRESHOLD,
+                        DetectionConstants.PREFILTER_REFRESH_INTERVAL, DetectionConstants.PREFILTER_HOLD_FRAMES);
+            default:
+                throw new IllegalArgumentException("Unknown detector " + name);
+        }
+    }
+}
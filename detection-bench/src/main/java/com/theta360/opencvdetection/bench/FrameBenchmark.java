@@ -0,0 +1,120 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.bench;
+
+import com.theta360.opencvdetection.frame.RgbaCache;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame copies and colour conversion, as done for every preview frame
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+
+    @Param({"640x320", "1920x960"})
+    public String resolution;
+
+    @Param({BenchFrames.SYNTHETIC})
+    public String source;
+
+    private BenchFrames mFrames;
+    private Mat mCameraYuv;
+    private Mat mPipelineYuv;
+    private RgbaCache mRgba;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchFrames.loadLibrary();
+        mFrames = BenchFrames.create(resolution, source, 4);
+        int rows = mFrames.height + mFrames.height / 2;
+        mCameraYuv = new Mat(rows, mFrames.width, CvType.CV_8UC1);
+        mPipelineYuv = new Mat(rows, mFrames.width, CvType.CV_8UC1);
+        mRgba = new RgbaCache(mPipelineYuv, mFrames.width, mFrames.height);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mRgba.release();
+        mPipelineYuv.release();
+        mCameraYuv.release();
+    }
+
+    /**
+     * The callback buffer into the frame Mat of the view
+     */
+    @Benchmark
+    public Mat copyCallbackBuffer() {
+        mCameraYuv.put(0, 0, nextFrame());
+        return mCameraYuv;
+    }
+
+    /**
+     * The frame Mat of the view into a frame of the pipeline
+     */
+    @Benchmark
+    public Mat copyToPipeline() {
+        mCameraYuv.copyTo(mPipelineYuv);
+        return mPipelineYuv;
+    }
+
+    /**
+     * NV21 to RGBA of the whole frame, as for drawing or saving it
+     */
+    @Benchmark
+    public Mat convertRgba() {
+        mRgba.invalidate();
+        return mRgba.get();
+    }
+
+    /**
+     * NV21 to RGBA of a quarter of the frame, as for a detection around one object
+     */
+    @Benchmark
+    public Mat convertRgbaRegion() {
+        mRgba.invalidate();
+        return mRgba.get(mFrames.width / 4, mFrames.height / 4, mFrames.width / 2, mFrames.height / 2);
+    }
+
+    private byte[] nextFrame() {
+        byte[] frame = mFrames.frames[mNext];
+        mNext = (mNext + 1) % mFrames.frames.length;
+        return frame;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.bench;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistence of a detection window: the work of a writer thread for one JPEG file
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JpegBenchmark {
+
+    @Param({"640x320", "1920x960"})
+    public String resolution;
+
+    @Param({BenchFrames.SYNTHETIC})
+    public String source;
+
+    private Mat mRgba;
+    private final Mat mBgr = new Mat();
+    private final MatOfByte mJpeg = new MatOfByte();
+    private byte[] mBytes = new byte[0];
+    private File mDirectory;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchFrames.loadLibrary();
+        BenchFrames frames = BenchFrames.create(resolution, source, 4);
+        Mat yuv = new Mat(frames.height + frames.height / 2, frames.width, CvType.CV_8UC1);
+        yuv.put(0, 0, frames.frames[0]);
+        mRgba = new Mat();
+        Imgproc.cvtColor(yuv, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+        yuv.release();
+        mDirectory = Files.createTempDirectory("jpeg-bench").toFile();
+        mFile = new File(mDirectory, "window.jpg");
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+        mDirectory.delete();
+        mJpeg.release();
+        mBgr.release();
+        mRgba.release();
+    }
+
+    /**
+     * Colour conversion and encoding into a reused array
+     */
+    @Benchmark
+    public int encode() throws IOException {
+        Imgproc.cvtColor(mRgba, mBgr, Imgproc.COLOR_RGBA2BGR);
+        if (!Imgcodecs.imencode(".jpg", mBgr, mJpeg)) {
+            throw new IOException("JPEG encoding failed");
+        }
+        int length = (int) mJpeg.total();
+        if (mBytes.length < length) {
+            mBytes = new byte[length];
+        }
+        mJpeg.get(0, 0, mBytes);
+        return length;
+    }
+
+    /**
+     * Encoding and writing the file, left to the page cache
+     */
+    @Benchmark
+    public int persist() throws IOException {
+        int length = encode();
+        try (FileOutputStream out = new FileOutputStream(mFile)) {
+            out.write(mBytes, 0, length);
+        }
+        return length;
+    }
+
+    /**
+     * Encoding, writing and syncing the file, the worst case of the batched sync of the writer
+     */
+    @Benchmark
+    public int persistSynced() throws IOException {
+        int length = encode();
+        try (FileOutputStream out = new FileOutputStream(mFile)) {
+            out.write(mBytes, 0, length);
+            out.getFD().sync();
+        }
+        return length;
+    }
+}
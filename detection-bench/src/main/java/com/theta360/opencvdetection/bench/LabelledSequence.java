@@ -0,0 +1,233 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.bench;
+
+import com.theta360.opencvdetection.detection.RectBuffer;
+import com.theta360.opencvdetection.synthetic.SyntheticFrameGenerator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Luma frames with the ground-truth boxes of the moving objects in each frame
+ *
+ * The synthetic sequences cover the cases the detectors have to handle: a static noisy scene, a
+ * few and many objects, small objects close to the background level that come and go in a quiet
+ * scene, an object crossing the seam, and a slow change of illumination. Recorded
+ * sequences are pairs of an NV21 file in the format of the replay file and a label file of the
+ * same name with the extension .txt, holding one line "frame x y width height" per true box;
+ * empty lines and lines starting with # are skipped. The first frames of every sequence are not
+ * scored, since the detectors learn the background from them.
+ */
+final class LabelledSequence {
+
+    /** Frame width of the synthetic sequences */
+    static final int SYNTHETIC_WIDTH = 640;
+    /** Frame height of the synthetic sequences */
+    static final int SYNTHETIC_HEIGHT = 320;
+    /** Number of frames of the synthetic sequences */
+    static final int SYNTHETIC_FRAME_COUNT = 300;
+    /** Number of frames at the start of a sequence that are not scored */
+    static final int WARM_UP_FRAME_COUNT = 50;
+
+    private static final String NV21_EXTENSION = ".nv21";
+    private static final String LABEL_EXTENSION = ".txt";
+
+    final String name;
+    final int width;
+    final int height;
+    /** Luma plane of each frame */
+    final byte[][] frames;
+    /** True boxes of each frame */
+    final RectBuffer[] truth;
+
+    private LabelledSequence(String name, int width, int height, byte[][] frames, RectBuffer[] truth) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.frames = frames;
+        this.truth = truth;
+    }
+
+    /**
+     * Create the synthetic sequences
+     * @return Sequences, each with its own seed
+     */
+    static List<LabelledSequence> synthetic() {
+        List<LabelledSequence> sequences = new ArrayList<>();
+
+        SyntheticFrameGenerator generator = createGenerator(1, 2);
+        sequences.add(generate("static", generator));
+
+        generator = createGenerator(2, 2);
+        generator.addRandomObjects(3, SYNTHETIC_HEIGHT / 16, SYNTHETIC_HEIGHT / 6, SYNTHETIC_WIDTH / 160f);
+        sequences.add(generate("few", generator));
+
+        generator = createGenerator(3, 2);
+        generator.addRandomObjects(12, SYNTHETIC_HEIGHT / 20, SYNTHETIC_HEIGHT / 8, SYNTHETIC_WIDTH / 160f);
+        sequences.add(generate("crowd", generator));
+
+        // about the smallest box and the smallest difference the detectors are expected to find,
+        // one at a time after the scene was still for a while, across the cells of coarse grids
+        final SyntheticFrameGenerator faint = createGenerator(6, 2);
+        faint.setBackground(SyntheticFrameGenerator.Texture.FLAT, 96, 0);
+        final int[][] faintObjects = {{95, 55, 120}, {415, 195, 72}, {255, 135, 120}, {335, 275, 72}};
+        sequences.add(generate("faint", faint, frame -> {
+            int slot = frame - 100;
+            if (slot >= 0 && slot % 50 == 0 && slot / 50 < faintObjects.length) {
+                int[] object = faintObjects[slot / 50];
+                faint.addObject(object[0], object[1], 10, 10, 0.25f, 0.25f, object[2]);
+            } else if (slot >= 0 && slot % 50 == 30) {
+                faint.clearObjects();
+            }
+        }));
+
+        generator = createGenerator(4, 2);
+        generator.addSeamCrossingObject(SYNTHETIC_HEIGHT / 2, SYNTHETIC_HEIGHT / 5, SYNTHETIC_HEIGHT / 6, 2f, 220);
+        generator.addRandomObjects(2, SYNTHETIC_HEIGHT / 16, SYNTHETIC_HEIGHT / 6, SYNTHETIC_WIDTH / 160f);
+        sequences.add(generate("seam", generator));
+
+        generator = createGenerator(5, 4);
+        generator.setIlluminationDrift(12, 150);
+        generator.addRandomObjects(4, SYNTHETIC_HEIGHT / 16, SYNTHETIC_HEIGHT / 6, SYNTHETIC_WIDTH / 160f);
+        sequences.add(generate("drift", generator));
+
+        return sequences;
+    }
+
+    /**
+     * Load the recorded sequences of a directory
+     * @param directory Directory of the NV21 and label files
+     * @param width Frame width of the recordings
+     * @param height Frame height of the recordings
+     * @return Sequences, in the order of their names
+     * @throws IOException if a file cannot be read or a label is malformed
+     */
+    static List<LabelledSequence> recorded(File directory, int width, int height) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(NV21_EXTENSION));
+        if (files == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        Arrays.sort(files);
+        List<LabelledSequence> sequences = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName().substring(0, file.getName().length() - NV21_EXTENSION.length());
+            File labels = new File(directory, name + LABEL_EXTENSION);
+            if (!labels.isFile()) {
+                System.err.println("Skipping " + file + ": no label file " + labels.getName());
+                continue;
+            }
+            byte[][] frames = loadLuma(file, width, height);
+            sequences.add(new LabelledSequence(name, width, height, frames, loadLabels(labels, frames.length)));
+        }
+        return sequences;
+    }
+
+    private static SyntheticFrameGenerator createGenerator(long seed, int noise) {
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT, seed);
+        generator.setBackground(SyntheticFrameGenerator.Texture.GRADIENT, 96, 64);
+        generator.setNoise(noise);
+        return generator;
+    }
+
+    private static LabelledSequence generate(String name, SyntheticFrameGenerator generator) {
+        return generate(name, generator, null);
+    }
+
+    private static LabelledSequence generate(String name, SyntheticFrameGenerator generator,
+                                             IntConsumer beforeFrame) {
+        int lumaSize = SYNTHETIC_WIDTH * SYNTHETIC_HEIGHT;
+        byte[] frame = new byte[generator.getFrameSize()];
+        byte[][] frames = new byte[SYNTHETIC_FRAME_COUNT][];
+        RectBuffer[] truth = new RectBuffer[SYNTHETIC_FRAME_COUNT];
+        for (int i = 0; i < SYNTHETIC_FRAME_COUNT; i++) {
+            if (beforeFrame != null) {
+                beforeFrame.accept(i);
+            }
+            truth[i] = new RectBuffer(generator.getObjectCount() + 1);
+            generator.next(frame, truth[i]);
+            frames[i] = Arrays.copyOf(frame, lumaSize);
+        }
+        return new LabelledSequence(name, SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT, frames, truth);
+    }
+
+    private static byte[][] loadLuma(File file, int width, int height) throws IOException {
+        int lumaSize = width * height;
+        int frameSize = lumaSize * 3 / 2;
+        int count = (int) (file.length() / frameSize);
+        if (count <= WARM_UP_FRAME_COUNT) {
+            throw new IOException("Too few frames of " + width + "x" + height + " in " + file);
+        }
+        byte[][] frames = new byte[count][lumaSize];
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] chroma = new byte[frameSize - lumaSize];
+            for (byte[] frame : frames) {
+                readFully(in, frame);
+                readFully(in, chroma);
+            }
+        }
+        return frames;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            offset += read;
+        }
+    }
+
+    private static RectBuffer[] loadLabels(File file, int frameCount) throws IOException {
+        RectBuffer[] truth = new RectBuffer[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            truth[i] = new RectBuffer(4);
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 5) {
+                    throw new IOException(file + ":" + lineNumber + ": expected \"frame x y width height\"");
+                }
+                int frame = Integer.parseInt(fields[0]);
+                if (frame < 0 || frame >= frameCount) {
+                    throw new IOException(file + ":" + lineNumber + ": no frame " + frame);
+                }
+                truth[frame].add(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                        Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+            }
+        }
+        return truth;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.bench;
+
+import com.theta360.opencvdetection.detection.BlobBuffer;
+import com.theta360.opencvdetection.detection.ConnectedComponentLabeler;
+import com.theta360.opencvdetection.detection.DetectionConstants;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.utils.PackedPoints;
+import org.opencv.video.BackgroundSubtractorKNN;
+import org.opencv.video.Video;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The steps after the background subtraction: cleaning the foreground mask and extracting the blobs
+ *
+ * The foreground masks are computed once by the KNN subtractor of the detector, so only the
+ * measured step runs in the benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaskBenchmark {
+
+    @Param({"640x320", "1920x960"})
+    public String resolution;
+
+    @Param({"0", "4", "16"})
+    public int objects;
+
+    @Param({BenchFrames.SYNTHETIC})
+    public String source;
+
+    private Mat[] mRawMasks;
+    private Mat[] mCleanMasks;
+    private byte[][] mCleanBytes;
+    private final Mat mWork = new Mat();
+    private Mat mStructuringElement;
+    private ConnectedComponentLabeler mLabeler;
+    private final BlobBuffer mBlobs = new BlobBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+    private final PackedPoints mContours = new PackedPoints();
+    private final Mat mHierarchy = new Mat();
+    private final Mat mContoursMat = new Mat();
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchFrames.loadLibrary();
+        BenchFrames frames = BenchFrames.create(resolution, source, objects);
+        int width = frames.width;
+        int height = frames.height;
+        mStructuringElement = Imgproc.getStructuringElement(Imgproc.CV_SHAPE_ELLIPSE, new Size(3, 3));
+        mLabeler = new ConnectedComponentLabeler(width, height);
+        mLabeler.setWrapAround(DetectionConstants.WRAP_AROUND);
+
+        // one pass to learn the background, one to keep the masks
+        BackgroundSubtractorKNN subtractor = Video.createBackgroundSubtractorKNN();
+        Mat yuv = new Mat(height + height / 2, width, CvType.CV_8UC1);
+        Mat gray = yuv.submat(0, height, 0, width);
+        int count = frames.frames.length;
+        mRawMasks = new Mat[count];
+        mCleanMasks = new Mat[count];
+        mCleanBytes = new byte[count][width * height];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < count; i++) {
+                yuv.put(0, 0, frames.frames[i]);
+                Mat mask = new Mat();
+                subtractor.apply(gray, mask);
+                if (pass == 0) {
+                    mask.release();
+                    continue;
+                }
+                mRawMasks[i] = mask;
+                mCleanMasks[i] = new Mat();
+                clean(mask, mCleanMasks[i]);
+                mCleanMasks[i].get(0, 0, mCleanBytes[i]);
+            }
+        }
+        gray.release();
+        yuv.release();
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (int i = 0; i < mRawMasks.length; i++) {
+            mRawMasks[i].release();
+            mCleanMasks[i].release();
+        }
+        mStructuringElement.release();
+        mContoursMat.release();
+        mHierarchy.release();
+        mWork.release();
+    }
+
+    /**
+     * Binarization, morphological opening and the emptiness check of the detector
+     */
+    @Benchmark
+    public int thresholdMorphology() {
+        return clean(mRawMasks[next()], mWork);
+    }
+
+    /**
+     * Blobs by the connected-component labeler, with the copy of the mask into Java
+     */
+    @Benchmark
+    public int blobsByLabeling() {
+        int i = next();
+        mCleanMasks[i].get(0, 0, mCleanBytes[i]);
+        return mLabeler.label(mCleanBytes[i], mBlobs);
+    }
+
+    /**
+     * Contours by OpenCV, read into packed points
+     */
+    @Benchmark
+    public int blobsByContours() {
+        // findContours modifies its input in OpenCV 3
+        mCleanMasks[next()].copyTo(mWork);
+        Imgproc.findContours(mWork, mContours, mHierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE,
+                mContoursMat);
+        return mContours.count();
+    }
+
+    private int clean(Mat mask, Mat dst) {
+        Imgproc.threshold(mask, dst, DetectionConstants.THRESHOLD_BINARIZATION, 255, Imgproc.THRESH_BINARY);
+        Imgproc.morphologyEx(dst, dst, Imgproc.MORPH_OPEN, mStructuringElement);
+        return Core.countNonZero(dst);
+    }
+
+    private int next() {
+        int i = mNext;
+        mNext = (mNext + 1) % mRawMasks.length;
+        return i;
+    }
+}
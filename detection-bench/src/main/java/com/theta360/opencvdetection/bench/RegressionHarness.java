@@ -0,0 +1,284 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.bench;
+
+import com.theta360.opencvdetection.detection.AreaDetector;
+import com.theta360.opencvdetection.detection.DetectionConstants;
+import com.theta360.opencvdetection.detection.RectBuffer;
+import com.theta360.opencvdetection.metrics.AccuracyScore;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Accuracy and throughput regression check of the detectors
+ *
+ * Every detector replays every labelled sequence. In the same run, the detected boxes are scored
+ * against the ground truth frame by frame, the time spent in detect() gives the frame rate, and
+ * the bytes allocated by the detecting thread give the allocation per frame. The results are
+ * compared with stored baselines, and the run fails when the precision, the recall or the mean
+ * IoU drops, the frame rate falls or the allocation grows by more than the allowed margin, or
+ * when a result has no baseline. The accuracy and the allocation do not depend on the machine and
+ * have a baseline kept with the sources; the frame rates are only compared with a baseline of the
+ * machine running the check, when one is given. The baselines are written instead when they are
+ * asked to be updated.
+ *
+ * Settings are system properties: regression.baseline (properties file of the accuracy and
+ * allocation baseline), regression.throughputBaseline (properties file of the frame rates of this
+ * machine), regression.reportDir, regression.recordedDir and regression.recordedResolution
+ * (labelled recordings, in addition to the synthetic sequences), regression.updateBaseline,
+ * regression.repeats, regression.maxQualityDrop, regression.maxThroughputDrop and
+ * regression.maxAllocationGrowth.
+ */
+public final class RegressionHarness {
+
+    private static final String[] DETECTORS = {
+            "labeling", "contours", "pyramid1", "pyramid2", "tiled4", "prefiltered"};
+    private static final float IOU_THRESHOLD = 0.3f;
+    private static final int RNG_SEED = 0x12345678;
+    /** Allocation per frame tolerated above the baseline whatever its size, in bytes */
+    private static final double ALLOCATION_SLACK = 256;
+
+    private static final String PRECISION = "precision";
+    private static final String RECALL = "recall";
+    private static final String IOU = "iou";
+    private static final String FPS = "fps";
+    private static final String ALLOCATION = "allocatedBytesPerFrame";
+
+    private RegressionHarness() {
+    }
+
+    /**
+     * Run the check and exit with 1 on a regression
+     * @param args Unused; the settings are system properties
+     * @throws IOException if a sequence, the baseline or a report cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        BenchFrames.loadLibrary();
+        File baselineFile = new File(System.getProperty("regression.baseline", "regression-baseline.properties"));
+        String throughputBaseline = System.getProperty("regression.throughputBaseline");
+        File throughputFile = throughputBaseline != null ? new File(throughputBaseline) : null;
+        File reportDir = new File(System.getProperty("regression.reportDir", "build/reports/regression"));
+        int repeats = Integer.getInteger("regression.repeats", 3);
+        double maxQualityDrop = getDouble("regression.maxQualityDrop", 0.02);
+        double maxThroughputDrop = getDouble("regression.maxThroughputDrop", 0.15);
+        double maxAllocationGrowth = getDouble("regression.maxAllocationGrowth", 0.2);
+
+        List<LabelledSequence> sequences = LabelledSequence.synthetic();
+        String recordedDir = System.getProperty("regression.recordedDir");
+        if (recordedDir != null) {
+            String resolution = System.getProperty("regression.recordedResolution", "640x320");
+            int separator = resolution.indexOf('x');
+            sequences.addAll(LabelledSequence.recorded(new File(recordedDir),
+                    Integer.parseInt(resolution.substring(0, separator)),
+                    Integer.parseInt(resolution.substring(separator + 1))));
+        }
+
+        if (!reportDir.isDirectory() && !reportDir.mkdirs()) {
+            throw new IOException("Cannot create " + reportDir);
+        }
+        TreeMap<String, Double> results = new TreeMap<>();
+        for (LabelledSequence sequence : sequences) {
+            for (String detector : DETECTORS) {
+                run(sequence, detector, repeats, reportDir, results);
+            }
+        }
+        writeJson(new File(reportDir, "results.json"), results);
+
+        TreeMap<String, Double> quality = new TreeMap<>();
+        TreeMap<String, Double> throughput = new TreeMap<>();
+        for (String key : results.keySet()) {
+            if (key.endsWith("." + FPS)) {
+                throughput.put(key, results.get(key));
+            } else {
+                quality.put(key, results.get(key));
+            }
+        }
+        if (Boolean.getBoolean("regression.updateBaseline")) {
+            writeBaseline(baselineFile, quality);
+            System.out.println("Baseline written to " + baselineFile);
+            if (throughputFile != null) {
+                writeBaseline(throughputFile, throughput);
+                System.out.println("Baseline written to " + throughputFile);
+            }
+            return;
+        }
+        List<String> regressions = compare(quality, loadBaseline(baselineFile), maxQualityDrop,
+                maxThroughputDrop, maxAllocationGrowth);
+        if (throughputFile != null) {
+            regressions.addAll(compare(throughput, loadBaseline(throughputFile), maxQualityDrop,
+                    maxThroughputDrop, maxAllocationGrowth));
+        } else {
+            System.out.println("Frame rates not compared, regression.throughputBaseline is not set");
+        }
+        if (!regressions.isEmpty()) {
+            for (String regression : regressions) {
+                System.err.println("REGRESSION " + regression);
+            }
+            System.exit(1);
+        }
+        System.out.println("No regression against " + baselineFile
+                + (throughputFile != null ? " and " + throughputFile : ""));
+    }
+
+    private static Properties loadBaseline(File file) throws IOException {
+        if (!file.isFile()) {
+            System.err.println("No baseline " + file + ", record it with regression.updateBaseline");
+            System.exit(1);
+        }
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            baseline.load(in);
+        }
+        return baseline;
+    }
+
+    private static void run(LabelledSequence sequence, String detectorName, int repeats, File reportDir,
+                            TreeMap<String, Double> results) throws IOException {
+        int frameCount = sequence.frames.length;
+        int scoredFrames = frameCount - LabelledSequence.WARM_UP_FRAME_COUNT;
+        Mat[] gray = new Mat[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            gray[i] = new Mat(sequence.height, sequence.width, CvType.CV_8UC1);
+            gray[i].put(0, 0, sequence.frames[i]);
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long probe = threads.getThreadAllocatedBytes(threadId);
+        long probeOverhead = threads.getThreadAllocatedBytes(threadId) - probe;
+
+        RectBuffer movingAreas = new RectBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+        AccuracyScore score = new AccuracyScore(sequence.width, IOU_THRESHOLD);
+        long bestNanos = Long.MAX_VALUE;
+        long allocatedBytes = 0;
+        File csv = new File(reportDir, sequence.name + "-" + detectorName + ".csv");
+        try (PrintWriter writer = new PrintWriter(csv, "UTF-8")) {
+            writer.println("frame,truth,detected,matched,iou");
+            // the frame rate is the best of the repeats, the accuracy and allocation those of the first
+            for (int repeat = 0; repeat < repeats; repeat++) {
+                // the KNN subtractor samples with the OpenCV RNG, so every detector starts from the same state
+                Core.setRNGSeed(RNG_SEED);
+                AreaDetector detector = Detectors.create(detectorName, sequence.width, sequence.height);
+                long nanos = 0;
+                for (int i = 0; i < frameCount; i++) {
+                    boolean scored = i >= LabelledSequence.WARM_UP_FRAME_COUNT;
+                    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+                    long start = System.nanoTime();
+                    detector.detect(gray[i], movingAreas);
+                    long elapsed = System.nanoTime() - start;
+                    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore - probeOverhead;
+                    if (!scored) {
+                        continue;
+                    }
+                    nanos += elapsed;
+                    if (repeat == 0) {
+                        allocatedBytes += Math.max(0, allocated);
+                        RectBuffer truth = sequence.truth[i];
+                        int matched = score.score(movingAreas, truth);
+                        writer.printf(Locale.US, "%d,%d,%d,%d,%.4f%n", i, truth.size(), movingAreas.size(),
+                                matched, score.getLastIou());
+                    }
+                }
+                detector.release();
+                bestNanos = Math.min(bestNanos, nanos);
+            }
+        } finally {
+            for (Mat mat : gray) {
+                mat.release();
+            }
+        }
+
+        String prefix = sequence.name + "." + detectorName + ".";
+        results.put(prefix + PRECISION, score.getPrecision());
+        results.put(prefix + RECALL, score.getRecall());
+        results.put(prefix + IOU, score.getMeanIou());
+        results.put(prefix + FPS, scoredFrames * 1e9 / bestNanos);
+        results.put(prefix + ALLOCATION, (double) allocatedBytes / scoredFrames);
+        System.out.printf(Locale.US, "%-24s precision %.3f recall %.3f iou %.3f %8.1f fps %10.0f B/frame%n",
+                sequence.name + " " + detectorName, score.getPrecision(), score.getRecall(),
+                score.getMeanIou(), results.get(prefix + FPS), results.get(prefix + ALLOCATION));
+    }
+
+    private static List<String> compare(TreeMap<String, Double> results, Properties baseline,
+                                        double maxQualityDrop, double maxThroughputDrop,
+                                        double maxAllocationGrowth) {
+        List<String> regressions = new ArrayList<>();
+        for (String key : results.keySet()) {
+            String stored = baseline.getProperty(key);
+            if (stored == null) {
+                // a new sequence or detector is recorded with regression.updateBaseline
+                regressions.add(key + ": no baseline");
+                continue;
+            }
+            double expected = Double.parseDouble(stored);
+            double actual = results.get(key);
+            boolean regressed;
+            if (key.endsWith("." + FPS)) {
+                regressed = actual < expected * (1 - maxThroughputDrop);
+            } else if (key.endsWith("." + ALLOCATION)) {
+                regressed = actual > expected * (1 + maxAllocationGrowth) + ALLOCATION_SLACK;
+            } else {
+                regressed = actual < expected - maxQualityDrop;
+            }
+            if (regressed) {
+                regressions.add(String.format(Locale.US, "%s: %.4f, baseline %.4f", key, actual, expected));
+            }
+        }
+        return regressions;
+    }
+
+    private static void writeBaseline(File file, TreeMap<String, Double> results) throws IOException {
+        // sorted and without a date, so that a committed baseline only changes with its values
+        try (PrintWriter writer = new PrintWriter(file, "ISO-8859-1")) {
+            writer.println("# Detection regression baseline, key: sequence.detector.metric");
+            for (String key : results.keySet()) {
+                writer.printf(Locale.US, "%s=%.4f%n", key, results.get(key));
+            }
+        }
+    }
+
+    private static void writeJson(File file, TreeMap<String, Double> results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.println("{");
+            int remaining = results.size();
+            for (String key : results.keySet()) {
+                remaining--;
+                writer.printf(Locale.US, "  \"%s\": %.4f%s%n", key, results.get(key), remaining > 0 ? "," : "");
+            }
+            writer.println("}");
+        }
+    }
+
+    private static double getDouble(String key, double defaultValue) {
+        String value = System.getProperty(key);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import com.theta360.opencvdetection.metrics.Metrics;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * Detector of moving areas in consecutive gray frames
+ */
+public interface AreaDetector {
+
+    /**
+     * Update the background model with a frame and find the moving areas
+     * @param gray Gray frame
+     * @param movingAreas Buffer receiving the bounding box of each moving area, cleared first
+     * @return Number of moving areas
+     */
+    int detect(Mat gray, RectBuffer movingAreas);
+
+    /**
+     * Acquire the area the detection runs on
+     * @return Bounding box of the detection region in pixels
+     */
+    Rect getActiveRect();
+
+    /**
+     * Acquire the average processing time per frame
+     * @return Time in nanoseconds, 0 before the first frame
+     */
+    long getAverageDetectNanos();
+
+    /**
+     * Set the receiver of the latencies of the detection steps
+     * @param metrics Metrics to record into, or null to record nothing
+     */
+    void setMetrics(Metrics metrics);
+
+    /**
+     * Release the resources
+     */
+    void release();
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+/**
+ * Background model of a luma plane, classifying the pixels of each frame as foreground or
+ * background
+ *
+ * Implementations work on flat primitive arrays only, so they run and can be measured on any
+ * JVM without the OpenCV native library.
+ */
+public interface BackgroundModel {
+
+    /**
+     * Creator of a model for a frame size
+     */
+    interface Factory {
+        /**
+         * Create a model
+         * @param width Frame width
+         * @param height Frame height
+         * @return New model
+         */
+        BackgroundModel create(int width, int height);
+    }
+
+    /**
+     * Update the model with a frame and classify its pixels
+     * @param frame Luma plane of width * height bytes from index 0, without row padding
+     * @param foreground Receives 255 for each foreground pixel and 0 for each background pixel
+     */
+    void apply(byte[] frame, byte[] foreground);
+
+    /**
+     * Forget the learned background; the next frame becomes the background
+     */
+    void reset();
+}
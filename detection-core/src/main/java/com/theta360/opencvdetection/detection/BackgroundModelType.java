@@ -0,0 +1,46 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+/**
+ * Selection of the background model of the moving area detection
+ */
+public enum BackgroundModelType {
+    /** OpenCV KNN background subtractor */
+    KNN,
+    /** Pure Java running average, see {@link RunningAverageBackgroundModel} */
+    RUNNING_AVERAGE,
+    /** Pure Java per-pixel Gaussian, see {@link GaussianBackgroundModel} */
+    GAUSSIAN;
+
+    /**
+     * Create the factory of the pure Java models with the parameters of {@link DetectionConstants}
+     * @return Factory, or null for the OpenCV subtractor
+     */
+    public BackgroundModel.Factory factory() {
+        switch (this) {
+            case RUNNING_AVERAGE:
+                return RunningAverageBackgroundModel.factory(DetectionConstants.BACKGROUND_LEARNING_RATE,
+                        DetectionConstants.RUNNING_AVERAGE_THRESHOLD);
+            case GAUSSIAN:
+                return GaussianBackgroundModel.factory(DetectionConstants.BACKGROUND_LEARNING_RATE,
+                        DetectionConstants.GAUSSIAN_THRESHOLD);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+/**
+ * Merger of the boxes detected in horizontal bands of a frame
+ *
+ * An object crossing the seam between two bands is seen as one or more boxes on each side.
+ * Every pair of boxes of adjacent bands that intersect or touch is joined in a union-find
+ * forest, so the pieces of a U-shaped or an inverted V-shaped object end up in one box even
+ * when one band sees two pieces and the other band sees one. Boxes of the same band are only
+ * joined through a box of an adjacent band. No memory is allocated once the arrays have grown
+ * to the largest number of boxes.
+ */
+public class BandBoxMerger {
+
+    private int[] mParents = new int[DetectionConstants.MAX_MOVING_AREA_COUNT];
+    private int[] mOutputs = new int[DetectionConstants.MAX_MOVING_AREA_COUNT];
+
+    /**
+     * Merge the boxes of all bands
+     * @param bandAreas Boxes of each band, from the top band to the bottom band
+     * @param movingAreas Buffer receiving the merged boxes, cleared first
+     * @return Number of merged boxes
+     */
+    public int merge(RectBuffer[] bandAreas, RectBuffer movingAreas) {
+        movingAreas.clear();
+        int total = 0;
+        for (RectBuffer areas : bandAreas) {
+            total += areas.size();
+        }
+        if (mParents.length < total) {
+            mParents = new int[total * 2];
+            mOutputs = new int[total * 2];
+        }
+        for (int i = 0; i < total; i++) {
+            mParents[i] = i;
+            mOutputs[i] = -1;
+        }
+
+        int offset = 0;
+        for (int band = 1; band < bandAreas.length; band++) {
+            RectBuffer upper = bandAreas[band - 1];
+            RectBuffer lower = bandAreas[band];
+            int lowerOffset = offset + upper.size();
+            for (int i = 0; i < upper.size(); i++) {
+                for (int j = 0; j < lower.size(); j++) {
+                    if (touches(upper, i, lower, j)) {
+                        union(offset + i, lowerOffset + j);
+                    }
+                }
+            }
+            offset = lowerOffset;
+        }
+
+        // the merged boxes keep the order of their first piece
+        int index = 0;
+        for (RectBuffer areas : bandAreas) {
+            for (int i = 0; i < areas.size(); i++, index++) {
+                int root = find(index);
+                int output = mOutputs[root];
+                if (output < 0) {
+                    mOutputs[root] = movingAreas.add(areas.getX(i), areas.getY(i), areas.getWidth(i),
+                            areas.getHeight(i));
+                } else {
+                    int left = Math.min(areas.getX(i), movingAreas.getX(output));
+                    int top = Math.min(areas.getY(i), movingAreas.getY(output));
+                    int right = Math.max(areas.getRight(i), movingAreas.getRight(output));
+                    int bottom = Math.max(areas.getBottom(i), movingAreas.getBottom(output));
+                    movingAreas.set(output, left, top, right - left, bottom - top);
+                }
+            }
+        }
+        return movingAreas.size();
+    }
+
+    private static boolean touches(RectBuffer a, int i, RectBuffer b, int j) {
+        // right and bottom are exclusive, so touching boxes are merged too
+        return a.getX(i) <= b.getRight(j) && b.getX(j) <= a.getRight(i)
+                && a.getY(i) <= b.getBottom(j) && b.getY(j) <= a.getBottom(i);
+    }
+
+    private int find(int i) {
+        while (mParents[i] != i) {
+            mParents[i] = mParents[mParents[i]];
+            i = mParents[i];
+        }
+        return i;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA != rootB) {
+            // the root is the earlier box, so roots are found in output order
+            mParents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of blobs stored in primitive arrays
+ *
+ * A blob is a connected set of foreground pixels, described by its bounding box, its number of
+ * pixels and its centroid. Like RectBuffer, the buffer is meant to be cleared and refilled for
+ * every frame; it only allocates when it grows.
+ */
+public class BlobBuffer {
+
+    private int[] mBoxes;
+    private int[] mPixelCounts;
+    private float[] mCentroids;
+    private int mSize;
+
+    /**
+     * Constructor
+     *
+     * @param initialCapacity Number of blobs that fit without growing
+     */
+    public BlobBuffer(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        mBoxes = new int[capacity * RectBuffer.STRIDE];
+        mPixelCounts = new int[capacity];
+        mCentroids = new float[capacity * 2];
+    }
+
+    /**
+     * Remove all blobs, keeping the storage
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Acquire number of blobs
+     * @return Number of blobs
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Append a blob
+     * @param x Left
+     * @param y Top
+     * @param width Width
+     * @param height Height
+     * @param pixelCount Number of pixels
+     * @param centroidX Mean x of the pixels
+     * @param centroidY Mean y of the pixels
+     * @return Index of the blob
+     */
+    public int add(int x, int y, int width, int height, int pixelCount, float centroidX, float centroidY) {
+        ensureCapacity(mSize + 1);
+        int index = mSize++;
+        set(index, x, y, width, height, pixelCount, centroidX, centroidY);
+        return index;
+    }
+
+    /**
+     * Overwrite a blob
+     * @param index Index of the blob
+     * @param x Left
+     * @param y Top
+     * @param width Width
+     * @param height Height
+     * @param pixelCount Number of pixels
+     * @param centroidX Mean x of the pixels
+     * @param centroidY Mean y of the pixels
+     */
+    public void set(int index, int x, int y, int width, int height, int pixelCount,
+                    float centroidX, float centroidY) {
+        int offset = index * RectBuffer.STRIDE;
+        mBoxes[offset] = x;
+        mBoxes[offset + 1] = y;
+        mBoxes[offset + 2] = width;
+        mBoxes[offset + 3] = height;
+        mPixelCounts[index] = pixelCount;
+        mCentroids[index * 2] = centroidX;
+        mCentroids[index * 2 + 1] = centroidY;
+    }
+
+    /**
+     * Remove a blob, keeping the order of the others
+     * @param index Index of the blob
+     */
+    public void remove(int index) {
+        int moved = mSize - index - 1;
+        if (moved > 0) {
+            System.arraycopy(mBoxes, (index + 1) * RectBuffer.STRIDE, mBoxes, index * RectBuffer.STRIDE,
+                    moved * RectBuffer.STRIDE);
+            System.arraycopy(mPixelCounts, index + 1, mPixelCounts, index, moved);
+            System.arraycopy(mCentroids, (index + 1) * 2, mCentroids, index * 2, moved * 2);
+        }
+        mSize--;
+    }
+
+    /**
+     * Acquire left
+     * @param index Index of the blob
+     * @return Left
+     */
+    public int getX(int index) {
+        return mBoxes[index * RectBuffer.STRIDE];
+    }
+
+    /**
+     * Acquire top
+     * @param index Index of the blob
+     * @return Top
+     */
+    public int getY(int index) {
+        return mBoxes[index * RectBuffer.STRIDE + 1];
+    }
+
+    /**
+     * Acquire width
+     * @param index Index of the blob
+     * @return Width
+     */
+    public int getWidth(int index) {
+        return mBoxes[index * RectBuffer.STRIDE + 2];
+    }
+
+    /**
+     * Acquire height
+     * @param index Index of the blob
+     * @return Height
+     */
+    public int getHeight(int index) {
+        return mBoxes[index * RectBuffer.STRIDE + 3];
+    }
+
+    /**
+     * Acquire right edge
+     * @param index Index of the blob
+     * @return x + width, exclusive
+     */
+    public int getRight(int index) {
+        return getX(index) + getWidth(index);
+    }
+
+    /**
+     * Acquire bottom edge
+     * @param index Index of the blob
+     * @return y + height, exclusive
+     */
+    public int getBottom(int index) {
+        return getY(index) + getHeight(index);
+    }
+
+    /**
+     * Acquire number of pixels
+     * @param index Index of the blob
+     * @return Number of foreground pixels
+     */
+    public int getPixelCount(int index) {
+        return mPixelCounts[index];
+    }
+
+    /**
+     * Acquire centroid x
+     * @param index Index of the blob
+     * @return Mean x of the pixels
+     */
+    public float getCentroidX(int index) {
+        return mCentroids[index * 2];
+    }
+
+    /**
+     * Acquire centroid y
+     * @param index Index of the blob
+     * @return Mean y of the pixels
+     */
+    public float getCentroidY(int index) {
+        return mCentroids[index * 2 + 1];
+    }
+
+    /**
+     * Grow the storage
+     * @param capacity Number of blobs that must fit
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= mPixelCounts.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mPixelCounts.length * 2);
+        mBoxes = Arrays.copyOf(mBoxes, newCapacity * RectBuffer.STRIDE);
+        mPixelCounts = Arrays.copyOf(mPixelCounts, newCapacity);
+        mCentroids = Arrays.copyOf(mCentroids, newCapacity * 2);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < mSize; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(getX(i)).append(',').append(getY(i)).append(' ')
+                    .append(getWidth(i)).append('x').append(getHeight(i))
+                    .append(" n=").append(getPixelCount(i));
+        }
+        return sb.append(']').toString();
+    }
+}
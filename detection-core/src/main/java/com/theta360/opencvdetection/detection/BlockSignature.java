@@ -0,0 +1,105 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+/**
+ * Signature of a luma plane made of the mean of each block of a coarse grid
+ *
+ * Comparing the signatures of two frames is a cheap test of a global change: a moving object
+ * shifts the mean of the blocks it covers, while the sensor noise mostly averages out. The means
+ * are computed by FrameChangeCheck with an area downscaling, so they are whole gray levels.
+ */
+public class BlockSignature {
+
+    private final int mBlocksX;
+    private final int mBlocksY;
+    private final float[] mMeans;
+
+    /**
+     * Constructor
+     *
+     * @param blocksX Number of blocks per row
+     * @param blocksY Number of blocks per column
+     */
+    public BlockSignature(int blocksX, int blocksY) {
+        mBlocksX = blocksX;
+        mBlocksY = blocksY;
+        mMeans = new float[blocksX * blocksY];
+    }
+
+    /**
+     * Acquire number of blocks per row
+     * @return Number of blocks
+     */
+    public int getBlocksX() {
+        return mBlocksX;
+    }
+
+    /**
+     * Acquire number of blocks per column
+     * @return Number of blocks
+     */
+    public int getBlocksY() {
+        return mBlocksY;
+    }
+
+    /**
+     * Acquire the mean of a block
+     * @param x Block column
+     * @param y Block row
+     * @return Mean gray level
+     */
+    public float getMean(int x, int y) {
+        return mMeans[y * mBlocksX + x];
+    }
+
+    /**
+     * Set the signature from block means computed elsewhere, e.g. by an area downscaling
+     * @param means Block means row by row, blocksX * blocksY values
+     */
+    public void set(byte[] means) {
+        for (int i = 0; i < mMeans.length; i++) {
+            mMeans[i] = means[i] & 0xFF;
+        }
+    }
+
+    /**
+     * Copy another signature of the same grid
+     * @param other Source signature
+     */
+    public void copyFrom(BlockSignature other) {
+        System.arraycopy(other.mMeans, 0, mMeans, 0, mMeans.length);
+    }
+
+    /**
+     * Compare with another signature of the same grid
+     * @param other Signature to compare with
+     * @return Largest difference of the means of a block, in gray levels
+     */
+    public float maxDifference(BlockSignature other) {
+        final float[] means = mMeans;
+        final float[] otherMeans = other.mMeans;
+        float max = 0;
+        for (int i = 0; i < means.length; i++) {
+            float d = Math.abs(means[i] - otherMeans[i]);
+            if (d > max) {
+                max = d;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import java.util.Arrays;
+
+/**
+ * Connected-component labeler of binary masks
+ *
+ * One raster scan assigns a provisional label to each foreground pixel from its already
+ * scanned 8-connected neighbors, records label equivalences in a union-find forest, and
+ * accumulates the bounding box, pixel count and coordinate sums per provisional label. The
+ * statistics of equivalent labels are then merged into their root. The label plane and all
+ * per-label arrays are reused, so labeling does not allocate once they have grown.
+ * It is not thread safe; use it from one thread.
+ *
+ * For equirectangular frames, the first and the last columns can be treated as adjacent. Only
+ * the two seam columns are examined for that, after the scan; a blob crossing the seam gets a
+ * box that starts left of the last column and extends past the right edge of the mask.
+ */
+public class ConnectedComponentLabeler {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mLabels;
+    private int mLabelCount;
+    private boolean mWrapAround = false;
+
+    // per provisional label, index 0 unused
+    private int[] mParent;
+    private int[] mMinX;
+    private int[] mMinY;
+    private int[] mMaxX;
+    private int[] mMaxY;
+    private int[] mCount;
+    private long[] mSumX;
+    private long[] mSumY;
+    private int[] mBlobIndex;
+    private boolean[] mWrapped;
+    private boolean[] mFullWidth;
+
+    /**
+     * Constructor
+     *
+     * @param width Mask width
+     * @param height Mask height
+     */
+    public ConnectedComponentLabeler(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mLabels = new int[width * height];
+        allocateLabels(256);
+    }
+
+    /**
+     * Acquire mask width
+     * @return Width
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Acquire mask height
+     * @return Height
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Treat the first and the last columns as adjacent, as in a 360 degree equirectangular frame
+     * @param wrapAround true to merge blobs across the left and right edges
+     */
+    public void setWrapAround(boolean wrapAround) {
+        mWrapAround = wrapAround;
+    }
+
+    /**
+     * Label the foreground pixels of a mask
+     * @param mask Mask of width * height bytes without row padding; non-zero is foreground
+     * @param blobs Buffer receiving the blobs in the order of their first pixel, cleared first
+     * @return Number of blobs
+     */
+    public int label(byte[] mask, BlobBuffer blobs) {
+        blobs.clear();
+        scan(mask);
+        resolve(blobs);
+        return blobs.size();
+    }
+
+    /**
+     * Acquire the blob of a pixel after {@link #label(byte[], BlobBuffer)}
+     * @param x Column
+     * @param y Row
+     * @return Index of the blob in the buffer, or -1 for a background pixel
+     */
+    public int getBlobIndex(int x, int y) {
+        int label = mLabels[y * mWidth + x];
+        return label == 0 ? -1 : mBlobIndex[find(label)];
+    }
+
+    private void scan(byte[] mask) {
+        final int width = mWidth;
+        final int[] labels = mLabels;
+        mLabelCount = 0;
+
+        for (int y = 0; y < mHeight; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int i = row + x;
+                if (mask[i] == 0) {
+                    labels[i] = 0;
+                    continue;
+                }
+
+                // neighbors already scanned: west, north-west, north, north-east
+                int label = x > 0 ? labels[i - 1] : 0;
+                if (y > 0) {
+                    int up = i - width;
+                    if (x > 0) {
+                        label = merge(label, labels[up - 1]);
+                    }
+                    label = merge(label, labels[up]);
+                    if (x < width - 1) {
+                        label = merge(label, labels[up + 1]);
+                    }
+                }
+                if (label == 0) {
+                    label = newLabel(x, y);
+                }
+                labels[i] = label;
+
+                if (x < mMinX[label]) mMinX[label] = x;
+                if (x > mMaxX[label]) mMaxX[label] = x;
+                if (y > mMaxY[label]) mMaxY[label] = y;
+                mCount[label]++;
+                mSumX[label] += x;
+                mSumY[label] += y;
+            }
+        }
+    }
+
+    // returns the smaller root of two labels after recording that they are equivalent
+    private int merge(int a, int b) {
+        if (b == 0) {
+            return a;
+        }
+        if (a == 0 || a == b) {
+            return b;
+        }
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return rootA;
+        }
+        if (rootA < rootB) {
+            mParent[rootB] = rootA;
+            return rootA;
+        }
+        mParent[rootA] = rootB;
+        return rootB;
+    }
+
+    private int find(int label) {
+        final int[] parent = mParent;
+        while (parent[label] != label) {
+            // path halving
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    private int newLabel(int x, int y) {
+        int label = ++mLabelCount;
+        if (label >= mParent.length) {
+            allocateLabels(mParent.length * 2);
+        }
+        mParent[label] = label;
+        mMinX[label] = x;
+        mMinY[label] = y;
+        mMaxX[label] = x;
+        mMaxY[label] = y;
+        mCount[label] = 0;
+        mSumX[label] = 0;
+        mSumY[label] = 0;
+        return label;
+    }
+
+    private void resolve(BlobBuffer blobs) {
+        // each provisional label adds its own statistics to its root
+        for (int label = 1; label <= mLabelCount; label++) {
+            int root = find(label);
+            if (root != label) {
+                addStatistics(label, root);
+            }
+        }
+        if (mWrapAround && mergeSeam()) {
+            mergeWrapped();
+        }
+
+        for (int label = 1; label <= mLabelCount; label++) {
+            if (mParent[label] != label) {
+                continue;
+            }
+            int count = mCount[label];
+            int x = mMinX[label];
+            int width = mMaxX[label] - x + 1;
+            float centroidX = (float) mSumX[label] / count;
+            if (mWrapAround && mFullWidth[label]) {
+                x = 0;
+                width = mWidth;
+            }
+            if (centroidX >= mWidth) {
+                centroidX -= mWidth;
+            }
+            mBlobIndex[label] = blobs.add(x, mMinY[label], width, mMaxY[label] - mMinY[label] + 1,
+                    count, centroidX, (float) mSumY[label] / count);
+        }
+    }
+
+    // joins the blobs of the last column with their neighbors in the first column;
+    // returns true if blobs were joined
+    private boolean mergeSeam() {
+        final int width = mWidth;
+        final int[] labels = mLabels;
+        for (int label = 1; label <= mLabelCount; label++) {
+            mWrapped[label] = false;
+            mFullWidth[label] = false;
+        }
+        if (width < 2) {
+            return false;
+        }
+
+        boolean merged = false;
+        for (int y = 0; y < mHeight; y++) {
+            int right = labels[y * width + width - 1];
+            if (right == 0) {
+                continue;
+            }
+            for (int yy = Math.max(y - 1, 0); yy <= Math.min(y + 1, mHeight - 1); yy++) {
+                int left = labels[yy * width];
+                if (left == 0) {
+                    continue;
+                }
+                int rootRight = find(right);
+                int rootLeft = find(left);
+                if (rootRight != rootLeft) {
+                    merge(rootRight, rootLeft);
+                    mWrapped[rootRight] = true;
+                    mWrapped[rootLeft] = true;
+                    merged = true;
+                }
+            }
+        }
+        return merged;
+    }
+
+    // merges the statistics of the flat blobs joined across the seam, shifting the parts
+    // on the left edge by the width so that the box is contiguous
+    private void mergeWrapped() {
+        for (int label = 1; label <= mLabelCount; label++) {
+            if (mWrapped[label] && mParent[label] == label) {
+                shiftLeftPart(label, label);
+            }
+        }
+        for (int label = 1; label <= mLabelCount; label++) {
+            if (!mWrapped[label] || mParent[label] == label) {
+                continue;
+            }
+            int root = find(label);
+            shiftLeftPart(label, root);
+            addStatistics(label, root);
+        }
+    }
+
+    private void shiftLeftPart(int label, int root) {
+        boolean left = mMinX[label] == 0;
+        boolean right = mMaxX[label] == mWidth - 1;
+        if (left && right) {
+            mFullWidth[root] = true;
+        } else if (left) {
+            mMinX[label] += mWidth;
+            mMaxX[label] += mWidth;
+            mSumX[label] += (long) mCount[label] * mWidth;
+        }
+    }
+
+    private void addStatistics(int label, int root) {
+        if (mMinX[label] < mMinX[root]) mMinX[root] = mMinX[label];
+        if (mMinY[label] < mMinY[root]) mMinY[root] = mMinY[label];
+        if (mMaxX[label] > mMaxX[root]) mMaxX[root] = mMaxX[label];
+        if (mMaxY[label] > mMaxY[root]) mMaxY[root] = mMaxY[label];
+        mCount[root] += mCount[label];
+        mSumX[root] += mSumX[label];
+        mSumY[root] += mSumY[label];
+    }
+
+    private void allocateLabels(int capacity) {
+        if (mParent == null) {
+            mParent = new int[capacity];
+            mMinX = new int[capacity];
+            mMinY = new int[capacity];
+            mMaxX = new int[capacity];
+            mMaxY = new int[capacity];
+            mCount = new int[capacity];
+            mSumX = new long[capacity];
+            mSumY = new long[capacity];
+            mBlobIndex = new int[capacity];
+            mWrapped = new boolean[capacity];
+            mFullWidth = new boolean[capacity];
+            return;
+        }
+        mParent = Arrays.copyOf(mParent, capacity);
+        mMinX = Arrays.copyOf(mMinX, capacity);
+        mMinY = Arrays.copyOf(mMinY, capacity);
+        mMaxX = Arrays.copyOf(mMaxX, capacity);
+        mMaxY = Arrays.copyOf(mMaxY, capacity);
+        mCount = Arrays.copyOf(mCount, capacity);
+        mSumX = Arrays.copyOf(mSumX, capacity);
+        mSumY = Arrays.copyOf(mSumY, capacity);
+        mBlobIndex = Arrays.copyOf(mBlobIndex, capacity);
+        mWrapped = Arrays.copyOf(mWrapped, capacity);
+        mFullWidth = Arrays.copyOf(mFullWidth, capacity);
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+/**
+ * Parameters of the moving area detection
+ *
+ * They are kept apart from the constants of the plug-in, which depend on the Android framework, so
+ * that the detectors run unchanged on a desktop JVM.
+ */
+public final class DetectionConstants {
+    private DetectionConstants() {}
+
+    // Image Processing parameters
+    public static final int THRESHOLD_BINARIZATION = 3;
+    public static final int APPROXIMATED_ACCURACY_PARAM = 40;
+    public static final double THRESHOLD_AREA_SIZE = 50.0;
+    // true: boxes of the contours approximated by approxPolyDP,
+    // false: boxes of the connected components of the foreground mask
+    public static final boolean DETECT_BY_CONTOURS = false;
+    // merge the blobs across the left and right edges of the equirectangular frame
+    public static final boolean WRAP_AROUND = true;
+    // number of moving areas a frame holds before its buffer grows
+    public static final int MAX_MOVING_AREA_COUNT = 64;
+    // difference from the full resolution background in gray levels, and its learning rate
+    public static final float REFINE_THRESHOLD = 16f;
+    public static final float REFINE_LEARNING_RATE = 0.05f;
+    // learning rate of the pure Java background models
+    public static final float BACKGROUND_LEARNING_RATE = 0.02f;
+    // difference from the running average in gray levels
+    public static final float RUNNING_AVERAGE_THRESHOLD = 24f;
+    // distance from the Gaussian mean in standard deviations
+    public static final float GAUSSIAN_THRESHOLD = 3f;
+    // side in pixels of the blocks of the change signature; the smallest detected object, a box
+    // of about 8x8 pixels 20 gray levels off the background, moves the mean of a block by 5 levels
+    // even when it straddles four blocks
+    public static final int SIGNATURE_BLOCK_SIZE = 8;
+    // difference of a block mean in gray levels above which a frame changed
+    public static final float SIGNATURE_THRESHOLD = 3f;
+    // maximum number of frames in a row PreFilteredAreaDetector keeps from its detector
+    public static final int PREFILTER_REFRESH_INTERVAL = 15;
+    // number of frames PreFilteredAreaDetector still gives to its detector after moving areas; a
+    // slow faint object the detector loses for a few frames is found again within the hold
+    public static final int PREFILTER_HOLD_FRAMES = 15;
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Region of an equirectangular frame in which moving areas are detected
+ *
+ * The region is made of inclusion and exclusion polygons, given in pixels or in spherical
+ * coordinates (yaw and pitch in degrees, yaw 0 at the horizontal center and pitch 90 at the
+ * top). Without inclusion polygons the whole frame is included; exclusions are applied after
+ * inclusions. The detector only processes the tile-aligned bounding box of the region, and
+ * pixels outside the region never change inside it.
+ */
+public class DetectionMask {
+
+    /** Size of the tiles the active area is aligned to */
+    public static final int TILE_SIZE = 16;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final List<MatOfPoint> mInclusions = new ArrayList<>();
+    private final List<MatOfPoint> mExclusions = new ArrayList<>();
+    private Mat mMask;
+    private Rect mActiveRect;
+    private int mActivePixelCount;
+
+    /**
+     * Constructor
+     *
+     * @param width Frame width
+     * @param height Frame height
+     */
+    public DetectionMask(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Add a polygon to detect in
+     * @param xy Vertices as interleaved x, y in pixels
+     */
+    public void addInclusion(double... xy) {
+        mInclusions.add(toPolygon(xy, false));
+        invalidate();
+    }
+
+    /**
+     * Add a polygon not to detect in
+     * @param xy Vertices as interleaved x, y in pixels
+     */
+    public void addExclusion(double... xy) {
+        mExclusions.add(toPolygon(xy, false));
+        invalidate();
+    }
+
+    /**
+     * Add a polygon to detect in
+     * @param yawPitch Vertices as interleaved yaw, pitch in degrees; edges are straight in the
+     *                 equirectangular frame
+     */
+    public void addSphericalInclusion(double... yawPitch) {
+        mInclusions.add(toPolygon(yawPitch, true));
+        invalidate();
+    }
+
+    /**
+     * Add a polygon not to detect in
+     * @param yawPitch Vertices as interleaved yaw, pitch in degrees; edges are straight in the
+     *                 equirectangular frame
+     */
+    public void addSphericalExclusion(double... yawPitch) {
+        mExclusions.add(toPolygon(yawPitch, true));
+        invalidate();
+    }
+
+    /**
+     * Create a region limited to a band of rows
+     * @param top First row of the band
+     * @param bottom Row after the last row of the band
+     * @return New region, the intersection of this region and the band
+     */
+    public DetectionMask band(int top, int bottom) {
+        DetectionMask band = new DetectionMask(mWidth, mHeight);
+        for (MatOfPoint polygon : mInclusions) {
+            band.mInclusions.add(new MatOfPoint(polygon.toArray()));
+        }
+        for (MatOfPoint polygon : mExclusions) {
+            band.mExclusions.add(new MatOfPoint(polygon.toArray()));
+        }
+        if (top > 0) {
+            band.addExclusion(0, 0, mWidth, 0, mWidth, top - 1, 0, top - 1);
+        }
+        if (bottom < mHeight) {
+            band.addExclusion(0, bottom, mWidth, bottom, mWidth, mHeight, 0, mHeight);
+        }
+        return band;
+    }
+
+    /**
+     * Create the same region for a downscaled frame
+     * @param factor Downscaling factor
+     * @return New region for a frame of width / factor and height / factor
+     */
+    public DetectionMask scaled(int factor) {
+        DetectionMask scaled = new DetectionMask(mWidth / factor, mHeight / factor);
+        scaleInto(mInclusions, scaled.mInclusions, factor);
+        scaleInto(mExclusions, scaled.mExclusions, factor);
+        return scaled;
+    }
+
+    /**
+     * Exclude the area below a pitch, e.g. the camera body around the nadir
+     * @param pitch Pitch in degrees
+     */
+    public void excludeBelowPitch(double pitch) {
+        if (pitch > -90) {
+            addSphericalExclusion(-180, pitch, 180, pitch, 180, -90, -180, -90);
+        }
+    }
+
+    /**
+     * Exclude the area above a pitch, e.g. the sky around the zenith
+     * @param pitch Pitch in degrees
+     */
+    public void excludeAbovePitch(double pitch) {
+        if (pitch < 90) {
+            addSphericalExclusion(-180, 90, 180, 90, 180, pitch, -180, pitch);
+        }
+    }
+
+    /**
+     * Acquire the mask of the region
+     * @return CV_8UC1 Mat of the frame size, 255 inside the region
+     */
+    public Mat getMask() {
+        build();
+        return mMask;
+    }
+
+    /**
+     * Acquire the tile-aligned bounding box of the region
+     * @return Rectangle in pixels, empty if nothing is included
+     */
+    public Rect getActiveRect() {
+        build();
+        return mActiveRect;
+    }
+
+    /**
+     * Check whether the region is the whole frame
+     * @return true if nothing is excluded
+     */
+    public boolean isFullFrame() {
+        build();
+        return mActivePixelCount == mWidth * mHeight;
+    }
+
+    /**
+     * Acquire the ratio of the frame inside the region
+     * @return Ratio from 0 to 1
+     */
+    public double getActiveRatio() {
+        build();
+        return (double) mActivePixelCount / (mWidth * mHeight);
+    }
+
+    /**
+     * Release the native resources
+     */
+    public void release() {
+        invalidate();
+        for (MatOfPoint polygon : mInclusions) {
+            polygon.release();
+        }
+        for (MatOfPoint polygon : mExclusions) {
+            polygon.release();
+        }
+        mInclusions.clear();
+        mExclusions.clear();
+    }
+
+    private void invalidate() {
+        if (mMask != null) {
+            mMask.release();
+            mMask = null;
+        }
+        mActiveRect = null;
+    }
+
+    private void build() {
+        if (mMask != null) {
+            return;
+        }
+        if (mInclusions.isEmpty()) {
+            mMask = new Mat(mHeight, mWidth, CvType.CV_8UC1, new Scalar(255));
+        } else {
+            mMask = Mat.zeros(mHeight, mWidth, CvType.CV_8UC1);
+            Imgproc.fillPoly(mMask, mInclusions, new Scalar(255));
+        }
+        if (!mExclusions.isEmpty()) {
+            Imgproc.fillPoly(mMask, mExclusions, new Scalar(0));
+        }
+
+        mActivePixelCount = Core.countNonZero(mMask);
+        if (mActivePixelCount == 0) {
+            mActiveRect = new Rect();
+            return;
+        }
+        Rect bounds = Imgproc.boundingRect(mMask);
+        int left = bounds.x / TILE_SIZE * TILE_SIZE;
+        int top = bounds.y / TILE_SIZE * TILE_SIZE;
+        int right = Math.min(alignUp(bounds.x + bounds.width), mWidth);
+        int bottom = Math.min(alignUp(bounds.y + bounds.height), mHeight);
+        mActiveRect = new Rect(left, top, right - left, bottom - top);
+    }
+
+    private static void scaleInto(List<MatOfPoint> source, List<MatOfPoint> destination, int factor) {
+        for (MatOfPoint polygon : source) {
+            Point[] points = polygon.toArray();
+            for (Point point : points) {
+                point.x = Math.round(point.x / factor);
+                point.y = Math.round(point.y / factor);
+            }
+            destination.add(new MatOfPoint(points));
+        }
+    }
+
+    private static int alignUp(int value) {
+        return (value + TILE_SIZE - 1) / TILE_SIZE * TILE_SIZE;
+    }
+
+    private MatOfPoint toPolygon(double[] coordinates, boolean spherical) {
+        if (coordinates.length < 6 || coordinates.length % 2 != 0) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices as x, y pairs");
+        }
+        Point[] points = new Point[coordinates.length / 2];
+        for (int i = 0; i < points.length; i++) {
+            double x = coordinates[i * 2];
+            double y = coordinates[i * 2 + 1];
+            if (spherical) {
+                x = (x + 180) / 360 * mWidth;
+                y = (90 - y) / 180 * mHeight;
+            }
+            points[i] = new Point(Math.round(x), Math.round(y));
+        }
+        return new MatOfPoint(points);
+    }
+}
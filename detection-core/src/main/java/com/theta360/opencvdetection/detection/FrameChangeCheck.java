@@ -0,0 +1,100 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cheap check of a global change between frames
+ *
+ * The block signature of the luma plane is compared with the signature of the previous checked
+ * frame; the frame has changed when the mean of a block moved by more than a threshold. It is
+ * not thread safe; use it from one thread.
+ */
+public class FrameChangeCheck {
+
+    private final Size mGridSize;
+    private final float mThreshold;
+    private final BlockSignature mSignature;
+    private final BlockSignature mPrevious;
+    private final Mat mBlocks = new Mat();
+    private final byte[] mBlockBytes;
+    private boolean mHasPrevious = false;
+
+    /**
+     * Constructor
+     *
+     * @param blocksX Number of signature blocks per row
+     * @param blocksY Number of signature blocks per column
+     * @param threshold Difference of a block mean in gray levels above which the frame changed
+     */
+    public FrameChangeCheck(int blocksX, int blocksY, float threshold) {
+        mGridSize = new Size(blocksX, blocksY);
+        mThreshold = threshold;
+        mSignature = new BlockSignature(blocksX, blocksY);
+        mPrevious = new BlockSignature(blocksX, blocksY);
+        mBlockBytes = new byte[blocksX * blocksY];
+    }
+
+    /**
+     * Compare a frame with the previous checked frame
+     * @param gray Luma plane of the frame, e.g. the gray view the camera frame keeps
+     * @return true if the frame changed, or if it is the first frame
+     */
+    public boolean check(Mat gray) {
+        return check(computeSignature(gray, mBlocks, mBlockBytes, mGridSize, mSignature));
+    }
+
+    /**
+     * Compare a frame with the previous checked frame
+     * @param signature Signature of the frame
+     * @return true if the frame changed, or if it is the first frame
+     */
+    public boolean check(BlockSignature signature) {
+        boolean changed = !mHasPrevious || signature.maxDifference(mPrevious) > mThreshold;
+        mPrevious.copyFrom(signature);
+        mHasPrevious = true;
+        return changed;
+    }
+
+    /**
+     * Release the native resources
+     */
+    public void release() {
+        mBlocks.release();
+    }
+
+    /**
+     * Compute the signature of a gray frame with an area downscaling
+     * @param gray Gray frame
+     * @param blocks Scratch Mat
+     * @param blockBytes Scratch array of one byte per block
+     * @param gridSize Number of blocks per row and per column
+     * @param signature Signature receiving the block means
+     * @return signature
+     */
+    static BlockSignature computeSignature(Mat gray, Mat blocks, byte[] blockBytes, Size gridSize,
+                                           BlockSignature signature) {
+        // with INTER_AREA, each pixel of the downscaled frame is the mean of its block
+        Imgproc.resize(gray, blocks, gridSize, 0, 0, Imgproc.INTER_AREA);
+        blocks.get(0, 0, blockBytes);
+        signature.set(blockBytes);
+        return signature;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+/**
+ * Background model keeping a Gaussian distribution of each pixel
+ *
+ * A pixel is foreground when it is more than a number of standard deviations away from its
+ * mean. The mean and the variance are updated with the learning rate; the variance is kept
+ * above a floor so that a perfectly static pixel does not become foreground on sensor noise.
+ */
+public class GaussianBackgroundModel implements BackgroundModel {
+
+    /** Variance of a pixel before it has been observed, in squared gray levels */
+    public static final float INITIAL_VARIANCE = 15f * 15f;
+    /** Lower bound of the variance, in squared gray levels */
+    public static final float MIN_VARIANCE = 4f * 4f;
+
+    private final int mPixelCount;
+    private final float mLearningRate;
+    private final float mThresholdSquared;
+    private final float[] mMean;
+    private final float[] mVariance;
+    private boolean mInitialized = false;
+
+    /**
+     * Constructor
+     *
+     * @param width Frame width
+     * @param height Frame height
+     * @param learningRate Weight of a new frame in the distribution, from 0 to 1
+     * @param threshold Distance from the mean in standard deviations above which a pixel is
+     *                  foreground
+     */
+    public GaussianBackgroundModel(int width, int height, float learningRate, float threshold) {
+        if (learningRate < 0 || learningRate > 1) {
+            throw new IllegalArgumentException("learningRate must be from 0 to 1");
+        }
+        mPixelCount = width * height;
+        mLearningRate = learningRate;
+        mThresholdSquared = threshold * threshold;
+        mMean = new float[mPixelCount];
+        mVariance = new float[mPixelCount];
+    }
+
+    /**
+     * Create a factory of models with the same parameters
+     * @param learningRate Weight of a new frame in the distribution, from 0 to 1
+     * @param threshold Distance from the mean in standard deviations above which a pixel is
+     *                  foreground
+     * @return Factory
+     */
+    public static BackgroundModel.Factory factory(final float learningRate, final float threshold) {
+        return new BackgroundModel.Factory() {
+            @Override
+            public BackgroundModel create(int width, int height) {
+                return new GaussianBackgroundModel(width, height, learningRate, threshold);
+            }
+        };
+    }
+
+    @Override
+    public void apply(byte[] frame, byte[] foreground) {
+        final float[] mean = mMean;
+        final float[] variance = mVariance;
+        final int n = mPixelCount;
+        if (!mInitialized) {
+            for (int i = 0; i < n; i++) {
+                mean[i] = frame[i] & 0xFF;
+                variance[i] = INITIAL_VARIANCE;
+                foreground[i] = 0;
+            }
+            mInitialized = true;
+            return;
+        }
+
+        final float rate = mLearningRate;
+        final float thresholdSquared = mThresholdSquared;
+        for (int i = 0; i < n; i++) {
+            float d = (frame[i] & 0xFF) - mean[i];
+            float d2 = d * d;
+            float v = variance[i];
+            foreground[i] = d2 > thresholdSquared * v ? (byte) 255 : 0;
+            mean[i] += rate * d;
+            v += rate * (d2 - v);
+            variance[i] = v < MIN_VARIANCE ? MIN_VARIANCE : v;
+        }
+    }
+
+    @Override
+    public void reset() {
+        mInitialized = false;
+    }
+}
@@ -0,0 +1,414 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import com.theta360.opencvdetection.metrics.Metrics;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.utils.PackedPoints;
+import org.opencv.video.BackgroundSubtractor;
+import org.opencv.video.Video;
+
+/**
+ * Detector of moving areas in consecutive gray frames
+ *
+ * The detector owns the background model and all scratch Mats, and writes the bounding boxes
+ * into a RectBuffer provided by the caller. The contours are read as packed points, so no frame
+ * allocates Java objects once the scratch arrays have grown. It is not thread safe; use it from
+ * one thread.
+ *
+ * With a DetectionMask, the background subtraction, the morphology and the contours only run
+ * on the bounding box of the mask, and the pixels outside the mask are blanked beforehand.
+ * The background is modeled by the OpenCV KNN subtractor, or by a pure Java BackgroundModel.
+ * The boxes are the blobs of a ConnectedComponentLabeler, or the bounding boxes of the
+ * approximated contours. With the labeler, a box crossing the left and right edges of the
+ * equirectangular frame extends past the right edge.
+ */
+public class MovingAreaDetector implements AreaDetector {
+
+    // number of source frames whose active area views are kept
+    private static final int VIEW_CACHE_SIZE = 8;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final BackgroundModel.Factory mModelFactory;
+    private BackgroundSubtractor mBackgroundSubtractor;
+    private BackgroundModel mModel;
+    private byte[] mInputBytes;
+    private byte[] mForegroundBytes;
+    private Mat mMask;
+    private Rect mActiveRect;
+    private Mat mRegionMask;
+    private Mat mMaskedGray;
+    private final long[] mViewSources = new long[VIEW_CACHE_SIZE];
+    private final long[] mViewSourceData = new long[VIEW_CACHE_SIZE];
+    private final Mat[] mViews = new Mat[VIEW_CACHE_SIZE];
+    private int mNextView;
+    private final Mat mStructuringElement;
+    private double mAreaThreshold = DetectionConstants.THRESHOLD_AREA_SIZE;
+    private boolean mUseContours = DetectionConstants.DETECT_BY_CONTOURS;
+    private ConnectedComponentLabeler mLabeler;
+    private byte[] mMaskBytes;
+    private final BlobBuffer mBlobs = new BlobBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+    private final Mat mHierarchy = new Mat();
+    private final Mat mContoursMat = new Mat();
+    private final PackedPoints mContours = new PackedPoints();
+    private final MatOfPoint mContour = new MatOfPoint();
+    private int[] mContourPoints = new int[256];
+    private final MatOfPoint2f mContour2f = new MatOfPoint2f();
+    private final MatOfPoint2f mApproxCurve = new MatOfPoint2f();
+    private float[] mApproxPoints = new float[64];
+    private Metrics mMetrics;
+
+    // written by the detecting thread, read for statistics
+    private volatile long mLastDetectNanos;
+    private volatile long mTotalDetectNanos;
+    private volatile long mDetectCount;
+
+    /**
+     * Constructor
+     *
+     * @param width Frame width
+     * @param height Frame height
+     */
+    public MovingAreaDetector(int width, int height) {
+        this(width, height, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param width Frame width
+     * @param height Frame height
+     * @param detectionMask Region to detect in, or null for the whole frame
+     */
+    public MovingAreaDetector(int width, int height, DetectionMask detectionMask) {
+        this(width, height, detectionMask, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param width Frame width
+     * @param height Frame height
+     * @param detectionMask Region to detect in, or null for the whole frame
+     * @param modelFactory Factory of the background model, or null for the OpenCV KNN subtractor
+     */
+    public MovingAreaDetector(int width, int height, DetectionMask detectionMask,
+                              BackgroundModel.Factory modelFactory) {
+        mWidth = width;
+        mModelFactory = modelFactory;
+        mHeight = height;
+        mStructuringElement = Imgproc.getStructuringElement(Imgproc.CV_SHAPE_ELLIPSE, new Size(3, 3));
+        setDetectionMask(detectionMask);
+    }
+
+    /**
+     * Restrict the detection to a region; the background model is restarted
+     * @param detectionMask Region to detect in, or null for the whole frame
+     */
+    public void setDetectionMask(DetectionMask detectionMask) {
+        releaseRegion();
+        if (detectionMask == null || detectionMask.isFullFrame()) {
+            mActiveRect = new Rect(0, 0, mWidth, mHeight);
+        } else {
+            mActiveRect = detectionMask.getActiveRect().clone();
+            if (!mActiveRect.empty()) {
+                Mat region = detectionMask.getMask().submat(mActiveRect);
+                mRegionMask = region.clone();
+                region.release();
+                mMaskedGray = Mat.zeros(mActiveRect.height, mActiveRect.width, CvType.CV_8UC1);
+            }
+        }
+        int rows = Math.max(mActiveRect.height, 1);
+        int cols = Math.max(mActiveRect.width, 1);
+        if (mModelFactory != null) {
+            mModel = mModelFactory.create(cols, rows);
+            mInputBytes = new byte[rows * cols];
+            mForegroundBytes = new byte[rows * cols];
+        } else {
+            mBackgroundSubtractor = Video.createBackgroundSubtractorKNN();
+        }
+        mMask = new Mat(rows, cols, CvType.CV_8UC1);
+    }
+
+    /**
+     * Set the area a moving area must exceed
+     * @param areaThreshold Area in pixels of the detected frame
+     */
+    public void setAreaThreshold(double areaThreshold) {
+        mAreaThreshold = areaThreshold;
+    }
+
+    /**
+     * Select how the boxes are extracted from the foreground mask
+     * @param useContours true for findContours and approxPolyDP, false for connected-component
+     *                    labeling
+     */
+    public void setUseContours(boolean useContours) {
+        mUseContours = useContours;
+    }
+
+    /**
+     * Acquire the area the detection runs on
+     * @return Bounding box of the detection region in pixels
+     */
+    @Override
+    public Rect getActiveRect() {
+        return mActiveRect;
+    }
+
+    /**
+     * Acquire the processing time of the last frame
+     * @return Time in nanoseconds
+     */
+    public long getLastDetectNanos() {
+        return mLastDetectNanos;
+    }
+
+    /**
+     * Acquire the average processing time per frame
+     * @return Time in nanoseconds, 0 before the first frame
+     */
+    @Override
+    public long getAverageDetectNanos() {
+        return mDetectCount == 0 ? 0 : mTotalDetectNanos / mDetectCount;
+    }
+
+    /**
+     * Update the background model with a frame and find the moving areas
+     * @param gray Gray frame
+     * @param movingAreas Buffer receiving the bounding box of each moving area, cleared first
+     * @return Number of moving areas
+     */
+    @Override
+    public int detect(Mat gray, RectBuffer movingAreas) {
+        long start = System.nanoTime();
+        int count = detectMovingAreas(gray, movingAreas);
+        mLastDetectNanos = System.nanoTime() - start;
+        mTotalDetectNanos += mLastDetectNanos;
+        mDetectCount++;
+        return count;
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        mMetrics = metrics;
+    }
+
+    private int detectMovingAreas(Mat gray, RectBuffer movingAreas) {
+        movingAreas.clear();
+        if (mActiveRect.empty()) {
+            return 0;
+        }
+        Metrics metrics = mMetrics;
+        long time = metrics != null ? System.nanoTime() : 0;
+
+        // do Background Subtractor, on the detection region only
+        Mat input = getActiveView(gray);
+        if (mRegionMask != null) {
+            input.copyTo(mMaskedGray, mRegionMask);
+            input = mMaskedGray;
+        }
+        if (mModel != null) {
+            input.get(0, 0, mInputBytes);
+            mModel.apply(mInputBytes, mForegroundBytes);
+            mMask.put(0, 0, mForegroundBytes);
+        } else {
+            mBackgroundSubtractor.apply(input, mMask);
+        }
+        if (metrics != null) {
+            time = record(metrics, Metrics.Stage.SUBTRACTION, time);
+        }
+
+        // do binarization and remove noise, in place
+        Imgproc.threshold(mMask, mMask, DetectionConstants.THRESHOLD_BINARIZATION, 255, Imgproc.THRESH_BINARY);
+        Imgproc.morphologyEx(mMask, mMask, Imgproc.MORPH_OPEN, mStructuringElement);
+
+        // nothing moves in most frames
+        boolean empty = Core.countNonZero(mMask) == 0;
+        if (metrics != null) {
+            time = record(metrics, Metrics.Stage.MORPHOLOGY, time);
+        }
+        if (empty) {
+            return 0;
+        }
+
+        int count = mUseContours ? addContours(movingAreas) : addBlobs(movingAreas);
+        if (metrics != null) {
+            record(metrics, Metrics.Stage.BLOB_EXTRACTION, time);
+        }
+        return count;
+    }
+
+    private static long record(Metrics metrics, Metrics.Stage stage, long start) {
+        long end = System.nanoTime();
+        metrics.record(stage, end - start);
+        return end;
+    }
+
+    private int addContours(RectBuffer movingAreas) {
+
+        // get boundary rectangle; the hierarchy is not used, so do not build a tree
+        Imgproc.findContours(mMask, mContours, mHierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE,
+                mContoursMat);
+
+        int[] points = mContours.points();
+        for (int i = 0; i < mContours.count(); i++) {
+            int length = mContours.size(i) * 2;
+            if (length == 0) {
+                continue;
+            }
+            if (mContourPoints.length < length) {
+                mContourPoints = new int[length * 2];
+            }
+            System.arraycopy(points, mContours.start(i) * 2, mContourPoints, 0, length);
+            mContour.create(length / 2, 1, CvType.CV_32SC2);
+            Mat.put(mContour.nativeObj, mContourPoints, length);
+
+            mContour.convertTo(mContour2f, CvType.CV_32F);
+            Imgproc.approxPolyDP(mContour2f, mApproxCurve, DetectionConstants.APPROXIMATED_ACCURACY_PARAM, true);
+            addBoundingRect(mApproxCurve, movingAreas);
+        }
+
+        return movingAreas.size();
+    }
+
+    /**
+     * Release the native resources
+     */
+    @Override
+    public void release() {
+        releaseRegion();
+        mApproxCurve.release();
+        mContour2f.release();
+        mContour.release();
+        mContoursMat.release();
+        mHierarchy.release();
+        mStructuringElement.release();
+    }
+
+    private Mat getActiveView(Mat gray) {
+        if (mActiveRect.width == gray.cols() && mActiveRect.height == gray.rows()) {
+            return gray;
+        }
+        // the frames are recycled, so a view is created once per source frame
+        long source = gray.nativeObj;
+        long sourceData = gray.dataAddr();
+        for (int i = 0; i < VIEW_CACHE_SIZE; i++) {
+            if (mViews[i] != null && mViewSources[i] == source && mViewSourceData[i] == sourceData) {
+                return mViews[i];
+            }
+        }
+        int slot = mNextView;
+        mNextView = (mNextView + 1) % VIEW_CACHE_SIZE;
+        if (mViews[slot] != null) {
+            mViews[slot].release();
+        }
+        mViews[slot] = gray.submat(mActiveRect);
+        mViewSources[slot] = source;
+        mViewSourceData[slot] = sourceData;
+        return mViews[slot];
+    }
+
+    private void releaseRegion() {
+        for (int i = 0; i < VIEW_CACHE_SIZE; i++) {
+            if (mViews[i] != null) {
+                mViews[i].release();
+                mViews[i] = null;
+            }
+        }
+        if (mRegionMask != null) {
+            mRegionMask.release();
+            mRegionMask = null;
+        }
+        if (mMaskedGray != null) {
+            mMaskedGray.release();
+            mMaskedGray = null;
+        }
+        if (mMask != null) {
+            mMask.release();
+        }
+        if (mBackgroundSubtractor != null) {
+            // the binding deletes the native subtractor only when the wrapper is finalized, so
+            // clear its history now and drop the wrapper
+            mBackgroundSubtractor.clear();
+            mBackgroundSubtractor = null;
+        }
+        mModel = null;
+        mLabeler = null;
+    }
+
+    private int addBlobs(RectBuffer movingAreas) {
+        int rows = mMask.rows();
+        int cols = mMask.cols();
+        if (mLabeler == null) {
+            mLabeler = new ConnectedComponentLabeler(cols, rows);
+            // the left and right edges only meet when the region spans the whole width
+            mLabeler.setWrapAround(DetectionConstants.WRAP_AROUND && cols == mWidth);
+            mMaskBytes = new byte[rows * cols];
+        }
+        mMask.get(0, 0, mMaskBytes);
+        mLabeler.label(mMaskBytes, mBlobs);
+        for (int i = 0; i < mBlobs.size(); i++) {
+            addMovingArea(mBlobs.getX(i), mBlobs.getY(i), mBlobs.getWidth(i), mBlobs.getHeight(i),
+                    movingAreas);
+        }
+        return movingAreas.size();
+    }
+
+    private void addBoundingRect(MatOfPoint2f curve, RectBuffer movingAreas) {
+        int length = (int) curve.total() * 2;
+        if (length == 0) {
+            return;
+        }
+        if (mApproxPoints.length < length) {
+            mApproxPoints = new float[length * 2];
+        }
+        curve.get(0, 0, mApproxPoints);
+
+        // the points are on the pixel grid, so the same box as Imgproc.boundingRect
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < length; i += 2) {
+            int x = (int) mApproxPoints[i];
+            int y = (int) mApproxPoints[i + 1];
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+
+        addMovingArea(minX, minY, maxX - minX + 1, maxY - minY + 1, movingAreas);
+    }
+
+    private void addMovingArea(int x, int y, int width, int height, RectBuffer movingAreas) {
+        if ((double) width * height > mAreaThreshold) {
+            // the mask is relative to the detection region
+            movingAreas.add(x + mActiveRect.x, y + mActiveRect.y, width, height);
+        }
+    }
+}
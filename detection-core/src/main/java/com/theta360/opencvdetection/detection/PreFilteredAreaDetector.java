@@ -0,0 +1,148 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import com.theta360.opencvdetection.metrics.Metrics;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+/**
+ * Detector running another detector only on frames that changed
+ *
+ * The block signature of each frame is compared with the signature of the frame last given to
+ * the detector. The detector runs when a block mean moved by more than the threshold, during a
+ * number of frames after the last detection that found moving areas, or after a number of
+ * skipped frames so that the background model stays fresh; otherwise the frame has no moving
+ * area. The frames held after a detection cover a slow object the detector loses for a frame:
+ * it barely changes the signature from one frame to the next, so it would not reopen the gate.
+ */
+public class PreFilteredAreaDetector implements AreaDetector {
+
+    private final AreaDetector mDetector;
+    private final float mThreshold;
+    private final int mRefreshInterval;
+    private final int mHoldFrames;
+    private final Size mGridSize;
+    private final BlockSignature mSignature;
+    private final BlockSignature mReference;
+    private final Mat mBlocks = new Mat();
+    private final byte[] mBlockBytes;
+    private boolean mHasReference = false;
+    private int mFramesSinceFound;
+    private int mSkippedInRow;
+
+    private volatile long mFrameCount;
+    private volatile long mSkipCount;
+    private volatile long mTotalDetectNanos;
+
+    /**
+     * Constructor
+     *
+     * @param detector Detector to run on the changed frames
+     * @param blocksX Number of signature blocks per row
+     * @param blocksY Number of signature blocks per column
+     * @param threshold Difference of a block mean in gray levels above which a frame changed
+     * @param refreshInterval Maximum number of frames skipped in a row
+     * @param holdFrames Number of frames given to the detector after a frame with moving areas
+     */
+    public PreFilteredAreaDetector(AreaDetector detector, int blocksX, int blocksY, float threshold,
+                                   int refreshInterval, int holdFrames) {
+        mDetector = detector;
+        mThreshold = threshold;
+        mRefreshInterval = refreshInterval;
+        mHoldFrames = holdFrames;
+        mFramesSinceFound = holdFrames;
+        mGridSize = new Size(blocksX, blocksY);
+        mSignature = new BlockSignature(blocksX, blocksY);
+        mReference = new BlockSignature(blocksX, blocksY);
+        mBlockBytes = new byte[blocksX * blocksY];
+    }
+
+    /**
+     * Acquire the detector running on the changed frames
+     * @return Detector
+     */
+    public AreaDetector getDetector() {
+        return mDetector;
+    }
+
+    /**
+     * Acquire the ratio of frames not given to the detector
+     * @return Ratio from 0 to 1
+     */
+    public double getSkipRatio() {
+        long frames = mFrameCount;
+        return frames == 0 ? 0 : (double) mSkipCount / frames;
+    }
+
+    @Override
+    public int detect(Mat gray, RectBuffer movingAreas) {
+        long start = System.nanoTime();
+        FrameChangeCheck.computeSignature(gray, mBlocks, mBlockBytes, mGridSize, mSignature);
+        boolean run = !mHasReference
+                || mFramesSinceFound < mHoldFrames
+                || mSkippedInRow >= mRefreshInterval
+                || mSignature.maxDifference(mReference) > mThreshold;
+
+        if (run) {
+            if (mDetector.detect(gray, movingAreas) > 0) {
+                mFramesSinceFound = 0;
+            } else if (mFramesSinceFound < mHoldFrames) {
+                mFramesSinceFound++;
+            }
+            mReference.copyFrom(mSignature);
+            mHasReference = true;
+            mSkippedInRow = 0;
+        } else {
+            movingAreas.clear();
+            mSkippedInRow++;
+            mSkipCount++;
+        }
+
+        mFrameCount++;
+        mTotalDetectNanos += System.nanoTime() - start;
+        return movingAreas.size();
+    }
+
+    @Override
+    public Rect getActiveRect() {
+        return mDetector.getActiveRect();
+    }
+
+    /**
+     * Acquire the average processing time per frame, including the skipped frames
+     * @return Time in nanoseconds, 0 before the first frame
+     */
+    @Override
+    public long getAverageDetectNanos() {
+        long frames = mFrameCount;
+        return frames == 0 ? 0 : mTotalDetectNanos / frames;
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        mDetector.setMetrics(metrics);
+    }
+
+    @Override
+    public void release() {
+        mDetector.release();
+        mBlocks.release();
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import com.theta360.opencvdetection.metrics.Metrics;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Detector running on a downscaled frame and refining the candidates at full resolution
+ *
+ * The gray frame is downscaled by 2 or 4 before the background subtraction and the contours.
+ * Each candidate box is then refined on the full resolution frame against a running average
+ * background: the box, extended by one downscaled pixel, is shrunk to the pixels that differ
+ * from the background. With a scale of 1 the frame is detected at full resolution as is.
+ *
+ * Only the rows of the candidate boxes are read at full resolution. The running average is
+ * updated on a rolling stripe of 1 / (scale * scale) of the rows per frame, with the learning
+ * rate compounded over the frames a stripe waits for, so the Java work per frame stays in
+ * proportion to the downscaled frame instead of adding two full resolution passes.
+ */
+public class PyramidMovingAreaDetector implements AreaDetector {
+
+    /** Supported downscaling factors */
+    public static final int[] SCALES = {1, 2, 4};
+
+    private final int mWidth;
+    private final int mHeight;
+    private final DetectionMask mDetectionMask;
+    private final BackgroundModel.Factory mModelFactory;
+    private volatile int mRequestedScale;
+    private int mScale;
+    private MovingAreaDetector mDetector;
+    private volatile Metrics mMetrics;
+    private final Mat mSmall = new Mat();
+    private Size mSmallSize;
+    private final RectBuffer mCandidates = new RectBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+    private final byte[] mRowBytes;
+    private final float[] mBackground;
+    private boolean mBackgroundReady = false;
+    private byte[] mStripeBytes;
+    private int mStripeRows;
+    private int mNextStripeRow;
+    private float mStripeLearningRate;
+
+    private volatile long mTotalDetectNanos;
+    private volatile long mDetectCount;
+
+    /**
+     * Constructor
+     *
+     * @param width Frame width
+     * @param height Frame height
+     * @param scale Downscaling factor, one of {@link #SCALES}
+     * @param detectionMask Region to detect in, or null for the whole frame
+     * @param modelFactory Factory of the background model, or null for the OpenCV KNN subtractor
+     */
+    public PyramidMovingAreaDetector(int width, int height, int scale, DetectionMask detectionMask,
+                                     BackgroundModel.Factory modelFactory) {
+        mWidth = width;
+        mHeight = height;
+        // the full band is a copy, as the caller keeps its mask
+        mDetectionMask = detectionMask != null
+                ? detectionMask.band(0, height) : new DetectionMask(width, height);
+        mModelFactory = modelFactory;
+        mRowBytes = new byte[width];
+        mBackground = new float[width * height];
+        checkScale(scale);
+        mRequestedScale = scale;
+        applyScale();
+    }
+
+    /**
+     * Change the downscaling factor from the next frame; the background model is restarted
+     * @param scale Downscaling factor, one of {@link #SCALES}
+     */
+    public void setScale(int scale) {
+        checkScale(scale);
+        mRequestedScale = scale;
+    }
+
+    /**
+     * Acquire the downscaling factor
+     * @return Downscaling factor requested last
+     */
+    public int getScale() {
+        return mRequestedScale;
+    }
+
+    @Override
+    public int detect(Mat gray, RectBuffer movingAreas) {
+        long start = System.nanoTime();
+        if (mRequestedScale != mScale) {
+            applyScale();
+        }
+
+        int count;
+        if (mScale == 1) {
+            count = mDetector.detect(gray, movingAreas);
+        } else {
+            Imgproc.resize(gray, mSmall, mSmallSize, 0, 0, Imgproc.INTER_AREA);
+            mDetector.detect(mSmall, mCandidates);
+            count = refine(gray, movingAreas);
+        }
+
+        mTotalDetectNanos += System.nanoTime() - start;
+        mDetectCount++;
+        return count;
+    }
+
+    @Override
+    public Rect getActiveRect() {
+        return mDetectionMask.getActiveRect();
+    }
+
+    @Override
+    public long getAverageDetectNanos() {
+        return mDetectCount == 0 ? 0 : mTotalDetectNanos / mDetectCount;
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        // kept for the detector built by the next scale change
+        mMetrics = metrics;
+        mDetector.setMetrics(metrics);
+    }
+
+    @Override
+    public void release() {
+        mDetector.release();
+        mSmall.release();
+        mDetectionMask.release();
+    }
+
+    private static void checkScale(int scale) {
+        for (int supported : SCALES) {
+            if (scale == supported) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported scale: " + scale);
+    }
+
+    private void applyScale() {
+        if (mDetector != null) {
+            mDetector.release();
+        }
+        mScale = mRequestedScale;
+        if (mScale == 1) {
+            mDetector = new MovingAreaDetector(mWidth, mHeight, mDetectionMask, mModelFactory);
+            mDetector.setMetrics(mMetrics);
+            return;
+        }
+
+        DetectionMask smallMask = mDetectionMask.scaled(mScale);
+        mSmallSize = new Size(mWidth / mScale, mHeight / mScale);
+        mDetector = new MovingAreaDetector(mWidth / mScale, mHeight / mScale, smallMask, mModelFactory);
+        mDetector.setMetrics(mMetrics);
+        smallMask.release();
+        // keep the candidates that may exceed the area after refinement
+        mDetector.setAreaThreshold(DetectionConstants.THRESHOLD_AREA_SIZE / (mScale * mScale));
+
+        // each row of the background is updated once per scale * scale frames
+        int stripes = mScale * mScale;
+        mStripeRows = (mHeight + stripes - 1) / stripes;
+        mStripeBytes = new byte[mStripeRows * mWidth];
+        mStripeLearningRate = (float) (1 - Math.pow(1 - DetectionConstants.REFINE_LEARNING_RATE, stripes));
+        mNextStripeRow = 0;
+        mBackgroundReady = false;
+    }
+
+    private int refine(Mat gray, RectBuffer movingAreas) {
+        movingAreas.clear();
+        if (!mBackgroundReady) {
+            for (int row = 0; row < mHeight; row += mStripeRows) {
+                updateStripe(gray, row, 1f);
+            }
+            mBackgroundReady = true;
+        }
+
+        for (int i = 0; i < mCandidates.size(); i++) {
+            if (mCandidates.getRight(i) > mSmallSize.width) {
+                // wrapped around the seam; keep the scaled candidate
+                int width = mCandidates.getWidth(i) * mScale;
+                int height = mCandidates.getHeight(i) * mScale;
+                if ((double) width * height > DetectionConstants.THRESHOLD_AREA_SIZE) {
+                    movingAreas.add(mCandidates.getX(i) * mScale, mCandidates.getY(i) * mScale, width, height);
+                }
+                continue;
+            }
+            int left = Math.max(mCandidates.getX(i) * mScale - mScale, 0);
+            int top = Math.max(mCandidates.getY(i) * mScale - mScale, 0);
+            int right = Math.min(mCandidates.getRight(i) * mScale + mScale, mWidth);
+            int bottom = Math.min(mCandidates.getBottom(i) * mScale + mScale, mHeight);
+            refineBox(gray.nativeObj, left, top, right, bottom, movingAreas);
+        }
+
+        updateStripe(gray, mNextStripeRow, mStripeLearningRate);
+        mNextStripeRow += mStripeRows;
+        if (mNextStripeRow >= mHeight) {
+            mNextStripeRow = 0;
+        }
+        return movingAreas.size();
+    }
+
+    private void refineBox(long gray, int left, int top, int right, int bottom, RectBuffer movingAreas) {
+        final byte[] row = mRowBytes;
+        final float[] background = mBackground;
+        final float threshold = DetectionConstants.REFINE_THRESHOLD;
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int y = top; y < bottom; y++) {
+            // only the part of the row inside the box is copied
+            Mat.get(gray, y, left, row, right - left);
+            int offset = y * mWidth;
+            for (int x = left; x < right; x++) {
+                float d = (row[x - left] & 0xFF) - background[offset + x];
+                if (d > threshold || d < -threshold) {
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    if (y > maxY) maxY = y;
+                }
+            }
+        }
+        if (minX > maxX) {
+            // the change is too faint at full resolution; keep the candidate
+            minX = left;
+            minY = top;
+            maxX = right - 1;
+            maxY = bottom - 1;
+        }
+
+        int width = maxX - minX + 1;
+        int height = maxY - minY + 1;
+        if ((double) width * height > DetectionConstants.THRESHOLD_AREA_SIZE) {
+            movingAreas.add(minX, minY, width, height);
+        }
+    }
+
+    private void updateStripe(Mat gray, int firstRow, float rate) {
+        int rows = Math.min(mStripeRows, mHeight - firstRow);
+        int count = rows * mWidth;
+        Mat.get(gray.nativeObj, firstRow, 0, mStripeBytes, count);
+        final byte[] stripe = mStripeBytes;
+        final float[] background = mBackground;
+        int offset = firstRow * mWidth;
+        for (int i = 0; i < count; i++) {
+            background[offset + i] += rate * ((stripe[i] & 0xFF) - background[offset + i]);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of axis-aligned rectangles stored in primitive arrays
+ *
+ * The rectangles are kept as interleaved x, y, width, height ints, the same layout as a
+ * CV_32SC4 MatOfRect, so that they can be converted with one put or get. The area is kept
+ * next to them. The buffer is meant to be cleared and refilled for every frame; it only
+ * allocates when it grows.
+ * A moving area crossing the seam of an equirectangular frame extends past its right edge.
+ */
+public class RectBuffer {
+
+    /** Number of ints per rectangle in {@link #array()} */
+    public static final int STRIDE = 4;
+
+    private int[] mRects;
+    private int[] mAreas;
+    private int mSize;
+
+    /**
+     * Constructor
+     *
+     * @param initialCapacity Number of rectangles that fit without growing
+     */
+    public RectBuffer(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        mRects = new int[capacity * STRIDE];
+        mAreas = new int[capacity];
+    }
+
+    /**
+     * Remove all rectangles, keeping the storage
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Acquire number of rectangles
+     * @return Number of rectangles
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Check whether the buffer is empty
+     * @return true if there is no rectangle
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Append a rectangle
+     * @param x Left
+     * @param y Top
+     * @param width Width
+     * @param height Height
+     * @return Index of the rectangle
+     */
+    public int add(int x, int y, int width, int height) {
+        ensureCapacity(mSize + 1);
+        int index = mSize++;
+        set(index, x, y, width, height);
+        return index;
+    }
+
+    /**
+     * Overwrite a rectangle
+     * @param index Index of the rectangle
+     * @param x Left
+     * @param y Top
+     * @param width Width
+     * @param height Height
+     */
+    public void set(int index, int x, int y, int width, int height) {
+        int offset = index * STRIDE;
+        mRects[offset] = x;
+        mRects[offset + 1] = y;
+        mRects[offset + 2] = width;
+        mRects[offset + 3] = height;
+        mAreas[index] = width * height;
+    }
+
+    /**
+     * Remove a rectangle, keeping the order of the others
+     * @param index Index of the rectangle
+     */
+    public void remove(int index) {
+        int moved = mSize - index - 1;
+        if (moved > 0) {
+            System.arraycopy(mRects, (index + 1) * STRIDE, mRects, index * STRIDE, moved * STRIDE);
+            System.arraycopy(mAreas, index + 1, mAreas, index, moved);
+        }
+        mSize--;
+    }
+
+    /**
+     * Replace the content with the content of another buffer
+     * @param other Source buffer
+     */
+    public void copyFrom(RectBuffer other) {
+        ensureCapacity(other.mSize);
+        System.arraycopy(other.mRects, 0, mRects, 0, other.mSize * STRIDE);
+        System.arraycopy(other.mAreas, 0, mAreas, 0, other.mSize);
+        mSize = other.mSize;
+    }
+
+    /**
+     * Acquire left
+     * @param index Index of the rectangle
+     * @return Left
+     */
+    public int getX(int index) {
+        return mRects[index * STRIDE];
+    }
+
+    /**
+     * Acquire top
+     * @param index Index of the rectangle
+     * @return Top
+     */
+    public int getY(int index) {
+        return mRects[index * STRIDE + 1];
+    }
+
+    /**
+     * Acquire width
+     * @param index Index of the rectangle
+     * @return Width
+     */
+    public int getWidth(int index) {
+        return mRects[index * STRIDE + 2];
+    }
+
+    /**
+     * Acquire height
+     * @param index Index of the rectangle
+     * @return Height
+     */
+    public int getHeight(int index) {
+        return mRects[index * STRIDE + 3];
+    }
+
+    /**
+     * Acquire right edge
+     * @param index Index of the rectangle
+     * @return x + width, exclusive
+     */
+    public int getRight(int index) {
+        return getX(index) + getWidth(index);
+    }
+
+    /**
+     * Acquire bottom edge
+     * @param index Index of the rectangle
+     * @return y + height, exclusive
+     */
+    public int getBottom(int index) {
+        return getY(index) + getHeight(index);
+    }
+
+    /**
+     * Acquire area
+     * @param index Index of the rectangle
+     * @return Width x height
+     */
+    public int getArea(int index) {
+        return mAreas[index];
+    }
+
+    /**
+     * Acquire the backing array for bulk conversion
+     * @return Interleaved x, y, width, height; only the first size() * STRIDE ints are valid
+     */
+    public int[] array() {
+        return mRects;
+    }
+
+    /**
+     * Set the number of rectangles after writing the backing array directly, and update the areas
+     * @param size Number of rectangles in {@link #array()}
+     */
+    public void setSize(int size) {
+        ensureCapacity(size);
+        mSize = size;
+        for (int i = 0; i < size; i++) {
+            mAreas[i] = mRects[i * STRIDE + 2] * mRects[i * STRIDE + 3];
+        }
+    }
+
+    /**
+     * Grow the storage
+     * @param capacity Number of rectangles that must fit
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= mAreas.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mAreas.length * 2);
+        mRects = Arrays.copyOf(mRects, newCapacity * STRIDE);
+        mAreas = Arrays.copyOf(mAreas, newCapacity);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < mSize; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(getX(i)).append(',').append(getY(i)).append(' ')
+                    .append(getWidth(i)).append('x').append(getHeight(i));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Bulk conversion between RectBuffer and CV_32SC4 Mats such as MatOfRect
+ */
+public final class RectBufferConverter {
+    private RectBufferConverter() {}
+
+    /**
+     * Write the rectangles into a Mat with one put
+     * @param rects Source rectangles
+     * @param mat Destination, reallocated only if its size or type differs
+     */
+    public static void toMat(RectBuffer rects, Mat mat) {
+        if (rects.isEmpty()) {
+            mat.create(0, 1, CvType.CV_32SC4);
+            return;
+        }
+        mat.create(rects.size(), 1, CvType.CV_32SC4);
+        // the native put copies no more than the Mat holds
+        mat.put(0, 0, rects.array());
+    }
+
+    /**
+     * Read the rectangles of a Mat with one get
+     * @param mat Source Mat of CV_32SC4 with one column
+     * @param rects Destination, cleared first
+     */
+    public static void fromMat(Mat mat, RectBuffer rects) {
+        if (mat.empty()) {
+            rects.clear();
+            return;
+        }
+        if (CvType.CV_32SC4 != mat.type() || mat.cols() != 1)
+            throw new java.lang.IllegalArgumentException(
+                    "CvType.CV_32SC4 != m.type() ||  m.cols()!=1\n" + mat);
+
+        int count = mat.rows();
+        rects.clear();
+        rects.ensureCapacity(count);
+        if (count > 0) {
+            mat.get(0, 0, rects.array());
+        }
+        rects.setSize(count);
+    }
+}
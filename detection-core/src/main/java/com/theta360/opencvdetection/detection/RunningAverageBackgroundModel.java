@@ -0,0 +1,92 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+/**
+ * Background model keeping an exponential running average of each pixel
+ *
+ * A pixel is foreground when it differs from its average by more than a fixed number of gray
+ * levels. All pixels are blended into the average with the learning rate.
+ */
+public class RunningAverageBackgroundModel implements BackgroundModel {
+
+    private final int mPixelCount;
+    private final float mLearningRate;
+    private final float mThreshold;
+    private final float[] mBackground;
+    private boolean mInitialized = false;
+
+    /**
+     * Constructor
+     *
+     * @param width Frame width
+     * @param height Frame height
+     * @param learningRate Weight of a new frame in the average, from 0 to 1
+     * @param threshold Difference in gray levels above which a pixel is foreground
+     */
+    public RunningAverageBackgroundModel(int width, int height, float learningRate, float threshold) {
+        if (learningRate < 0 || learningRate > 1) {
+            throw new IllegalArgumentException("learningRate must be from 0 to 1");
+        }
+        mPixelCount = width * height;
+        mLearningRate = learningRate;
+        mThreshold = threshold;
+        mBackground = new float[mPixelCount];
+    }
+
+    /**
+     * Create a factory of models with the same parameters
+     * @param learningRate Weight of a new frame in the average, from 0 to 1
+     * @param threshold Difference in gray levels above which a pixel is foreground
+     * @return Factory
+     */
+    public static BackgroundModel.Factory factory(final float learningRate, final float threshold) {
+        return new BackgroundModel.Factory() {
+            @Override
+            public BackgroundModel create(int width, int height) {
+                return new RunningAverageBackgroundModel(width, height, learningRate, threshold);
+            }
+        };
+    }
+
+    @Override
+    public void apply(byte[] frame, byte[] foreground) {
+        final float[] background = mBackground;
+        final int n = mPixelCount;
+        if (!mInitialized) {
+            for (int i = 0; i < n; i++) {
+                background[i] = frame[i] & 0xFF;
+                foreground[i] = 0;
+            }
+            mInitialized = true;
+            return;
+        }
+
+        final float rate = mLearningRate;
+        final float threshold = mThreshold;
+        for (int i = 0; i < n; i++) {
+            float d = (frame[i] & 0xFF) - background[i];
+            foreground[i] = (d > threshold || d < -threshold) ? (byte) 255 : 0;
+            background[i] += rate * d;
+        }
+    }
+
+    @Override
+    public void reset() {
+        mInitialized = false;
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.detection;
+
+import com.theta360.opencvdetection.metrics.Metrics;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Detector splitting the frame into horizontal bands processed in parallel
+ *
+ * Each band has its own MovingAreaDetector, and so its own background model, restricted to the
+ * rows of the band extended by an overlap for the morphology. The bands run on a fixed set of
+ * worker threads and the calling thread. The boxes of adjacent bands that intersect, i.e. the
+ * same moving area seen from both sides of a seam, are merged into one box by a BandBoxMerger.
+ * An exception of a band is thrown by detect() on the calling thread once all bands are done.
+ */
+public class TiledMovingAreaDetector implements AreaDetector {
+
+    /** Rows added on each side of a band */
+    public static final int BAND_OVERLAP = DetectionMask.TILE_SIZE;
+
+    private final MovingAreaDetector[] mDetectors;
+    private final RectBuffer[] mBandAreas;
+    private final Worker[] mWorkers;
+    private final Semaphore mDone = new Semaphore(0);
+    private final Rect mActiveRect;
+    private volatile Mat mGray;
+    private volatile boolean mRunning = true;
+
+    private final BandBoxMerger mMerger = new BandBoxMerger();
+
+    private volatile long mTotalDetectNanos;
+    private volatile long mDetectCount;
+
+    /**
+     * Constructor
+     *
+     * @param width Frame width
+     * @param height Frame height
+     * @param bandCount Number of bands, which is also the number of threads
+     * @param detectionMask Region to detect in, or null for the whole frame
+     */
+    public TiledMovingAreaDetector(int width, int height, int bandCount, DetectionMask detectionMask) {
+        this(width, height, bandCount, detectionMask, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param width Frame width
+     * @param height Frame height
+     * @param bandCount Number of bands, which is also the number of threads
+     * @param detectionMask Region to detect in, or null for the whole frame
+     * @param modelFactory Factory of the background model, or null for the OpenCV KNN subtractor
+     */
+    public TiledMovingAreaDetector(int width, int height, int bandCount, DetectionMask detectionMask,
+                                   BackgroundModel.Factory modelFactory) {
+        if (bandCount < 1) {
+            throw new IllegalArgumentException("bandCount must be positive");
+        }
+        DetectionMask region = detectionMask != null ? detectionMask : new DetectionMask(width, height);
+        mActiveRect = region.getActiveRect().clone();
+
+        mDetectors = new MovingAreaDetector[bandCount];
+        mBandAreas = new RectBuffer[bandCount];
+        for (int i = 0; i < bandCount; i++) {
+            int top = bandTop(i, bandCount, height);
+            int bottom = bandTop(i + 1, bandCount, height);
+            DetectionMask band = region.band(Math.max(top - BAND_OVERLAP, 0), Math.min(bottom + BAND_OVERLAP, height));
+            mDetectors[i] = new MovingAreaDetector(width, height, band, modelFactory);
+            band.release();
+            mBandAreas[i] = new RectBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+        }
+        if (region != detectionMask) {
+            region.release();
+        }
+
+        // band 0 runs on the calling thread
+        mWorkers = new Worker[bandCount - 1];
+        for (int i = 0; i < mWorkers.length; i++) {
+            mWorkers[i] = new Worker(i + 1);
+            mWorkers[i].mThread.start();
+        }
+    }
+
+    /**
+     * Acquire the number of bands
+     * @return Number of bands
+     */
+    public int getBandCount() {
+        return mDetectors.length;
+    }
+
+    @Override
+    public int detect(Mat gray, RectBuffer movingAreas) {
+        long start = System.nanoTime();
+        mGray = gray;
+        for (Worker worker : mWorkers) {
+            worker.mStart.release();
+        }
+        RuntimeException failure = null;
+        try {
+            mDetectors[0].detect(gray, mBandAreas[0]);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        // wait for all bands even after a failure, so that no worker is left running on this frame
+        mDone.acquireUninterruptibly(mWorkers.length);
+        mGray = null;
+        for (Worker worker : mWorkers) {
+            if (failure == null) {
+                failure = worker.mFailure;
+            }
+            worker.mFailure = null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        mMerger.merge(mBandAreas, movingAreas);
+        mTotalDetectNanos += System.nanoTime() - start;
+        mDetectCount++;
+        return movingAreas.size();
+    }
+
+    @Override
+    public Rect getActiveRect() {
+        return mActiveRect;
+    }
+
+    @Override
+    public long getAverageDetectNanos() {
+        return mDetectCount == 0 ? 0 : mTotalDetectNanos / mDetectCount;
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        // the histograms take concurrent records from the band threads
+        for (MovingAreaDetector detector : mDetectors) {
+            detector.setMetrics(metrics);
+        }
+    }
+
+    @Override
+    public void release() {
+        mRunning = false;
+        for (Worker worker : mWorkers) {
+            worker.mThread.interrupt();
+            try {
+                worker.mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (MovingAreaDetector detector : mDetectors) {
+            detector.release();
+        }
+    }
+
+    private static int bandTop(int band, int bandCount, int height) {
+        // bands start on tile boundaries so that the overlap covers whole tiles
+        int tiles = (height + DetectionMask.TILE_SIZE - 1) / DetectionMask.TILE_SIZE;
+        return Math.min(tiles * band / bandCount * DetectionMask.TILE_SIZE, height);
+    }
+
+    private class Worker implements Runnable {
+
+        private final int mBand;
+        private final Semaphore mStart = new Semaphore(0);
+        private final Thread mThread;
+        // written before mDone is released, read after it is acquired
+        private RuntimeException mFailure;
+
+        Worker(int band) {
+            mBand = band;
+            mThread = new Thread(this, "TiledDetector-" + band);
+        }
+
+        @Override
+        public void run() {
+            while (mRunning) {
+                try {
+                    mStart.acquire();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    mDetectors[mBand].detect(mGray, mBandAreas[mBand]);
+                } catch (RuntimeException e) {
+                    // handed to the calling thread, the worker stays available for the next frame
+                    mFailure = e;
+                } finally {
+                    mDone.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.frame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Preallocated frame buffer managed by a {@link FrameBufferPool}
+ *
+ * A buffer is owned by the pool, by the producer filling it, or by the consumer reading it.
+ * The consumer gives it back with {@link #release()}.
+ *
+ * The data is held either in a Java array, which the camera API requires, or in a direct
+ * ByteBuffer, which native code can address without copying, e.g. with a Mat constructed
+ * over it.
+ */
+public class FrameBuffer {
+
+    static final int OWNER_POOL = 0;
+    static final int OWNER_PRODUCER = 1;
+    static final int OWNER_CONSUMER = 2;
+
+    private final FrameBufferPool mPool;
+    private final int mIndex;
+    private final byte[] mData;
+    private final ByteBuffer mDirectData;
+    private long mTimestamp;
+    int mOwner = OWNER_POOL;
+
+    FrameBuffer(FrameBufferPool pool, int index, int size, boolean direct) {
+        mPool = pool;
+        mIndex = index;
+        if (direct) {
+            mData = null;
+            mDirectData = ByteBuffer.allocateDirect(size);
+        } else {
+            mData = new byte[size];
+            mDirectData = null;
+        }
+    }
+
+    /**
+     * Acquire frame data
+     * @return Backing array of the buffer, or null if the buffer is direct
+     */
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * Acquire frame data of a direct buffer
+     * @return Direct buffer holding the data, or null if the buffer is backed by an array
+     */
+    public ByteBuffer getDirectData() {
+        return mDirectData;
+    }
+
+    /**
+     * Check whether the data is held in a direct buffer
+     * @return true if {@link #getDirectData()} holds the data
+     */
+    public boolean isDirect() {
+        return mDirectData != null;
+    }
+
+    /**
+     * Acquire index in the pool
+     * @return Index of the buffer, between 0 and the pool capacity
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Acquire capture time
+     * @return Time set by the producer, in nanoseconds of System.nanoTime()
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Set capture time
+     * @param timestamp Time in nanoseconds of System.nanoTime()
+     */
+    public void setTimestamp(long timestamp) {
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * Give the buffer back after consuming it
+     */
+    public void release() {
+        mPool.release(this);
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.frame;
+
+/**
+ * Fixed set of preallocated frame buffers
+ *
+ * A producer takes a buffer with {@link #acquire()}, fills it and passes it on with
+ * {@link #handOver(FrameBuffer)}; the consumer calls {@link FrameBuffer#release()} when done.
+ * The ownership is checked on every transition, so a buffer released twice or used after
+ * release is reported immediately instead of silently corrupting a frame. No memory is
+ * allocated after construction.
+ */
+public class FrameBufferPool {
+
+    /**
+     * Receiver of released buffers
+     */
+    public interface RecycleListener {
+        /**
+         * Called when a consumer releases a buffer. The buffer stays owned by the producer,
+         * e.g. to queue it to the camera again, instead of returning to the pool.
+         * @param buffer Released buffer
+         */
+        void onRecycle(FrameBuffer buffer);
+    }
+
+    private final FrameBuffer[] mBuffers;
+    private final int[] mFreeIndices;
+    private int mFreeCount;
+    private int mConsumerCount;
+    private RecycleListener mRecycleListener;
+
+    private long mHandOverCount;
+    private long mExhaustedCount;
+    private int mMaxConsumerCount;
+
+    /**
+     * Constructor
+     *
+     * @param capacity Number of buffers
+     * @param bufferSize Size of each buffer in bytes
+     */
+    public FrameBufferPool(int capacity, int bufferSize) {
+        this(capacity, bufferSize, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity Number of buffers
+     * @param bufferSize Size of each buffer in bytes
+     * @param direct true to hold the data in direct buffers instead of Java arrays
+     */
+    public FrameBufferPool(int capacity, int bufferSize, boolean direct) {
+        mBuffers = new FrameBuffer[capacity];
+        mFreeIndices = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mBuffers[i] = new FrameBuffer(this, i, bufferSize, direct);
+            mFreeIndices[i] = capacity - 1 - i;
+        }
+        mFreeCount = capacity;
+    }
+
+    /**
+     * Set receiver of released buffers
+     * @param listener Receiver, or null to return released buffers to the pool
+     */
+    public synchronized void setRecycleListener(RecycleListener listener) {
+        mRecycleListener = listener;
+    }
+
+    /**
+     * Take a free buffer for the producer without waiting
+     * @return Buffer, or null if the pool is exhausted
+     */
+    public synchronized FrameBuffer acquire() {
+        if (mFreeCount == 0) {
+            mExhaustedCount++;
+            return null;
+        }
+        FrameBuffer buffer = mBuffers[mFreeIndices[--mFreeCount]];
+        buffer.mOwner = FrameBuffer.OWNER_PRODUCER;
+        return buffer;
+    }
+
+    /**
+     * Take a free buffer for the producer, waiting until one is released
+     * @param timeoutMillis Maximum waiting time
+     * @return Buffer, or null if none was released in time
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public synchronized FrameBuffer acquire(long timeoutMillis) throws InterruptedException {
+        if (mFreeCount == 0) {
+            mExhaustedCount++;
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            long wait = timeoutMillis;
+            while (mFreeCount == 0 && wait > 0) {
+                wait(wait);
+                wait = deadline - System.currentTimeMillis();
+            }
+            if (mFreeCount == 0) {
+                return null;
+            }
+        }
+        FrameBuffer buffer = mBuffers[mFreeIndices[--mFreeCount]];
+        buffer.mOwner = FrameBuffer.OWNER_PRODUCER;
+        return buffer;
+    }
+
+    /**
+     * Pass a filled buffer from the producer to the consumer
+     * @param buffer Buffer owned by the producer
+     */
+    public synchronized void handOver(FrameBuffer buffer) {
+        checkOwner(buffer, FrameBuffer.OWNER_PRODUCER);
+        buffer.mOwner = FrameBuffer.OWNER_CONSUMER;
+        mHandOverCount++;
+        mConsumerCount++;
+        if (mConsumerCount > mMaxConsumerCount) {
+            mMaxConsumerCount = mConsumerCount;
+        }
+    }
+
+    /**
+     * Look up the buffer backed by the given array, e.g. an array returned by the camera
+     * @param data Backing array
+     * @return Buffer, or null if the array does not belong to this pool
+     */
+    public FrameBuffer find(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        for (FrameBuffer buffer : mBuffers) {
+            if (buffer.getData() == data) {
+                return buffer;
+            }
+        }
+        return null;
+    }
+
+    void release(FrameBuffer buffer) {
+        RecycleListener listener;
+        synchronized (this) {
+            checkOwner(buffer, FrameBuffer.OWNER_CONSUMER);
+            mConsumerCount--;
+            listener = mRecycleListener;
+            if (listener != null) {
+                buffer.mOwner = FrameBuffer.OWNER_PRODUCER;
+            } else {
+                buffer.mOwner = FrameBuffer.OWNER_POOL;
+                mFreeIndices[mFreeCount++] = buffer.getIndex();
+                notifyAll();
+            }
+        }
+        if (listener != null) {
+            listener.onRecycle(buffer);
+        }
+    }
+
+    /**
+     * Acquire the buffers of the pool, e.g. to queue all of them to the camera at start
+     * @param index Index between 0 and the capacity
+     * @return Buffer
+     */
+    public FrameBuffer get(int index) {
+        return mBuffers[index];
+    }
+
+    /**
+     * Check whether a buffer is owned by the producer
+     * @param buffer Buffer of this pool
+     * @return true if the buffer was acquired or recycled and is not handed over
+     */
+    public synchronized boolean isOwnedByProducer(FrameBuffer buffer) {
+        return buffer.mOwner == FrameBuffer.OWNER_PRODUCER;
+    }
+
+    /**
+     * Acquire capacity
+     * @return Number of buffers
+     */
+    public int getCapacity() {
+        return mBuffers.length;
+    }
+
+    /**
+     * Acquire number of buffers held by consumers
+     * @return Number of buffers handed over and not yet released
+     */
+    public synchronized int getConsumerCount() {
+        return mConsumerCount;
+    }
+
+    /**
+     * Acquire the largest number of buffers held by consumers at the same time
+     * @return Peak number of buffers held by consumers
+     */
+    public synchronized int getMaxConsumerCount() {
+        return mMaxConsumerCount;
+    }
+
+    /**
+     * Acquire number of frames handed over to consumers
+     * @return Number of hand-overs
+     */
+    public synchronized long getHandOverCount() {
+        return mHandOverCount;
+    }
+
+    /**
+     * Acquire number of times the producer found no free buffer on acquire
+     * @return Number of pool exhaustions
+     */
+    public synchronized long getExhaustedCount() {
+        return mExhaustedCount;
+    }
+
+    /**
+     * Describe the state of the pool in one line
+     * @return Pool counters
+     */
+    public synchronized String dump() {
+        return "buffers=" + mBuffers.length + " consumer=" + mConsumerCount + " maxConsumer=" + mMaxConsumerCount
+                + " handOver=" + mHandOverCount + " exhausted=" + mExhaustedCount;
+    }
+
+    private void checkOwner(FrameBuffer buffer, int expectedOwner) {
+        if (buffer.mOwner != expectedOwner) {
+            throw new IllegalStateException("Frame buffer " + buffer.getIndex() + " is owned by "
+                    + buffer.mOwner + ", expected " + expectedOwner);
+        }
+    }
+}
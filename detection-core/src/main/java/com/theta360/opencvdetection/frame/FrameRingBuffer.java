@@ -0,0 +1,221 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.frame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size ring of the most recent preview frames, e.g. to save the frames leading up to an event
+ *
+ * All slots are allocated at construction from a memory budget, so the ring never grows. It is
+ * lock-free for one writer and one reader: the writer never waits, and when the ring is full it
+ * evicts the oldest frame. The reader takes frames from the oldest one; a frame that the writer
+ * evicted while it was being copied out is detected and skipped, so a returned frame is never torn.
+ */
+public class FrameRingBuffer {
+
+    /**
+     * Content of a stored frame
+     */
+    public enum Format {
+        /** Luma plane only, width x height bytes */
+        LUMA,
+        /** Whole NV21 frame, width x height * 3 / 2 bytes */
+        NV21;
+
+        /**
+         * Acquire size of a frame
+         * @param width Frame width
+         * @param height Frame height
+         * @return Number of bytes of a frame in this format
+         */
+        public int frameSize(int width, int height) {
+            return this == LUMA ? width * height : width * height * 3 / 2;
+        }
+    }
+
+    /** Returned by {@link #poll(byte[])} when the ring is empty */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private final Format mFormat;
+    private final int mFrameSize;
+    private final byte[][] mSlots;
+    private final long[] mTimestamps;
+
+    // sequence number of the next frame to write; written by the writer only
+    private final AtomicLong mHead = new AtomicLong();
+    // sequence number of the oldest stored frame; advanced by the reader, and by the writer on eviction
+    private final AtomicLong mTail = new AtomicLong();
+    private long mEvictedCount;
+    private long mLostCount;
+
+    /**
+     * Constructor
+     *
+     * @param width Frame width
+     * @param height Frame height
+     * @param format Content of the stored frames
+     * @param memoryBudget Maximum number of bytes of all slots; at least one frame is stored
+     */
+    public FrameRingBuffer(int width, int height, Format format, long memoryBudget) {
+        mFormat = format;
+        mFrameSize = format.frameSize(width, height);
+        int capacity = (int) Math.max(1, Math.min(memoryBudget / mFrameSize, Integer.MAX_VALUE));
+        mSlots = new byte[capacity][mFrameSize];
+        mTimestamps = new long[capacity];
+    }
+
+    /**
+     * Acquire format
+     * @return Content of the stored frames
+     */
+    public Format getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Acquire size of a frame
+     * @return Number of bytes of each stored frame
+     */
+    public int getFrameSize() {
+        return mFrameSize;
+    }
+
+    /**
+     * Acquire capacity
+     * @return Number of frames the ring holds
+     */
+    public int getCapacity() {
+        return mSlots.length;
+    }
+
+    /**
+     * Acquire number of stored frames
+     * @return Number of frames the reader can take
+     */
+    public int size() {
+        long tail = mTail.get();
+        return (int) (mHead.get() - tail);
+    }
+
+    /**
+     * Acquire the sequence number of the next frame to write, e.g. to take only the frames stored so far
+     * @return Sequence number; the frames stored so far have lower numbers
+     */
+    public long getHeadSequence() {
+        return mHead.get();
+    }
+
+    /**
+     * Take the slot of the next frame, evicting the oldest frame if the ring is full. Writer only.
+     * The frame is visible to the reader after {@link #commit(long)}.
+     * @return Array of getFrameSize() bytes to fill
+     */
+    public byte[] beginPut() {
+        long head = mHead.get();
+        long tail = mTail.get();
+        if (head - tail == mSlots.length) {
+            // on failure the reader has just taken the oldest frame, which also makes room
+            if (mTail.compareAndSet(tail, tail + 1)) {
+                mEvictedCount++;
+            }
+        }
+        return mSlots[(int) (head % mSlots.length)];
+    }
+
+    /**
+     * Publish the frame filled since {@link #beginPut()}. Writer only.
+     * @param timestamp Capture time of the frame
+     */
+    public void commit(long timestamp) {
+        long head = mHead.get();
+        mTimestamps[(int) (head % mSlots.length)] = timestamp;
+        mHead.set(head + 1);
+    }
+
+    /**
+     * Store a copy of a frame. Writer only.
+     * @param data Frame in the format of the ring, e.g. an NV21 frame whose first bytes are the luma plane
+     * @param timestamp Capture time of the frame
+     */
+    public void put(byte[] data, long timestamp) {
+        System.arraycopy(data, 0, beginPut(), 0, mFrameSize);
+        commit(timestamp);
+    }
+
+    /**
+     * Take the oldest frame. Reader only.
+     * @param dst Array of at least getFrameSize() bytes receiving the frame
+     * @return Capture time of the frame, or NONE if the ring is empty
+     */
+    public long poll(byte[] dst) {
+        return poll(dst, Long.MAX_VALUE);
+    }
+
+    /**
+     * Take the oldest frame stored before a given point. Reader only.
+     * @param dst Array of at least getFrameSize() bytes receiving the frame
+     * @param endSequence Head sequence number of that point, from {@link #getHeadSequence()}
+     * @return Capture time of the frame, or NONE if no frame before that point is left
+     */
+    public long poll(byte[] dst, long endSequence) {
+        while (true) {
+            long tail = mTail.get();
+            if (tail == mHead.get() || tail >= endSequence) {
+                return NONE;
+            }
+            int slot = (int) (tail % mSlots.length);
+            System.arraycopy(mSlots[slot], 0, dst, 0, mFrameSize);
+            long timestamp = mTimestamps[slot];
+            // the writer claims a slot only after moving the tail past it, so a successful
+            // exchange proves that the slot was not overwritten during the copy
+            if (mTail.compareAndSet(tail, tail + 1)) {
+                return timestamp;
+            }
+            mLostCount++;
+        }
+    }
+
+    /**
+     * Drop all stored frames. Reader only.
+     */
+    public void clear() {
+        while (true) {
+            long tail = mTail.get();
+            long head = mHead.get();
+            if (tail == head || mTail.compareAndSet(tail, head)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Acquire number of frames evicted by the writer before the reader took them. Writer only.
+     * @return Number of evicted frames
+     */
+    public long getEvictedCount() {
+        return mEvictedCount;
+    }
+
+    /**
+     * Acquire number of frames the reader skipped because they were evicted during the copy. Reader only.
+     * @return Number of lost frames
+     */
+    public long getLostCount() {
+        return mLostCount;
+    }
+}
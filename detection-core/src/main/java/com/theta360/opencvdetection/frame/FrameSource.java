@@ -0,0 +1,74 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.frame;
+
+/**
+ * Producer of NV21 preview frames
+ *
+ * The life cycle is open, start, then close. The frame size and the buffer pool are available
+ * after open. Frames are delivered in buffers of the pool, so that the source can fill the next
+ * buffer while the consumer still works on the previous one.
+ */
+public interface FrameSource {
+
+    /**
+     * Receiver of frames
+     */
+    interface FrameListener {
+        /**
+         * Called for each frame on the thread of the source.
+         * The listener owns the buffer from now on and must release it when done.
+         * @param frame Buffer holding NV21 data of getFrameWidth() x getFrameHeight()
+         */
+        void onFrame(FrameBuffer frame);
+    }
+
+    /**
+     * Prepare the source and decide the frame size
+     * @return true if the source is ready
+     */
+    boolean open();
+
+    /**
+     * Acquire frame width
+     * @return Width of the frames in pixels
+     */
+    int getFrameWidth();
+
+    /**
+     * Acquire frame height
+     * @return Height of the frames in pixels
+     */
+    int getFrameHeight();
+
+    /**
+     * Acquire buffer pool
+     * @return Pool of the buffers in which the frames are delivered
+     */
+    FrameBufferPool getBufferPool();
+
+    /**
+     * Start delivering frames
+     * @param listener Receiver of frames
+     */
+    void start(FrameListener listener);
+
+    /**
+     * Stop delivering frames and release the source
+     */
+    void close();
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.frame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Frame source replaying recorded NV21 frames from a file
+ *
+ * The file is a plain concatenation of NV21 frames of the same size. It is memory-mapped in
+ * windows of whole frames, so files larger than 2 GB can be replayed, and the frames are
+ * delivered on a dedicated thread, either at a fixed frame rate or as fast as the listener
+ * consumes them. When all buffers are held by the listener, the replay waits for one to be
+ * released, so no recorded frame is skipped.
+ */
+public class ReplayFrameSource implements FrameSource {
+
+    private static final long BUFFER_WAIT_MILLIS = 100;
+    /** Largest size of a mapped window of the file in bytes */
+    private static final int MAX_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private final File mFile;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameSize;
+    private int mBufferCount = 3;
+    private double mFrameRate = 0;
+    private boolean mLooping = true;
+
+    private FrameBufferPool mBufferPool;
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private MappedByteBuffer mMappedBuffer;
+    private int mWindowFrameCount;
+    private int mWindowStart;
+    private int mFrameCount;
+    private Thread mThread;
+    private volatile boolean mStopThread;
+    private volatile long mDeliveredFrameCount;
+
+    /**
+     * Constructor
+     *
+     * @param file File of concatenated NV21 frames
+     * @param width Frame width
+     * @param height Frame height
+     */
+    public ReplayFrameSource(File file, int width, int height) {
+        mFile = file;
+        mWidth = width;
+        mHeight = height;
+        mFrameSize = width * height * 3 / 2;
+    }
+
+    /**
+     * Set number of frame buffers
+     * @param bufferCount Number of frames that can be in flight at the same time
+     */
+    public void setBufferCount(int bufferCount) {
+        mBufferCount = bufferCount;
+    }
+
+    /**
+     * Set delivery rate
+     * @param frameRate Frames per second, or 0 to deliver without waiting
+     */
+    public void setFrameRate(double frameRate) {
+        mFrameRate = frameRate;
+    }
+
+    /**
+     * Set looping
+     * @param looping true to restart from the first frame after the last one
+     */
+    public void setLooping(boolean looping) {
+        mLooping = looping;
+    }
+
+    /**
+     * Acquire number of frames in the file
+     * @return Number of frames, valid after open
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Acquire number of delivered frames
+     * @return Number of frames delivered since start
+     */
+    public long getDeliveredFrameCount() {
+        return mDeliveredFrameCount;
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            mRandomAccessFile = new RandomAccessFile(mFile, "r");
+            mChannel = mRandomAccessFile.getChannel();
+            mFrameCount = (int) Math.min(mChannel.size() / mFrameSize, Integer.MAX_VALUE);
+            if (mFrameCount == 0) {
+                close();
+                return false;
+            }
+            mWindowFrameCount = Math.max(1, Math.min(MAX_WINDOW_SIZE / mFrameSize, mFrameCount));
+            mapWindow(0);
+            // direct buffers: the consumer wraps them in a Mat, so each frame is copied only once
+            mBufferPool = new FrameBufferPool(mBufferCount, mFrameSize, true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int getFrameWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getFrameHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public FrameBufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    @Override
+    public void start(final FrameListener listener) {
+        mStopThread = false;
+        mDeliveredFrameCount = 0;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replay(listener);
+            }
+        }, "ReplayFrameSource");
+        mThread.start();
+    }
+
+    @Override
+    public void close() {
+        mStopThread = true;
+        if (mThread != null) {
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mThread = null;
+        }
+        mMappedBuffer = null;
+        mChannel = null;
+        if (mRandomAccessFile != null) {
+            try {
+                mRandomAccessFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mRandomAccessFile = null;
+        }
+    }
+
+    private void replay(FrameListener listener) {
+        long period = mFrameRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / mFrameRate) : 0;
+        long nextTime = System.nanoTime();
+        int index = 0;
+
+        while (!mStopThread) {
+            if (index == mFrameCount) {
+                if (!mLooping) {
+                    break;
+                }
+                index = 0;
+            }
+
+            if (index < mWindowStart || index >= mWindowStart + mWindowFrameCount) {
+                try {
+                    mapWindow(index);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    break;
+                }
+            }
+
+            FrameBuffer frame;
+            try {
+                frame = mBufferPool.acquire(BUFFER_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) {
+                continue;
+            }
+
+            int offset = (index - mWindowStart) * mFrameSize;
+            mMappedBuffer.limit(offset + mFrameSize);
+            mMappedBuffer.position(offset);
+            ByteBuffer data = frame.getDirectData();
+            data.clear();
+            data.put(mMappedBuffer);
+            frame.setTimestamp(System.nanoTime());
+            mBufferPool.handOver(frame);
+            listener.onFrame(frame);
+            mDeliveredFrameCount++;
+            index++;
+
+            if (period > 0) {
+                nextTime += period;
+                long wait = nextTime - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else {
+                    // fell behind; do not try to catch up with a burst
+                    nextTime = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    /**
+     * Map the window of the file starting at a frame
+     * @param firstFrame Index of the first frame of the window
+     * @throws IOException if the file cannot be mapped
+     */
+    private void mapWindow(int firstFrame) throws IOException {
+        int frameCount = Math.min(mWindowFrameCount, mFrameCount - firstFrame);
+        mMappedBuffer = mChannel.map(FileChannel.MapMode.READ_ONLY, (long) firstFrame * mFrameSize,
+                (long) frameCount * mFrameSize);
+        mWindowStart = firstFrame;
+    }
+}
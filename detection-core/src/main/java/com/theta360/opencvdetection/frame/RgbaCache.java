@@ -0,0 +1,188 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.frame;
+
+import com.theta360.opencvdetection.metrics.Metrics;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * RGBA conversion of an NV21 frame, done lazily and at most once per frame
+ *
+ * The owner of the NV21 data calls {@link #invalidate()} whenever the data changes, which starts a
+ * new generation. The colour conversion runs only when the RGBA image is requested, and only again
+ * once the generation has changed, so a frame that is never displayed or saved is never converted.
+ * A region can be requested instead of the whole frame; the rest of the image is then left stale.
+ */
+public class RgbaCache {
+
+    private final Mat mYuv;
+    private final int mWidth;
+    private final int mHeight;
+    private final Mat mRgba;
+    private final Mat mRegionYuv = new Mat();
+
+    private long mGeneration = 1;
+    private long mFullGeneration;
+    private long mRegionGeneration;
+    private int mRegionLeft;
+    private int mRegionTop;
+    private int mRegionRight;
+    private int mRegionBottom;
+    private long mConversionCount;
+    private Metrics mMetrics;
+
+    /**
+     * Constructor
+     *
+     * @param yuv NV21 frame of width x height * 3 / 2, one byte per element
+     * @param width Frame width
+     * @param height Frame height
+     */
+    public RgbaCache(Mat yuv, int width, int height) {
+        mYuv = yuv;
+        mWidth = width;
+        mHeight = height;
+        mRgba = new Mat(height, width, CvType.CV_8UC4);
+    }
+
+    /**
+     * Set the receiver of the conversion latencies
+     * @param metrics Metrics to record into, or null to record nothing
+     */
+    public void setMetrics(Metrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Start a new generation after the NV21 data changed
+     */
+    public void invalidate() {
+        mGeneration++;
+    }
+
+    /**
+     * Acquire generation
+     * @return Number of the current frame, increased by every {@link #invalidate()}
+     */
+    public long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Acquire the whole RGBA image of the current frame, converting it if not done yet
+     * @return RGBA image of width x height; owned by the cache, and only valid until the next invalidate
+     */
+    public Mat get() {
+        if (mFullGeneration != mGeneration) {
+            long start = System.nanoTime();
+            Imgproc.cvtColor(mYuv, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+            mFullGeneration = mGeneration;
+            mConversionCount++;
+            record(start);
+        }
+        return mRgba;
+    }
+
+    /**
+     * Acquire the RGBA image with at least the given region converted
+     *
+     * The region is widened to even coordinates, the chroma resolution of NV21.
+     * @param x Left of the region
+     * @param y Top of the region
+     * @param width Width of the region
+     * @param height Height of the region
+     * @return RGBA image of the whole frame in which only the region is guaranteed to be current
+     */
+    public Mat get(int x, int y, int width, int height) {
+        int left = Math.max(x, 0) & ~1;
+        int top = Math.max(y, 0) & ~1;
+        int right = Math.min((x + width + 1) & ~1, mWidth);
+        int bottom = Math.min((y + height + 1) & ~1, mHeight);
+        if (mFullGeneration == mGeneration || right <= left || bottom <= top) {
+            return mRgba;
+        }
+        if (left == 0 && top == 0 && right == mWidth && bottom == mHeight) {
+            return get();
+        }
+        if (mRegionGeneration == mGeneration && left >= mRegionLeft && top >= mRegionTop
+                && right <= mRegionRight && bottom <= mRegionBottom) {
+            return mRgba;
+        }
+
+        // gather the luma rows and the chroma rows of the region into a small NV21 image
+        long start = System.nanoTime();
+        int rows = bottom - top;
+        mRegionYuv.create(rows + rows / 2, right - left, CvType.CV_8UC1);
+        Mat src = mYuv.submat(top, bottom, left, right);
+        Mat dst = mRegionYuv.rowRange(0, rows);
+        src.copyTo(dst);
+        src.release();
+        dst.release();
+        src = mYuv.submat(mHeight + top / 2, mHeight + bottom / 2, left, right);
+        dst = mRegionYuv.rowRange(rows, rows + rows / 2);
+        src.copyTo(dst);
+        src.release();
+        dst.release();
+
+        // the destination has the right size and type, so the conversion writes into the frame image
+        dst = mRgba.submat(top, bottom, left, right);
+        Imgproc.cvtColor(mRegionYuv, dst, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+        dst.release();
+
+        mRegionGeneration = mGeneration;
+        mRegionLeft = left;
+        mRegionTop = top;
+        mRegionRight = right;
+        mRegionBottom = bottom;
+        mConversionCount++;
+        record(start);
+        return mRgba;
+    }
+
+    private void record(long start) {
+        if (mMetrics != null) {
+            mMetrics.record(Metrics.Stage.RGBA_CONVERSION, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Check whether the current frame was converted
+     * @return true if the whole RGBA image is current
+     */
+    public boolean isConverted() {
+        return mFullGeneration == mGeneration;
+    }
+
+    /**
+     * Acquire number of colour conversions, e.g. to verify that frames are not converted twice
+     * @return Number of whole-frame and region conversions
+     */
+    public long getConversionCount() {
+        return mConversionCount;
+    }
+
+    /**
+     * Release the RGBA image
+     */
+    public void release() {
+        mRegionYuv.release();
+        mRgba.release();
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.metrics;
+
+import com.theta360.opencvdetection.detection.RectBuffer;
+
+import java.util.Locale;
+
+/**
+ * Accuracy of detected boxes against ground-truth boxes, frame by frame and over a sequence
+ *
+ * In each frame, the pairs of a detected and a true box are matched greedily by decreasing
+ * intersection over union, each box at most once, and a pair counts as a hit when its IoU reaches
+ * the threshold. The overlap is measured around the seam of the equirectangular frame, so a box
+ * extending past the right edge overlaps the left edge. Scoring does not allocate once the
+ * scratch arrays have grown to the largest frame.
+ */
+public class AccuracyScore {
+
+    private final int mFrameWidth;
+    private final float mIouThreshold;
+    private float[] mPairIou = new float[64];
+    private int[] mPairDetected = new int[64];
+    private int[] mPairTruth = new int[64];
+    private boolean[] mDetectedUsed = new boolean[16];
+    private boolean[] mTruthUsed = new boolean[16];
+
+    private long mFrameCount;
+    private long mTruePositives;
+    private long mFalsePositives;
+    private long mFalseNegatives;
+    private double mIouSum;
+    private int mLastMatched;
+    private double mLastIou;
+
+    /**
+     * Constructor
+     *
+     * @param frameWidth Width of the frames, the period of the horizontal wrap-around
+     * @param iouThreshold Smallest IoU of a detected and a true box to count as a hit, e.g. 0.3
+     */
+    public AccuracyScore(int frameWidth, float iouThreshold) {
+        mFrameWidth = frameWidth;
+        mIouThreshold = iouThreshold;
+    }
+
+    /**
+     * Score a frame and add it to the totals
+     * @param detected Detected boxes
+     * @param truth Ground-truth boxes
+     * @return Number of hits in this frame
+     */
+    public int score(RectBuffer detected, RectBuffer truth) {
+        int detectedCount = detected.size();
+        int truthCount = truth.size();
+        ensureCapacity(detectedCount, truthCount);
+
+        int pairs = 0;
+        for (int d = 0; d < detectedCount; d++) {
+            for (int t = 0; t < truthCount; t++) {
+                float iou = iou(detected, d, truth, t);
+                if (iou >= mIouThreshold) {
+                    mPairIou[pairs] = iou;
+                    mPairDetected[pairs] = d;
+                    mPairTruth[pairs] = t;
+                    pairs++;
+                }
+            }
+        }
+
+        // greedy matching, best pair first; the counts per frame are small
+        for (int d = 0; d < detectedCount; d++) {
+            mDetectedUsed[d] = false;
+        }
+        for (int t = 0; t < truthCount; t++) {
+            mTruthUsed[t] = false;
+        }
+        int matched = 0;
+        double iouSum = 0;
+        while (true) {
+            int best = -1;
+            for (int p = 0; p < pairs; p++) {
+                if (!mDetectedUsed[mPairDetected[p]] && !mTruthUsed[mPairTruth[p]]
+                        && (best < 0 || mPairIou[p] > mPairIou[best])) {
+                    best = p;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            mDetectedUsed[mPairDetected[best]] = true;
+            mTruthUsed[mPairTruth[best]] = true;
+            matched++;
+            iouSum += mPairIou[best];
+        }
+
+        mFrameCount++;
+        mTruePositives += matched;
+        mFalsePositives += detectedCount - matched;
+        mFalseNegatives += truthCount - matched;
+        mIouSum += iouSum;
+        mLastMatched = matched;
+        mLastIou = matched > 0 ? iouSum / matched : 0;
+        return matched;
+    }
+
+    /**
+     * Compute the intersection over union of two boxes, with the horizontal wrap-around
+     * @param a First boxes
+     * @param i Index in the first boxes
+     * @param b Second boxes
+     * @param j Index in the second boxes
+     * @return IoU between 0 and 1
+     */
+    public float iou(RectBuffer a, int i, RectBuffer b, int j) {
+        int overlapY = Math.min(a.getBottom(i), b.getBottom(j)) - Math.max(a.getY(i), b.getY(j));
+        if (overlapY <= 0) {
+            return 0;
+        }
+        int overlapX = 0;
+        for (int shift = -mFrameWidth; shift <= mFrameWidth; shift += mFrameWidth) {
+            overlapX += Math.max(0, Math.min(a.getRight(i), b.getRight(j) + shift)
+                    - Math.max(a.getX(i), b.getX(j) + shift));
+        }
+        long intersection = (long) Math.min(overlapX, Math.min(a.getWidth(i), b.getWidth(j))) * overlapY;
+        long union = (long) a.getArea(i) + b.getArea(j) - intersection;
+        return union > 0 ? (float) intersection / union : 0;
+    }
+
+    /**
+     * Acquire the hits of the last scored frame
+     * @return Number of matched boxes
+     */
+    public int getLastMatched() {
+        return mLastMatched;
+    }
+
+    /**
+     * Acquire the mean IoU of the hits of the last scored frame
+     * @return Mean IoU, 0 without hits
+     */
+    public double getLastIou() {
+        return mLastIou;
+    }
+
+    /**
+     * Acquire number of scored frames
+     * @return Number of frames
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Acquire precision
+     * @return Hits over detected boxes, 1 if nothing was detected
+     */
+    public double getPrecision() {
+        long detected = mTruePositives + mFalsePositives;
+        return detected == 0 ? 1 : (double) mTruePositives / detected;
+    }
+
+    /**
+     * Acquire recall
+     * @return Hits over true boxes, 1 if there was nothing to detect
+     */
+    public double getRecall() {
+        long truth = mTruePositives + mFalseNegatives;
+        return truth == 0 ? 1 : (double) mTruePositives / truth;
+    }
+
+    /**
+     * Acquire mean IoU
+     * @return Mean IoU of all hits, 0 without hits
+     */
+    public double getMeanIou() {
+        return mTruePositives == 0 ? 0 : mIouSum / mTruePositives;
+    }
+
+    /**
+     * Acquire number of hits
+     * @return Detected boxes matched with a true box
+     */
+    public long getTruePositives() {
+        return mTruePositives;
+    }
+
+    /**
+     * Acquire number of false detections
+     * @return Detected boxes without a true box
+     */
+    public long getFalsePositives() {
+        return mFalsePositives;
+    }
+
+    /**
+     * Acquire number of misses
+     * @return True boxes without a detected box
+     */
+    public long getFalseNegatives() {
+        return mFalseNegatives;
+    }
+
+    /**
+     * Forget all frames
+     */
+    public void reset() {
+        mFrameCount = 0;
+        mTruePositives = 0;
+        mFalsePositives = 0;
+        mFalseNegatives = 0;
+        mIouSum = 0;
+        mLastMatched = 0;
+        mLastIou = 0;
+    }
+
+    /**
+     * Describe the totals
+     * @return Precision, recall, mean IoU and counts
+     */
+    public String dump() {
+        return String.format(Locale.US, "precision=%.3f recall=%.3f iou=%.3f (tp=%d fp=%d fn=%d, %d frames)",
+                getPrecision(), getRecall(), getMeanIou(), mTruePositives, mFalsePositives, mFalseNegatives,
+                mFrameCount);
+    }
+
+    private void ensureCapacity(int detectedCount, int truthCount) {
+        int pairs = detectedCount * truthCount;
+        if (mPairIou.length < pairs) {
+            mPairIou = new float[pairs * 2];
+            mPairDetected = new int[pairs * 2];
+            mPairTruth = new int[pairs * 2];
+        }
+        if (mDetectedUsed.length < detectedCount) {
+            mDetectedUsed = new boolean[detectedCount * 2];
+        }
+        if (mTruthUsed.length < truthCount) {
+            mTruthUsed = new boolean[truthCount * 2];
+        }
+    }
+}
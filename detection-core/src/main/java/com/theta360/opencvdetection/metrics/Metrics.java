@@ -0,0 +1,151 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of the processing stages and counters of dropped frames
+ *
+ * Recording never allocates and may be called from any thread, so the metrics can stay on in
+ * production; {@link #dump()} formats a snapshot on demand.
+ */
+public class Metrics {
+
+    /**
+     * Measured stage
+     */
+    public enum Stage {
+        /** Handling of a preview frame on the view thread, the listener included */
+        PREVIEW_CALLBACK,
+        /** Whole detection of a frame */
+        DETECTION,
+        /** Background subtraction */
+        SUBTRACTION,
+        /** Binarization and morphological opening of the foreground mask */
+        MORPHOLOGY,
+        /** Bounding boxes from contours or connected components */
+        BLOB_EXTRACTION,
+        /** NV21 to RGBA conversion */
+        RGBA_CONVERSION,
+        /** Copy of the RGBA frame into the bitmap of the view */
+        BITMAP_UPLOAD,
+        /** Drawing the bitmap on the canvas */
+        CANVAS_DRAW,
+        /** Encoding and writing of a detection window */
+        JPEG_WRITE,
+        /** Encoding of a clip frame */
+        CLIP_ENCODE
+    }
+
+    /**
+     * Counted drop
+     */
+    public enum Drop {
+        /** Preview frame replaced before the view thread took it */
+        PREVIEW,
+        /** Frame not captured because no pipeline frame was free */
+        PIPELINE,
+        /** Detection window not saved because the writer was full */
+        WINDOW,
+        /** Clip frame not recorded because all encoder slots were in use */
+        CLIP
+    }
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[Stage.values().length];
+    private final AtomicLongArray mDrops = new AtomicLongArray(Drop.values().length);
+
+    /**
+     * Constructor
+     */
+    public Metrics() {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Record the latency of a stage
+     * @param stage Measured stage
+     * @param nanos Latency in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        mHistograms[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Count a dropped frame
+     * @param drop Kind of drop
+     */
+    public void drop(Drop drop) {
+        mDrops.incrementAndGet(drop.ordinal());
+    }
+
+    /**
+     * Acquire the histogram of a stage
+     * @param stage Measured stage
+     * @return Histogram of the latencies
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return mHistograms[stage.ordinal()];
+    }
+
+    /**
+     * Acquire number of drops
+     * @param drop Kind of drop
+     * @return Number of dropped frames
+     */
+    public long getDropCount(Drop drop) {
+        return mDrops.get(drop.ordinal());
+    }
+
+    /**
+     * Forget all latencies and drops
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < mDrops.length(); i++) {
+            mDrops.set(i, 0);
+        }
+    }
+
+    /**
+     * Describe the stages that recorded latencies and the drop counters, one stage per line
+     * @return Count, p50, p95, p99 and maximum of each stage in milliseconds, and the drops
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = mHistograms[stage.ordinal()];
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            sb.append(String.format(Locale.US, "%s n=%d p50=%.2f p95=%.2f p99=%.2f max=%.2f ms%n",
+                    stage.name().toLowerCase(Locale.US), histogram.getCount(),
+                    histogram.getPercentile(50) / 1e6, histogram.getPercentile(95) / 1e6,
+                    histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6));
+        }
+        sb.append("dropped");
+        for (Drop drop : Drop.values()) {
+            sb.append(' ').append(drop.name().toLowerCase(Locale.US)).append('=').append(mDrops.get(drop.ordinal()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.pipeline;
+
+/**
+ * Behavior of a stage queue when a new item arrives and the queue is full
+ */
+public enum DropPolicy {
+    /** Discard the oldest queued item so that the producer never waits */
+    DROP_OLDEST,
+
+    /** Make the producer wait until the stage has taken an item */
+    BLOCK
+}
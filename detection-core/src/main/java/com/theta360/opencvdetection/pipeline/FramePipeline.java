@@ -0,0 +1,264 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-stage frame processor
+ *
+ * Each stage runs on its own thread and receives items through a bounded hand-off queue, so a
+ * slow stage only fills its own queue instead of stalling the producer. Items are preallocated
+ * by the caller and circulate between a free pool and the stage queues; an item leaves the
+ * pipeline (returns to the pool) after the last stage, when a stage declines to forward it, or
+ * when it is discarded by a {@link DropPolicy#DROP_OLDEST} queue. An item whose processing
+ * throws a RuntimeException is counted as failed and returned to the pool; the stage goes on.
+ *
+ * @param <T> Type of the item handed between stages
+ */
+public class FramePipeline<T> {
+
+    /**
+     * Processing of one pipeline stage
+     *
+     * @param <T> Type of the item handed between stages
+     */
+    public interface StageHandler<T> {
+        /**
+         * Process an item on the stage thread
+         * @param item Item to process
+         * @return true to hand the item to the next stage, false to return it to the pool
+         */
+        boolean process(T item);
+    }
+
+    private final ArrayBlockingQueue<T> mFreeItems;
+    private final List<Stage> mStages = new ArrayList<>();
+    private final AtomicLong mAcquireFailureCount = new AtomicLong();
+    private volatile boolean mRunning = false;
+
+    /**
+     * Constructor
+     *
+     * @param items Preallocated items circulating in the pipeline
+     */
+    public FramePipeline(Collection<T> items) {
+        mFreeItems = new ArrayBlockingQueue<>(items.size(), false, items);
+    }
+
+    /**
+     * Append a stage to the end of the pipeline
+     * @param name Stage name, also used as the thread name
+     * @param capacity Capacity of the queue in front of the stage
+     * @param dropPolicy Behavior when the queue is full
+     * @param handler Processing of the stage
+     * @return This pipeline
+     */
+    public synchronized FramePipeline<T> addStage(String name, int capacity, DropPolicy dropPolicy,
+                                                  StageHandler<T> handler) {
+        if (mRunning) {
+            throw new IllegalStateException("Cannot add a stage to a running pipeline");
+        }
+        Stage stage = new Stage(name, capacity, dropPolicy, handler);
+        if (!mStages.isEmpty()) {
+            mStages.get(mStages.size() - 1).mNext = stage;
+        }
+        mStages.add(stage);
+        return this;
+    }
+
+    /**
+     * Start the stage threads
+     */
+    public synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        for (Stage stage : mStages) {
+            stage.mThread = new Thread(stage, "Pipeline-" + stage.mName);
+            stage.mThread.start();
+        }
+    }
+
+    /**
+     * Stop the stage threads and return all queued items to the pool
+     */
+    public synchronized void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        for (Stage stage : mStages) {
+            stage.mThread.interrupt();
+        }
+        for (Stage stage : mStages) {
+            try {
+                stage.mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            stage.mThread = null;
+        }
+        for (Stage stage : mStages) {
+            T item;
+            while ((item = stage.mQueue.poll()) != null) {
+                release(item);
+            }
+        }
+    }
+
+    /**
+     * Take a free item from the pool without waiting
+     * @return Free item, or null if all items are in flight
+     */
+    public T acquire() {
+        T item = mFreeItems.poll();
+        if (item == null) {
+            mAcquireFailureCount.incrementAndGet();
+        }
+        return item;
+    }
+
+    /**
+     * Hand an acquired item to the first stage
+     * @param item Item filled by the producer
+     */
+    public void submit(T item) {
+        if (!mRunning || mStages.isEmpty()) {
+            release(item);
+            return;
+        }
+        mStages.get(0).enqueue(item);
+    }
+
+    /**
+     * Return an item to the pool without processing it
+     * @param item Item acquired from this pipeline
+     */
+    public void release(T item) {
+        mFreeItems.offer(item);
+    }
+
+    /**
+     * Acquire the number of times the producer found no free item
+     * @return Number of failed acquisitions
+     */
+    public long getAcquireFailureCount() {
+        return mAcquireFailureCount.get();
+    }
+
+    /**
+     * Acquire the counters of all stages
+     * @return Snapshot per stage, in pipeline order
+     */
+    public synchronized List<StageStats> getStats() {
+        List<StageStats> stats = new ArrayList<>(mStages.size());
+        for (Stage stage : mStages) {
+            stats.add(new StageStats(stage.mName, stage.mDropPolicy, stage.mCapacity,
+                    stage.mQueue.size(), stage.mProcessedCount.get(), stage.mDroppedCount.get(),
+                    stage.mFailedCount.get()));
+        }
+        return stats;
+    }
+
+    /**
+     * Describe the state of the pipeline in one line
+     * @return Pool and per-stage counters
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("free=").append(mFreeItems.size())
+                .append(" acquireFailures=").append(mAcquireFailureCount.get());
+        for (StageStats stats : getStats()) {
+            sb.append(" | ").append(stats);
+        }
+        return sb.toString();
+    }
+
+    private class Stage implements Runnable {
+        private final String mName;
+        private final int mCapacity;
+        private final DropPolicy mDropPolicy;
+        private final StageHandler<T> mHandler;
+        private final ArrayBlockingQueue<T> mQueue;
+        private final AtomicLong mProcessedCount = new AtomicLong();
+        private final AtomicLong mDroppedCount = new AtomicLong();
+        private final AtomicLong mFailedCount = new AtomicLong();
+        private Stage mNext;
+        private Thread mThread;
+
+        Stage(String name, int capacity, DropPolicy dropPolicy, StageHandler<T> handler) {
+            mName = name;
+            mCapacity = capacity;
+            mDropPolicy = dropPolicy;
+            mHandler = handler;
+            mQueue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void enqueue(T item) {
+            if (mDropPolicy == DropPolicy.BLOCK) {
+                try {
+                    mQueue.put(item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    release(item);
+                }
+                return;
+            }
+
+            while (!mQueue.offer(item)) {
+                T oldest = mQueue.poll();
+                if (oldest != null) {
+                    mDroppedCount.incrementAndGet();
+                    release(oldest);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (mRunning) {
+                T item;
+                try {
+                    item = mQueue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                boolean forward = false;
+                try {
+                    forward = mHandler.process(item);
+                } catch (RuntimeException e) {
+                    // one failing item must not stop the stage, the item goes back to the pool
+                    mFailedCount.incrementAndGet();
+                    e.printStackTrace();
+                }
+                mProcessedCount.incrementAndGet();
+                if (forward && mNext != null && mRunning) {
+                    mNext.enqueue(item);
+                } else {
+                    release(item);
+                }
+            }
+        }
+    }
+}
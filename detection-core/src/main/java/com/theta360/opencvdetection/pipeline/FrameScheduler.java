@@ -0,0 +1,209 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.pipeline;
+
+/**
+ * Scheduler deciding what to do with each delivered frame
+ *
+ * While the scene is active, i.e. moving areas were found recently, frames are processed as
+ * often as the measured processing time allows. After the scene has been idle for a while,
+ * most frames are skipped: every few frames a cheap check frame looks for a global change, and
+ * a full detection still runs at least once per maximum latency to keep the background model
+ * fresh. A changed check frame or a detection with moving areas makes the scene active again.
+ * The times are given by the caller in nanoseconds, so the scheduler is clock independent.
+ * The methods may be called from different threads.
+ */
+public class FrameScheduler {
+
+    /**
+     * What to do with a frame
+     */
+    public enum Decision {
+        /** Run the full detection */
+        PROCESS,
+        /** Run the cheap change check only */
+        CHECK,
+        /** Drop the frame */
+        SKIP
+    }
+
+    // weight of a new sample in the moving averages
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    private final long mIdleAfterNanos;
+    private final long mMaxLatencyNanos;
+    private final int mCheckInterval;
+
+    private long mLastFrameNanos = -1;
+    private double mFrameIntervalNanos;
+    private double mProcessNanos;
+    private long mLastActivityNanos;
+    private long mLastProcessNanos;
+    private long mLastCheckFrame;
+    private long mFrameCount;
+    private boolean mActive = true;
+    private int mActiveInterval = 1;
+
+    private long mProcessCount;
+    private long mCheckCount;
+    private long mSkipCount;
+    private long mActivations;
+    private long mMaxProcessGapNanos;
+
+    /**
+     * Constructor
+     *
+     * @param idleAfterMillis Time without activity after which the scene is idle
+     * @param maxLatencyMillis Maximum time between two full detections while idle
+     * @param checkInterval Number of frames between two check frames while idle
+     */
+    public FrameScheduler(long idleAfterMillis, long maxLatencyMillis, int checkInterval) {
+        mIdleAfterNanos = idleAfterMillis * 1000000L;
+        mMaxLatencyNanos = maxLatencyMillis * 1000000L;
+        mCheckInterval = Math.max(checkInterval, 1);
+    }
+
+    /**
+     * Decide what to do with a delivered frame
+     * @param nowNanos Time of the frame
+     * @return Decision
+     */
+    public synchronized Decision next(long nowNanos) {
+        if (mLastFrameNanos < 0) {
+            mLastActivityNanos = nowNanos;
+            mLastProcessNanos = nowNanos;
+        } else {
+            mFrameIntervalNanos = average(mFrameIntervalNanos, nowNanos - mLastFrameNanos);
+        }
+        mLastFrameNanos = nowNanos;
+        mFrameCount++;
+
+        if (mActive && nowNanos - mLastActivityNanos > mIdleAfterNanos) {
+            mActive = false;
+            mLastCheckFrame = mFrameCount;
+        }
+
+        Decision decision;
+        if (mActive) {
+            // frames arriving while the previous one is processed would be dropped anyway
+            mActiveInterval = mFrameIntervalNanos > 0
+                    ? Math.max(1, (int) Math.ceil(mProcessNanos / mFrameIntervalNanos)) : 1;
+            decision = mFrameCount % mActiveInterval == 0 ? Decision.PROCESS : Decision.SKIP;
+        } else if (nowNanos - mLastProcessNanos >= mMaxLatencyNanos) {
+            decision = Decision.PROCESS;
+        } else if (mFrameCount - mLastCheckFrame >= mCheckInterval) {
+            mLastCheckFrame = mFrameCount;
+            decision = Decision.CHECK;
+        } else {
+            decision = Decision.SKIP;
+        }
+
+        switch (decision) {
+            case PROCESS:
+                mMaxProcessGapNanos = Math.max(mMaxProcessGapNanos, nowNanos - mLastProcessNanos);
+                mLastProcessNanos = nowNanos;
+                mProcessCount++;
+                break;
+            case CHECK:
+                mCheckCount++;
+                break;
+            default:
+                mSkipCount++;
+                break;
+        }
+        return decision;
+    }
+
+    /**
+     * Report the result of a check frame
+     * @param nowNanos Time of the report
+     * @param changed true if the frame changed globally
+     */
+    public synchronized void onChecked(long nowNanos, boolean changed) {
+        if (changed) {
+            activate(nowNanos);
+        }
+    }
+
+    /**
+     * Report the result of a full detection
+     * @param nowNanos Time of the report
+     * @param processNanos Processing time of the frame
+     * @param movingAreaCount Number of moving areas found
+     */
+    public synchronized void onProcessed(long nowNanos, long processNanos, int movingAreaCount) {
+        mProcessNanos = average(mProcessNanos, processNanos);
+        if (movingAreaCount > 0) {
+            activate(nowNanos);
+        }
+    }
+
+    /**
+     * Check whether the scene is active
+     * @return true if frames are processed continuously
+     */
+    public synchronized boolean isActive() {
+        return mActive;
+    }
+
+    /**
+     * Acquire the number of frames decided so far
+     * @param decision Decision
+     * @return Number of frames
+     */
+    public synchronized long getCount(Decision decision) {
+        switch (decision) {
+            case PROCESS:
+                return mProcessCount;
+            case CHECK:
+                return mCheckCount;
+            default:
+                return mSkipCount;
+        }
+    }
+
+    /**
+     * Acquire the longest time between two full detections
+     * @return Time in nanoseconds
+     */
+    public synchronized long getMaxProcessGapNanos() {
+        return mMaxProcessGapNanos;
+    }
+
+    /**
+     * Describe the state and the counters of the scheduler
+     * @return Summary of the scheduler
+     */
+    public synchronized String dump() {
+        return String.format("%s interval=%d process=%d check=%d skip=%d activations=%d"
+                        + " processTime=%.1fms frameInterval=%.1fms maxGap=%dms",
+                mActive ? "active" : "idle", mActiveInterval, mProcessCount, mCheckCount, mSkipCount,
+                mActivations, mProcessNanos / 1e6, mFrameIntervalNanos / 1e6, mMaxProcessGapNanos / 1000000);
+    }
+
+    private void activate(long nowNanos) {
+        if (!mActive) {
+            mActive = true;
+            mActivations++;
+        }
+        mLastActivityNanos = Math.max(mLastActivityNanos, nowNanos);
+    }
+
+    private static double average(double average, double sample) {
+        return average == 0 ? sample : average + AVERAGE_WEIGHT * (sample - average);
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.pipeline;
+
+/**
+ * Frame rate and CPU load of a run, e.g. to compare the headless and the rendering mode
+ *
+ * The caller counts the delivered frames and samples the meter from time to time with the wall
+ * time and the CPU time consumed by the process, both given by the caller so the meter is clock
+ * independent. The CPU load is the CPU time over the wall time, so 100% is one busy core.
+ * The methods may be called from different threads.
+ */
+public class RunMeter {
+
+    private final String mMode;
+
+    private long mStartNanos;
+    private long mStartCpuMillis;
+    private long mFrameCount;
+
+    private long mSampleNanos;
+    private long mSampleCpuMillis;
+    private long mSampleFrameCount;
+    private double mFps;
+    private double mCpuPercent;
+
+    /**
+     * Constructor
+     *
+     * @param mode Name of the measured mode, used in the dump
+     */
+    public RunMeter(String mode) {
+        mMode = mode;
+    }
+
+    /**
+     * Start the run
+     * @param nowNanos Current time in nanoseconds
+     * @param cpuMillis CPU time consumed by the process so far in milliseconds
+     */
+    public synchronized void start(long nowNanos, long cpuMillis) {
+        mStartNanos = nowNanos;
+        mStartCpuMillis = cpuMillis;
+        mFrameCount = 0;
+        mSampleNanos = nowNanos;
+        mSampleCpuMillis = cpuMillis;
+        mSampleFrameCount = 0;
+        mFps = 0;
+        mCpuPercent = 0;
+    }
+
+    /**
+     * Count a delivered frame
+     */
+    public synchronized void onFrame() {
+        mFrameCount++;
+    }
+
+    /**
+     * End the current interval and measure it
+     * @param nowNanos Current time in nanoseconds
+     * @param cpuMillis CPU time consumed by the process so far in milliseconds
+     */
+    public synchronized void sample(long nowNanos, long cpuMillis) {
+        long elapsed = nowNanos - mSampleNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        mFps = rate(mFrameCount - mSampleFrameCount, elapsed);
+        mCpuPercent = load(cpuMillis - mSampleCpuMillis, elapsed);
+        mSampleNanos = nowNanos;
+        mSampleCpuMillis = cpuMillis;
+        mSampleFrameCount = mFrameCount;
+    }
+
+    /**
+     * Acquire frame rate of the last interval
+     * @return Frames per second
+     */
+    public synchronized double getFps() {
+        return mFps;
+    }
+
+    /**
+     * Acquire CPU load of the last interval
+     * @return CPU time in percent of the wall time
+     */
+    public synchronized double getCpuPercent() {
+        return mCpuPercent;
+    }
+
+    /**
+     * Acquire frame rate since start, up to the last sample
+     * @return Frames per second
+     */
+    public synchronized double getAverageFps() {
+        return rate(mSampleFrameCount, mSampleNanos - mStartNanos);
+    }
+
+    /**
+     * Acquire CPU load since start, up to the last sample
+     * @return CPU time in percent of the wall time
+     */
+    public synchronized double getAverageCpuPercent() {
+        return load(mSampleCpuMillis - mStartCpuMillis, mSampleNanos - mStartNanos);
+    }
+
+    /**
+     * Acquire number of delivered frames
+     * @return Number of frames counted since start
+     */
+    public synchronized long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Describe the last interval and the whole run in one line
+     * @return Mode, frame rates and CPU loads
+     */
+    public synchronized String dump() {
+        return String.format("%s: %.1f fps, cpu %.0f%% (run: %.1f fps, cpu %.0f%%, %d frames)",
+                mMode, mFps, mCpuPercent, getAverageFps(), getAverageCpuPercent(), mFrameCount);
+    }
+
+    private static double rate(long frames, long elapsedNanos) {
+        return elapsedNanos > 0 ? frames * 1e9 / elapsedNanos : 0;
+    }
+
+    private static double load(long cpuMillis, long elapsedNanos) {
+        return elapsedNanos > 0 ? cpuMillis * 1e8 / elapsedNanos : 0;
+    }
+}
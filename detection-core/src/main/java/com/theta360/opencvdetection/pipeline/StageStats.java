@@ -0,0 +1,115 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.pipeline;
+
+/**
+ * Snapshot of the counters of one pipeline stage
+ */
+public class StageStats {
+    private final String mName;
+    private final DropPolicy mDropPolicy;
+    private final int mCapacity;
+    private final int mQueueDepth;
+    private final long mProcessedCount;
+    private final long mDroppedCount;
+    private final long mFailedCount;
+
+    /**
+     * Constructor
+     *
+     * @param name Stage name
+     * @param dropPolicy Drop policy of the stage queue
+     * @param capacity Capacity of the stage queue
+     * @param queueDepth Number of items waiting in the stage queue
+     * @param processedCount Number of items processed by the stage
+     * @param droppedCount Number of items discarded from the stage queue
+     * @param failedCount Number of items whose processing threw an exception
+     */
+    public StageStats(String name, DropPolicy dropPolicy, int capacity, int queueDepth,
+                      long processedCount, long droppedCount, long failedCount) {
+        mName = name;
+        mDropPolicy = dropPolicy;
+        mCapacity = capacity;
+        mQueueDepth = queueDepth;
+        mProcessedCount = processedCount;
+        mDroppedCount = droppedCount;
+        mFailedCount = failedCount;
+    }
+
+    /**
+     * Acquire stage name
+     * @return Stage name
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Acquire drop policy
+     * @return Drop policy of the stage queue
+     */
+    public DropPolicy getDropPolicy() {
+        return mDropPolicy;
+    }
+
+    /**
+     * Acquire queue capacity
+     * @return Capacity of the stage queue
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Acquire queue depth
+     * @return Number of items waiting in the stage queue
+     */
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    /**
+     * Acquire processed count
+     * @return Number of items processed by the stage
+     */
+    public long getProcessedCount() {
+        return mProcessedCount;
+    }
+
+    /**
+     * Acquire dropped count
+     * @return Number of items discarded from the stage queue
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * Acquire failed count
+     * @return Number of items whose processing threw an exception
+     */
+    public long getFailedCount() {
+        return mFailedCount;
+    }
+
+    @Override
+    public String toString() {
+        return mName + "[" + mDropPolicy + "] depth=" + mQueueDepth + "/" + mCapacity
+                + " processed=" + mProcessedCount + " dropped=" + mDroppedCount
+                + " failed=" + mFailedCount;
+    }
+}
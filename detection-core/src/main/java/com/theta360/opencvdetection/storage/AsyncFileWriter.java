@@ -0,0 +1,435 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.storage;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writer of files on dedicated threads
+ *
+ * Producers submit jobs to a bounded queue and return immediately; a job that finds the queue
+ * full is dropped and counted instead of blocking the producer, so disk latency never stalls the
+ * frame delivery. The queue entries and the byte buffers of {@link #write(String, byte[], int, int)}
+ * are preallocated and reused. Written files are synced in batches: a writer thread keeps up to
+ * the batch size of files open and syncs them together when the batch is full or its oldest file
+ * waited for the sync interval, so the storage commits several files at once. The listener is
+ * told about a file only after it was synced.
+ */
+public class AsyncFileWriter {
+
+    /**
+     * Receiver of the results, called on a writer thread
+     */
+    public interface Listener {
+        /**
+         * Called when a file is written and synced
+         * @param path Path of the file
+         */
+        void onWritten(String path);
+
+        /**
+         * Called when a file cannot be written
+         * @param path Path of the file
+         * @param e Cause
+         */
+        void onError(String path, IOException e);
+    }
+
+    private static final Entry STOP = new Entry();
+
+    private final ArrayBlockingQueue<Entry> mQueue;
+    private final ArrayBlockingQueue<Entry> mFreeEntries;
+    private final ArrayBlockingQueue<ByteJob> mFreeByteJobs;
+    private final int mSyncBatchSize;
+    private final long mSyncIntervalNanos;
+    private final Listener mListener;
+    private final Thread[] mThreads;
+    // orders the submissions with the stop marks of close
+    private final Object mCloseLock = new Object();
+    private boolean mClosed;
+
+    private final Object mStatsLock = new Object();
+    private long mSubmittedCount;
+    private long mWrittenCount;
+    private long mDroppedCount;
+    private long mFailedCount;
+    private long mSyncCount;
+    private int mMaxQueueDepth;
+    private long mTotalLatencyNanos;
+    private long mMaxLatencyNanos;
+
+    /**
+     * Constructor, starting the writer threads
+     *
+     * @param capacity Number of files that can wait for a writer thread
+     * @param threadCount Number of writer threads
+     * @param syncBatchSize Number of files synced together
+     * @param syncIntervalMillis Maximum time a written file waits for its sync
+     * @param listener Receiver of the results, or null
+     */
+    public AsyncFileWriter(int capacity, int threadCount, int syncBatchSize, long syncIntervalMillis,
+                           Listener listener) {
+        // room for the stop marks, so that close never waits for a free slot
+        mQueue = new ArrayBlockingQueue<>(capacity + threadCount);
+        mFreeEntries = new ArrayBlockingQueue<>(capacity);
+        mFreeByteJobs = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            mFreeEntries.add(new Entry());
+            mFreeByteJobs.add(new ByteJob(mFreeByteJobs));
+        }
+        mSyncBatchSize = Math.max(syncBatchSize, 1);
+        mSyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        mListener = listener;
+
+        mThreads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            mThreads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeLoop();
+                }
+            }, "AsyncFileWriter-" + i);
+            mThreads[i].start();
+        }
+    }
+
+    /**
+     * Queue a job without waiting
+     * @param path Path of the file
+     * @param job Content of the file; recycled by the writer once written
+     * @return true if queued, false if the queue is full or the writer is closing; the job then stays with the caller
+     */
+    public boolean submit(String path, WriteJob job) {
+        int depth;
+        synchronized (mCloseLock) {
+            // once close started, an entry would land behind the stop marks and never be written
+            Entry entry = mClosed ? null : mFreeEntries.poll();
+            if (entry == null) {
+                synchronized (mStatsLock) {
+                    mDroppedCount++;
+                }
+                return false;
+            }
+            entry.mPath = path;
+            entry.mJob = job;
+            entry.mEnqueueNanos = System.nanoTime();
+            mQueue.add(entry);
+            depth = mQueue.size();
+        }
+        synchronized (mStatsLock) {
+            mSubmittedCount++;
+            if (depth > mMaxQueueDepth) {
+                mMaxQueueDepth = depth;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queue a copy of the given bytes without waiting
+     * @param path Path of the file
+     * @param data Content of the file, copied into a pooled buffer before returning
+     * @param offset Start of the content in data
+     * @param length Length of the content
+     * @return true if queued, false if the queue is full or the writer is closed
+     */
+    public boolean write(String path, byte[] data, int offset, int length) {
+        ByteJob job = mFreeByteJobs.poll();
+        if (job == null) {
+            synchronized (mStatsLock) {
+                mDroppedCount++;
+            }
+            return false;
+        }
+        job.copy(data, offset, length);
+        if (!submit(path, job)) {
+            job.recycle();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queue the given bytes without copying them, e.g. a JPEG image the caller does not reuse
+     * @param path Path of the file
+     * @param data Content of the file; must not be modified until it is written
+     * @return true if queued, false if the queue is full or the writer is closed
+     */
+    public boolean writeOwned(String path, byte[] data) {
+        ByteJob job = mFreeByteJobs.poll();
+        if (job == null) {
+            synchronized (mStatsLock) {
+                mDroppedCount++;
+            }
+            return false;
+        }
+        job.wrap(data);
+        if (!submit(path, job)) {
+            job.recycle();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write and sync the queued files, then stop the writer threads
+     */
+    public void close() {
+        synchronized (mCloseLock) {
+            if (!mClosed) {
+                mClosed = true;
+                for (int i = 0; i < mThreads.length; i++) {
+                    mQueue.add(STOP);
+                }
+            }
+        }
+        for (Thread thread : mThreads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Acquire number of files waiting for a writer thread
+     * @return Queue depth
+     */
+    public int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * Acquire number of rejected files
+     * @return Number of files dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        synchronized (mStatsLock) {
+            return mDroppedCount;
+        }
+    }
+
+    /**
+     * Acquire number of written files
+     * @return Number of files written and synced
+     */
+    public long getWrittenCount() {
+        synchronized (mStatsLock) {
+            return mWrittenCount;
+        }
+    }
+
+    /**
+     * Acquire number of failed files
+     * @return Number of files that could not be written
+     */
+    public long getFailedCount() {
+        synchronized (mStatsLock) {
+            return mFailedCount;
+        }
+    }
+
+    /**
+     * Acquire number of sync batches
+     * @return Number of times the writer threads synced their open files
+     */
+    public long getSyncCount() {
+        synchronized (mStatsLock) {
+            return mSyncCount;
+        }
+    }
+
+    /**
+     * Describe the backpressure counters in one line
+     * @return Queue and latency counters
+     */
+    public String dump() {
+        synchronized (mStatsLock) {
+            double averageLatency = mWrittenCount > 0 ? mTotalLatencyNanos / 1e6 / mWrittenCount : 0;
+            return String.format("submitted=%d written=%d dropped=%d failed=%d syncs=%d queue=%d maxQueue=%d"
+                            + " latency=%.1fms maxLatency=%.1fms",
+                    mSubmittedCount, mWrittenCount, mDroppedCount, mFailedCount, mSyncCount, mQueue.size(),
+                    mMaxQueueDepth, averageLatency, mMaxLatencyNanos / 1e6);
+        }
+    }
+
+    private void writeLoop() {
+        FileOutputStream[] files = new FileOutputStream[mSyncBatchSize];
+        String[] paths = new String[mSyncBatchSize];
+        long[] enqueueTimes = new long[mSyncBatchSize];
+        int pending = 0;
+        long syncDeadline = 0;
+
+        while (true) {
+            Entry entry;
+            try {
+                if (pending == 0) {
+                    entry = mQueue.take();
+                } else {
+                    entry = mQueue.poll(syncDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (entry == null) {
+                // the oldest open file waited long enough
+                sync(files, paths, enqueueTimes, pending);
+                pending = 0;
+                continue;
+            }
+            if (entry == STOP) {
+                break;
+            }
+
+            String path = entry.mPath;
+            WriteJob job = entry.mJob;
+            long enqueueNanos = entry.mEnqueueNanos;
+            entry.mPath = null;
+            entry.mJob = null;
+            mFreeEntries.add(entry);
+
+            FileOutputStream out = null;
+            try {
+                out = new FileOutputStream(path);
+                job.write(out);
+                if (pending == 0) {
+                    syncDeadline = System.nanoTime() + mSyncIntervalNanos;
+                }
+                files[pending] = out;
+                paths[pending] = path;
+                enqueueTimes[pending] = enqueueNanos;
+                pending++;
+            } catch (IOException e) {
+                closeQuietly(out);
+                onError(path, e);
+            } catch (RuntimeException e) {
+                // e.g. a CvException of an encoding; the thread goes on with the next file
+                closeQuietly(out);
+                onError(path, new IOException(e));
+            } finally {
+                job.recycle();
+            }
+            if (pending == mSyncBatchSize || (pending > 0 && System.nanoTime() - syncDeadline >= 0)) {
+                sync(files, paths, enqueueTimes, pending);
+                pending = 0;
+            }
+        }
+        sync(files, paths, enqueueTimes, pending);
+    }
+
+    private void sync(FileOutputStream[] files, String[] paths, long[] enqueueTimes, int count) {
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            try {
+                files[i].getFD().sync();
+                files[i].close();
+                long latency = System.nanoTime() - enqueueTimes[i];
+                synchronized (mStatsLock) {
+                    mWrittenCount++;
+                    mTotalLatencyNanos += latency;
+                    if (latency > mMaxLatencyNanos) {
+                        mMaxLatencyNanos = latency;
+                    }
+                }
+                if (mListener != null) {
+                    mListener.onWritten(paths[i]);
+                }
+            } catch (IOException e) {
+                closeQuietly(files[i]);
+                onError(paths[i], e);
+            }
+            files[i] = null;
+            paths[i] = null;
+        }
+        synchronized (mStatsLock) {
+            mSyncCount++;
+        }
+    }
+
+    private void onError(String path, IOException e) {
+        synchronized (mStatsLock) {
+            mFailedCount++;
+        }
+        if (mListener != null) {
+            mListener.onError(path, e);
+        }
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            // already failed; the first error is reported
+        }
+    }
+
+    private static class Entry {
+        String mPath;
+        WriteJob mJob;
+        long mEnqueueNanos;
+    }
+
+    private static class ByteJob implements WriteJob {
+        private final ArrayBlockingQueue<ByteJob> mPool;
+        private byte[] mBuffer = new byte[0];
+        private byte[] mData;
+        private int mOffset;
+        private int mLength;
+
+        ByteJob(ArrayBlockingQueue<ByteJob> pool) {
+            mPool = pool;
+        }
+
+        void copy(byte[] data, int offset, int length) {
+            if (mBuffer.length < length) {
+                mBuffer = new byte[length];
+            }
+            System.arraycopy(data, offset, mBuffer, 0, length);
+            mData = mBuffer;
+            mOffset = 0;
+            mLength = length;
+        }
+
+        void wrap(byte[] data) {
+            mData = data;
+            mOffset = 0;
+            mLength = data.length;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            out.write(mData, mOffset, mLength);
+        }
+
+        @Override
+        public void recycle() {
+            mData = null;
+            mPool.add(this);
+        }
+    }
+}
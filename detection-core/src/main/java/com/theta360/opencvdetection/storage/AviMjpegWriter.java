@@ -0,0 +1,262 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writer of Motion JPEG AVI files
+ *
+ * The JPEG frames are appended sequentially to the movie list; the index and the frame count,
+ * frame rate and sizes in the headers are written on close. A file that is not closed has no
+ * index, which most players can rebuild.
+ */
+public class AviMjpegWriter implements Closeable {
+
+    // file offsets of the header fields patched on close
+    private static final int RIFF_SIZE_OFFSET = 4;
+    private static final int AVIH_OFFSET = 32;
+    private static final int STRH_OFFSET = 108;
+    private static final int MOVI_SIZE_OFFSET = 216;
+    private static final int MOVI_OFFSET = 220;
+    private static final int HEADER_SIZE = 224;
+
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+    private static final int RATE_SCALE = 1000;
+    private static final int INITIAL_INDEX_CAPACITY = 256;
+
+    private final FileOutputStream mOut;
+    private final FileChannel mChannel;
+    private final int mWidth;
+    private final int mHeight;
+    private final ByteBuffer mChunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] mPadding = new byte[1];
+    private double mFrameRate;
+    private long mPosition;
+    private int[] mOffsets = new int[INITIAL_INDEX_CAPACITY];
+    private int[] mSizes = new int[INITIAL_INDEX_CAPACITY];
+    private int mFrameCount;
+    private int mMaxFrameSize;
+
+    /**
+     * Constructor, writing the headers
+     *
+     * @param file File to create
+     * @param width Frame width
+     * @param height Frame height
+     * @param frameRate Frames per second, can be corrected before close
+     * @throws IOException If the file cannot be written
+     */
+    public AviMjpegWriter(File file, int width, int height, double frameRate) throws IOException {
+        mWidth = width;
+        mHeight = height;
+        mFrameRate = frameRate;
+        mOut = new FileOutputStream(file);
+        mChannel = mOut.getChannel();
+        try {
+            writeHeaders();
+        } catch (IOException e) {
+            mOut.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Set frame rate, e.g. measured from the capture times of the frames
+     * @param frameRate Frames per second written on close
+     */
+    public void setFrameRate(double frameRate) {
+        mFrameRate = frameRate;
+    }
+
+    /**
+     * Acquire number of frames
+     * @return Number of frames appended
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Append a frame
+     * @param jpeg JPEG image
+     * @param length Length of the image in bytes
+     * @throws IOException If the frame cannot be written
+     */
+    public void addFrame(byte[] jpeg, int length) throws IOException {
+        if (mFrameCount == mOffsets.length) {
+            int[] offsets = new int[mOffsets.length * 2];
+            int[] sizes = new int[mSizes.length * 2];
+            System.arraycopy(mOffsets, 0, offsets, 0, mFrameCount);
+            System.arraycopy(mSizes, 0, sizes, 0, mFrameCount);
+            mOffsets = offsets;
+            mSizes = sizes;
+        }
+        // index offsets are relative to the movi fourcc
+        mOffsets[mFrameCount] = (int) (mPosition - MOVI_OFFSET);
+        mSizes[mFrameCount] = length;
+        mFrameCount++;
+        mMaxFrameSize = Math.max(mMaxFrameSize, length);
+
+        mChunkHeader.clear();
+        mChunkHeader.put((byte) '0').put((byte) '0').put((byte) 'd').put((byte) 'c').putInt(length);
+        mOut.write(mChunkHeader.array(), 0, 8);
+        mOut.write(jpeg, 0, length);
+        mPosition += 8 + length;
+        if ((length & 1) != 0) {
+            // chunks are aligned to 16 bits
+            mOut.write(mPadding, 0, 1);
+            mPosition++;
+        }
+    }
+
+    /**
+     * Write the index and the final header fields, sync and close the file
+     * @throws IOException If the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long moviEnd = mPosition;
+            ByteBuffer index = ByteBuffer.allocate(8 + 16 * mFrameCount).order(ByteOrder.LITTLE_ENDIAN);
+            putFourCc(index, "idx1");
+            index.putInt(16 * mFrameCount);
+            for (int i = 0; i < mFrameCount; i++) {
+                putFourCc(index, "00dc");
+                index.putInt(AVIIF_KEYFRAME);
+                index.putInt(mOffsets[i]);
+                index.putInt(mSizes[i]);
+            }
+            index.flip();
+            writeFully(index);
+            mPosition += 8 + 16 * mFrameCount;
+
+            int scale = RATE_SCALE;
+            int rate = (int) Math.round(mFrameRate * RATE_SCALE);
+            int microSecPerFrame = mFrameRate > 0 ? (int) Math.round(1e6 / mFrameRate) : 0;
+            int maxBytesPerSec = (int) Math.min(Integer.MAX_VALUE, (long) ((mMaxFrameSize + 8) * Math.ceil(mFrameRate)));
+
+            patch(RIFF_SIZE_OFFSET, (int) (mPosition - 8));
+            patch(AVIH_OFFSET, microSecPerFrame);
+            patch(AVIH_OFFSET + 4, maxBytesPerSec);
+            patch(AVIH_OFFSET + 16, mFrameCount);
+            patch(AVIH_OFFSET + 28, mMaxFrameSize);
+            patch(STRH_OFFSET + 20, scale);
+            patch(STRH_OFFSET + 24, rate);
+            patch(STRH_OFFSET + 32, mFrameCount);
+            patch(STRH_OFFSET + 36, mMaxFrameSize);
+            patch(MOVI_SIZE_OFFSET, (int) (moviEnd - MOVI_OFFSET));
+            mOut.getFD().sync();
+        } finally {
+            mOut.close();
+        }
+    }
+
+    private void writeHeaders() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        putFourCc(header, "RIFF");
+        header.putInt(0);
+        putFourCc(header, "AVI ");
+
+        putFourCc(header, "LIST");
+        header.putInt(192);
+        putFourCc(header, "hdrl");
+        putFourCc(header, "avih");
+        header.putInt(56);
+        header.putInt(0);                       // microseconds per frame
+        header.putInt(0);                       // max bytes per second
+        header.putInt(0);                       // padding granularity
+        header.putInt(AVIF_HASINDEX);
+        header.putInt(0);                       // total frames
+        header.putInt(0);                       // initial frames
+        header.putInt(1);                       // streams
+        header.putInt(0);                       // suggested buffer size
+        header.putInt(mWidth);
+        header.putInt(mHeight);
+        header.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        putFourCc(header, "LIST");
+        header.putInt(116);
+        putFourCc(header, "strl");
+        putFourCc(header, "strh");
+        header.putInt(56);
+        putFourCc(header, "vids");
+        putFourCc(header, "MJPG");
+        header.putInt(0);                       // flags
+        header.putShort((short) 0);             // priority
+        header.putShort((short) 0);             // language
+        header.putInt(0);                       // initial frames
+        header.putInt(RATE_SCALE);
+        header.putInt((int) Math.round(mFrameRate * RATE_SCALE));
+        header.putInt(0);                       // start
+        header.putInt(0);                       // length
+        header.putInt(0);                       // suggested buffer size
+        header.putInt(-1);                      // quality
+        header.putInt(0);                       // sample size
+        header.putShort((short) 0).putShort((short) 0).putShort((short) mWidth).putShort((short) mHeight);
+        putFourCc(header, "strf");
+        header.putInt(40);
+        header.putInt(40);                      // BITMAPINFOHEADER size
+        header.putInt(mWidth);
+        header.putInt(mHeight);
+        header.putShort((short) 1);             // planes
+        header.putShort((short) 24);            // bit count
+        putFourCc(header, "MJPG");
+        header.putInt(mWidth * mHeight * 3);
+        header.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        putFourCc(header, "LIST");
+        header.putInt(0);
+        putFourCc(header, "movi");
+
+        header.flip();
+        writeFully(header);
+        mPosition = HEADER_SIZE;
+    }
+
+    private void patch(int offset, int value) throws IOException {
+        mChunkHeader.clear();
+        mChunkHeader.putInt(value);
+        mChunkHeader.flip();
+        writeFully(mChunkHeader, offset);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            mChannel.write(buffer);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += mChannel.write(buffer, position);
+        }
+    }
+
+    private static void putFourCc(ByteBuffer buffer, String fourCc) {
+        for (int i = 0; i < 4; i++) {
+            buffer.put((byte) fourCc.charAt(i));
+        }
+    }
+}
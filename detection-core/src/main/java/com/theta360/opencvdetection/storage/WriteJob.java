@@ -0,0 +1,42 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Content of a file written by an {@link AsyncFileWriter}
+ *
+ * The producer stages the content in the job, typically a pooled copy of a frame, before
+ * submitting it; the expensive part, e.g. the encoding, runs in {@link #write(OutputStream)}
+ * on a writer thread.
+ */
+public interface WriteJob {
+
+    /**
+     * Write the content, called on a writer thread
+     * @param out Stream of the file
+     * @throws IOException If the content cannot be written
+     */
+    void write(OutputStream out) throws IOException;
+
+    /**
+     * Give the job back to its pool, called on a writer thread after writing or on failure
+     */
+    void recycle();
+}
@@ -0,0 +1,392 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.synthetic;
+
+import com.theta360.opencvdetection.detection.RectBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of NV21 frames with moving objects and their ground-truth boxes
+ *
+ * The background is a static texture computed once, over which every frame adds sensor noise
+ * and a global illumination drift. The objects are solid coloured rectangles moving at constant
+ * speed; they wrap around the left and right edges like an equirectangular frame, so an object
+ * crossing the seam is split in two, and they bounce off the top and bottom. Its ground-truth box
+ * then extends past the right edge, the convention of the detectors.
+ *
+ * Noise comes from a precomputed table read at a random offset, and clamping from a lookup
+ * table, so a 640x320 frame takes well under a millisecond.
+ */
+public class SyntheticFrameGenerator {
+
+    /**
+     * Static texture of the background
+     */
+    public enum Texture {
+        /** One gray level */
+        FLAT,
+        /** Horizontal gradient */
+        GRADIENT,
+        /** Checkerboard of 16 x 16 pixel cells */
+        CHECKERBOARD,
+        /** Random gray level per pixel, the same in every frame */
+        RANDOM
+    }
+
+    /** Largest noise and drift amplitude in gray levels */
+    public static final int MAX_AMPLITUDE = 127;
+
+    private static final int NOISE_OFFSETS = 4099;
+    private static final int CLAMP_OFFSET = 2 * MAX_AMPLITUDE;
+    private static final byte[] CLAMP = new byte[255 + 4 * MAX_AMPLITUDE + 1];
+
+    static {
+        for (int i = 0; i < CLAMP.length; i++) {
+            CLAMP[i] = (byte) Math.max(0, Math.min(255, i - CLAMP_OFFSET));
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mLumaSize;
+    private final int mFrameSize;
+    private final Random mRandom;
+    private final byte[] mBackground;
+    private final List<MovingObject> mObjects = new ArrayList<>();
+    private byte[] mNoise;
+    private int mNoiseAmplitude;
+    private int mDriftAmplitude;
+    private int mDriftPeriod = 1;
+    private byte[] mScratch;
+    private long mFrameIndex;
+
+    /**
+     * Constructor, with a flat background, no noise and no objects
+     *
+     * @param width Frame width
+     * @param height Frame height
+     * @param seed Seed of the random numbers; the same seed and settings give the same frames
+     */
+    public SyntheticFrameGenerator(int width, int height, long seed) {
+        mWidth = width;
+        mHeight = height;
+        mLumaSize = width * height;
+        mFrameSize = width * height * 3 / 2;
+        mRandom = new Random(seed);
+        mBackground = new byte[mFrameSize];
+        setBackground(Texture.FLAT, 96, 0);
+    }
+
+    /**
+     * Set the background
+     * @param texture Texture
+     * @param level Mean gray level
+     * @param contrast Difference between the darkest and the brightest gray level of the texture
+     */
+    public void setBackground(Texture texture, int level, int contrast) {
+        for (int y = 0; y < mHeight; y++) {
+            for (int x = 0; x < mWidth; x++) {
+                int value;
+                switch (texture) {
+                    case GRADIENT:
+                        value = level - contrast / 2 + contrast * x / mWidth;
+                        break;
+                    case CHECKERBOARD:
+                        value = level + ((((x >> 4) + (y >> 4)) & 1) == 0 ? -contrast / 2 : contrast / 2);
+                        break;
+                    case RANDOM:
+                        value = level - contrast / 2 + (contrast > 0 ? mRandom.nextInt(contrast + 1) : 0);
+                        break;
+                    default:
+                        value = level;
+                        break;
+                }
+                mBackground[y * mWidth + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+        for (int i = mLumaSize; i < mFrameSize; i++) {
+            mBackground[i] = (byte) 128;
+        }
+    }
+
+    /**
+     * Set the sensor noise, uniform and independent per pixel and frame
+     * @param amplitude Largest difference from the background in gray levels, 0 for none
+     */
+    public void setNoise(int amplitude) {
+        checkAmplitude(amplitude);
+        mNoiseAmplitude = amplitude;
+        if (amplitude == 0) {
+            mNoise = null;
+            return;
+        }
+        mNoise = new byte[mLumaSize + NOISE_OFFSETS];
+        for (int i = 0; i < mNoise.length; i++) {
+            mNoise[i] = (byte) (mRandom.nextInt(2 * amplitude + 1) - amplitude);
+        }
+    }
+
+    /**
+     * Set the illumination drift, a sinusoidal change of the brightness of the whole frame
+     * @param amplitude Largest change in gray levels, 0 for none
+     * @param period Period in frames
+     */
+    public void setIlluminationDrift(int amplitude, int period) {
+        checkAmplitude(amplitude);
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        mDriftAmplitude = amplitude;
+        mDriftPeriod = period;
+    }
+
+    /**
+     * Add a moving object
+     * @param x Left of the object in the first frame
+     * @param y Top of the object in the first frame
+     * @param width Width of the object, less than the frame width
+     * @param height Height of the object, less than the frame height
+     * @param speedX Horizontal speed in pixels per frame
+     * @param speedY Vertical speed in pixels per frame
+     * @param luma Gray level of the object
+     * @return Index of the object
+     */
+    public int addObject(int x, int y, int width, int height, float speedX, float speedY, int luma) {
+        if (width <= 0 || width >= mWidth || height <= 0 || height >= mHeight) {
+            throw new IllegalArgumentException("object of " + width + "x" + height + " does not fit");
+        }
+        MovingObject object = new MovingObject();
+        object.x = Math.floorMod(x, mWidth);
+        object.y = Math.max(0, Math.min(mHeight - height, y));
+        object.width = width;
+        object.height = height;
+        object.speedX = speedX;
+        object.speedY = speedY;
+        object.luma = (byte) luma;
+        // a colour per object, so that the chroma plane moves too
+        object.v = (byte) (64 + mRandom.nextInt(128));
+        object.u = (byte) (64 + mRandom.nextInt(128));
+        mObjects.add(object);
+        return mObjects.size() - 1;
+    }
+
+    /**
+     * Add an object that straddles the seam of the frame in the first frame
+     * @param y Top of the object
+     * @param width Width of the object
+     * @param height Height of the object
+     * @param speedX Horizontal speed in pixels per frame
+     * @param luma Gray level of the object
+     * @return Index of the object
+     */
+    public int addSeamCrossingObject(int y, int width, int height, float speedX, int luma) {
+        return addObject(mWidth - width / 2, y, width, height, speedX, 0, luma);
+    }
+
+    /**
+     * Add objects at random positions, with random sizes, speeds and gray levels
+     * @param count Number of objects
+     * @param minSize Smallest width and height
+     * @param maxSize Largest width and height
+     * @param maxSpeed Largest speed along each axis in pixels per frame
+     */
+    public void addRandomObjects(int count, int minSize, int maxSize, float maxSpeed) {
+        for (int i = 0; i < count; i++) {
+            int width = minSize + mRandom.nextInt(maxSize - minSize + 1);
+            int height = minSize + mRandom.nextInt(maxSize - minSize + 1);
+            float speedX = (mRandom.nextFloat() * 2 - 1) * maxSpeed;
+            float speedY = (mRandom.nextFloat() * 2 - 1) * maxSpeed;
+            // bright or dark, always far from the mean of the background
+            int luma = mRandom.nextBoolean() ? 200 + mRandom.nextInt(56) : mRandom.nextInt(40);
+            addObject(mRandom.nextInt(mWidth), mRandom.nextInt(mHeight - height), width, height,
+                    speedX, speedY, luma);
+        }
+    }
+
+    /**
+     * Remove all objects
+     */
+    public void clearObjects() {
+        mObjects.clear();
+    }
+
+    /**
+     * Acquire number of objects
+     * @return Number of moving objects
+     */
+    public int getObjectCount() {
+        return mObjects.size();
+    }
+
+    /**
+     * Acquire frame width
+     * @return Width of the frames in pixels
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Acquire frame height
+     * @return Height of the frames in pixels
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Acquire frame size
+     * @return Size of an NV21 frame in bytes
+     */
+    public int getFrameSize() {
+        return mFrameSize;
+    }
+
+    /**
+     * Acquire number of generated frames
+     * @return Index of the next frame
+     */
+    public long getFrameIndex() {
+        return mFrameIndex;
+    }
+
+    /**
+     * Generate the next frame
+     * @param frame Destination of at least {@link #getFrameSize()} bytes
+     * @param truth Destination of the boxes of the objects in this frame, cleared first; may be null
+     */
+    public void next(byte[] frame, RectBuffer truth) {
+        drawBackground(frame);
+        if (truth != null) {
+            truth.clear();
+        }
+        for (MovingObject object : mObjects) {
+            int x = (int) object.x;
+            int y = (int) object.y;
+            drawObject(frame, object, x, y);
+            if (truth != null) {
+                truth.add(x, y, object.width, object.height);
+            }
+            object.move(mWidth, mHeight);
+        }
+        mFrameIndex++;
+    }
+
+    /**
+     * Generate the next frame into a buffer, e.g. a direct buffer of a frame source
+     * @param frame Destination, filled from its position
+     * @param truth Destination of the boxes of the objects in this frame, cleared first; may be null
+     */
+    public void next(ByteBuffer frame, RectBuffer truth) {
+        if (mScratch == null) {
+            mScratch = new byte[mFrameSize];
+        }
+        next(mScratch, truth);
+        frame.put(mScratch, 0, mFrameSize);
+    }
+
+    private void drawBackground(byte[] frame) {
+        int drift = 0;
+        if (mDriftAmplitude != 0) {
+            drift = (int) Math.round(mDriftAmplitude * Math.sin(2 * Math.PI * mFrameIndex / mDriftPeriod));
+        }
+        if (mNoise == null && drift == 0) {
+            System.arraycopy(mBackground, 0, frame, 0, mFrameSize);
+            return;
+        }
+
+        byte[] background = mBackground;
+        int offset = CLAMP_OFFSET + drift;
+        if (mNoise == null) {
+            for (int i = 0; i < mLumaSize; i++) {
+                frame[i] = CLAMP[(background[i] & 0xFF) + offset];
+            }
+        } else {
+            byte[] noise = mNoise;
+            int start = mRandom.nextInt(NOISE_OFFSETS);
+            for (int i = 0; i < mLumaSize; i++) {
+                frame[i] = CLAMP[(background[i] & 0xFF) + noise[start + i] + offset];
+            }
+        }
+        System.arraycopy(background, mLumaSize, frame, mLumaSize, mFrameSize - mLumaSize);
+    }
+
+    private void drawObject(byte[] frame, MovingObject object, int x, int y) {
+        // the part right of the seam continues at the left edge
+        int right = x + object.width;
+        drawRect(frame, object, x, Math.min(right, mWidth), y);
+        if (right > mWidth) {
+            drawRect(frame, object, 0, right - mWidth, y);
+        }
+    }
+
+    private void drawRect(byte[] frame, MovingObject object, int left, int right, int top) {
+        int bottom = top + object.height;
+        for (int row = top; row < bottom; row++) {
+            int start = row * mWidth;
+            Arrays.fill(frame, start + left, start + right, object.luma);
+        }
+        // one V/U pair per 2 x 2 block, for the blocks the object covers at least partly
+        for (int row = top >> 1; row < (bottom + 1) >> 1; row++) {
+            int start = mLumaSize + row * mWidth;
+            for (int col = left & ~1; col < right; col += 2) {
+                frame[start + col] = object.v;
+                frame[start + col + 1] = object.u;
+            }
+        }
+    }
+
+    private static void checkAmplitude(int amplitude) {
+        if (amplitude < 0 || amplitude > MAX_AMPLITUDE) {
+            throw new IllegalArgumentException("amplitude must be between 0 and " + MAX_AMPLITUDE + ": " + amplitude);
+        }
+    }
+
+    private static class MovingObject {
+        float x;
+        float y;
+        int width;
+        int height;
+        float speedX;
+        float speedY;
+        byte luma;
+        byte v;
+        byte u;
+
+        void move(int frameWidth, int frameHeight) {
+            x += speedX;
+            if (x >= frameWidth) {
+                x -= frameWidth;
+            } else if (x < 0) {
+                x += frameWidth;
+            }
+            y += speedY;
+            if (y < 0) {
+                y = -y;
+                speedY = -speedY;
+            } else if (y > frameHeight - height) {
+                y = 2 * (frameHeight - height) - y;
+                speedY = -speedY;
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.theta360.opencvdetection.synthetic;
+
+import com.theta360.opencvdetection.detection.RectBuffer;
+import com.theta360.opencvdetection.frame.FrameBuffer;
+import com.theta360.opencvdetection.frame.FrameBufferPool;
+import com.theta360.opencvdetection.frame.FrameSource;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Frame source delivering the frames of a {@link SyntheticFrameGenerator}
+ *
+ * The frames are generated on a dedicated thread into direct buffers, either at a fixed frame
+ * rate or as fast as the listener consumes them. The ground-truth boxes of a frame are kept with
+ * its buffer and can be read by the listener until it releases the buffer.
+ */
+public class SyntheticFrameSource implements FrameSource {
+
+    private static final long BUFFER_WAIT_MILLIS = 100;
+
+    private final SyntheticFrameGenerator mGenerator;
+    private int mBufferCount = 3;
+    private double mFrameRate = 0;
+    private long mFrameLimit = 0;
+
+    private FrameBufferPool mBufferPool;
+    private RectBuffer[] mTruth;
+    private Thread mThread;
+    private volatile boolean mStopThread;
+    private volatile long mDeliveredFrameCount;
+
+    /**
+     * Constructor
+     *
+     * @param generator Generator of the frames, used only by the thread of this source
+     */
+    public SyntheticFrameSource(SyntheticFrameGenerator generator) {
+        mGenerator = generator;
+    }
+
+    /**
+     * Set number of frame buffers
+     * @param bufferCount Number of frames that can be in flight at the same time
+     */
+    public void setBufferCount(int bufferCount) {
+        mBufferCount = bufferCount;
+    }
+
+    /**
+     * Set delivery rate
+     * @param frameRate Frames per second, or 0 to deliver without waiting
+     */
+    public void setFrameRate(double frameRate) {
+        mFrameRate = frameRate;
+    }
+
+    /**
+     * Set number of frames to deliver
+     * @param frameLimit Number of frames after which the delivery stops, or 0 for no limit
+     */
+    public void setFrameLimit(long frameLimit) {
+        mFrameLimit = frameLimit;
+    }
+
+    /**
+     * Acquire number of delivered frames
+     * @return Number of frames delivered since start
+     */
+    public long getDeliveredFrameCount() {
+        return mDeliveredFrameCount;
+    }
+
+    /**
+     * Acquire the ground truth of a delivered frame
+     * @param frame Buffer of the frame, not yet released by the listener
+     * @param truth Destination of the boxes of the objects in the frame
+     */
+    public void getGroundTruth(FrameBuffer frame, RectBuffer truth) {
+        truth.copyFrom(mTruth[frame.getIndex()]);
+    }
+
+    @Override
+    public boolean open() {
+        // direct buffers: the consumer wraps them in a Mat, so each frame is written only once
+        mBufferPool = new FrameBufferPool(mBufferCount, mGenerator.getFrameSize(), true);
+        mTruth = new RectBuffer[mBufferCount];
+        for (int i = 0; i < mBufferCount; i++) {
+            mTruth[i] = new RectBuffer(Math.max(mGenerator.getObjectCount(), 1));
+        }
+        return true;
+    }
+
+    @Override
+    public int getFrameWidth() {
+        return mGenerator.getWidth();
+    }
+
+    @Override
+    public int getFrameHeight() {
+        return mGenerator.getHeight();
+    }
+
+    @Override
+    public FrameBufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    @Override
+    public void start(final FrameListener listener) {
+        mStopThread = false;
+        mDeliveredFrameCount = 0;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                generate(listener);
+            }
+        }, "SyntheticFrameSource");
+        mThread.start();
+    }
+
+    @Override
+    public void close() {
+        mStopThread = true;
+        if (mThread != null) {
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mThread = null;
+        }
+    }
+
+    private void generate(FrameListener listener) {
+        long period = mFrameRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / mFrameRate) : 0;
+        long nextTime = System.nanoTime();
+
+        while (!mStopThread && (mFrameLimit == 0 || mDeliveredFrameCount < mFrameLimit)) {
+            FrameBuffer frame;
+            try {
+                frame = mBufferPool.acquire(BUFFER_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) {
+                continue;
+            }
+
+            ByteBuffer data = frame.getDirectData();
+            data.clear();
+            mGenerator.next(data, mTruth[frame.getIndex()]);
+            frame.setTimestamp(System.nanoTime());
+            mBufferPool.handOver(frame);
+            listener.onFrame(frame);
+            mDeliveredFrameCount++;
+
+            if (period > 0) {
+                nextTime += period;
+                long wait = nextTime - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else {
+                    // fell behind; do not try to catch up with a burst
+                    nextTime = System.nanoTime();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.theta360.opencvdetection.detection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Desktop benchmark of the pure Java background models
+ *
+ * Run with the test classpath:
+ * <pre>
+ * java ... BackgroundModelBenchmark [frames.nv21 [width height]]
+ * </pre>
+ * The file holds concatenated NV21 frames, the format of the replay file. Without a file,
+ * synthetic frames with a moving square are used.
+ */
+public class BackgroundModelBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int width = args.length >= 3 ? Integer.parseInt(args[1]) : 640;
+        int height = args.length >= 3 ? Integer.parseInt(args[2]) : 320;
+        byte[][] frames = args.length >= 1 ? load(new File(args[0]), width, height) : synthesize(width, height);
+        System.out.println(frames.length + " frames of " + width + "x" + height);
+
+        run("running average", new RunningAverageBackgroundModel(width, height, 0.02f, 24f), frames);
+        run("gaussian", new GaussianBackgroundModel(width, height, 0.02f, 3f), frames);
+    }
+
+    private static void run(String name, BackgroundModel model, byte[][] frames) {
+        byte[] foreground = new byte[frames[0].length];
+        long best = Long.MAX_VALUE;
+        int centerHits = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            model.reset();
+            centerHits = 0;
+            long start = System.nanoTime();
+            for (byte[] frame : frames) {
+                model.apply(frame, foreground);
+                centerHits += foreground[foreground.length / 2] != 0 ? 1 : 0;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        // the hits keep the result alive and show that the models agree roughly
+        System.out.println(String.format("%s: %.3f ms/frame, center foreground in %d frames", name,
+                best / 1e6 / frames.length, centerHits));
+    }
+
+    private static byte[][] load(File file, int width, int height) throws IOException {
+        int frameSize = width * height * 3 / 2;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[][] frames = new byte[(int) (channel.size() / frameSize)][width * height];
+            for (int i = 0; i < frames.length; i++) {
+                buffer.position(i * frameSize);
+                buffer.get(frames[i]);
+            }
+            return frames;
+        }
+    }
+
+    private static byte[][] synthesize(int width, int height) {
+        Random random = new Random(0);
+        byte[][] frames = new byte[300][width * height];
+        for (int i = 0; i < frames.length; i++) {
+            byte[] frame = frames[i];
+            for (int p = 0; p < frame.length; p++) {
+                frame[p] = (byte) (80 + random.nextInt(5));
+            }
+            int x = (i * 4) % (width - 40);
+            for (int row = height / 2 - 20; row < height / 2 + 20; row++) {
+                for (int col = x; col < x + 40; col++) {
+                    frame[row * width + col] = (byte) 200;
+                }
+            }
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,94 @@
+package com.theta360.opencvdetection.detection;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the pure Java background models
+ */
+public class BackgroundModelTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+
+    @Test
+    public void runningAverage_detectsObjectOnly() throws Exception {
+        checkDetectsObjectOnly(new RunningAverageBackgroundModel(WIDTH, HEIGHT, 0.05f, 24f));
+    }
+
+    @Test
+    public void gaussian_detectsObjectOnly() throws Exception {
+        checkDetectsObjectOnly(new GaussianBackgroundModel(WIDTH, HEIGHT, 0.05f, 3f));
+    }
+
+    @Test
+    public void gaussian_absorbsStoppedObject() throws Exception {
+        BackgroundModel model = new GaussianBackgroundModel(WIDTH, HEIGHT, 0.1f, 3f);
+        byte[] frame = noisyFrame(new Random(1), 80);
+        byte[] foreground = new byte[WIDTH * HEIGHT];
+        model.apply(frame, foreground);
+        fillRect(frame, 10, 10, 8, 8, 200);
+        for (int i = 0; i < 200; i++) {
+            model.apply(frame, foreground);
+        }
+        assertEquals(0, count(foreground));
+    }
+
+    @Test
+    public void reset_takesNextFrameAsBackground() throws Exception {
+        BackgroundModel model = new RunningAverageBackgroundModel(WIDTH, HEIGHT, 0.05f, 24f);
+        byte[] foreground = new byte[WIDTH * HEIGHT];
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        model.apply(frame, foreground);
+        Arrays.fill(frame, (byte) 200);
+        model.apply(frame, foreground);
+        assertEquals(WIDTH * HEIGHT, count(foreground));
+
+        model.reset();
+        model.apply(frame, foreground);
+        assertEquals(0, count(foreground));
+    }
+
+    private void checkDetectsObjectOnly(BackgroundModel model) {
+        Random random = new Random(0);
+        byte[] foreground = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < 50; i++) {
+            model.apply(noisyFrame(random, 80), foreground);
+        }
+
+        byte[] frame = noisyFrame(random, 80);
+        fillRect(frame, 20, 8, 10, 6, 200);
+        model.apply(frame, foreground);
+
+        assertEquals(10 * 6, count(foreground));
+        assertEquals((byte) 255, foreground[10 * WIDTH + 25]);
+    }
+
+    private static byte[] noisyFrame(Random random, int level) {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) (level + random.nextInt(5) - 2);
+        }
+        return frame;
+    }
+
+    private static void fillRect(byte[] frame, int x, int y, int width, int height, int value) {
+        for (int row = y; row < y + height; row++) {
+            Arrays.fill(frame, row * WIDTH + x, row * WIDTH + x + width, (byte) value);
+        }
+    }
+
+    private static int count(byte[] foreground) {
+        int count = 0;
+        for (byte b : foreground) {
+            if (b != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
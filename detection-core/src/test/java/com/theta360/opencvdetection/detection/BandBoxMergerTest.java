@@ -0,0 +1,79 @@
+package com.theta360.opencvdetection.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of BandBoxMerger, with the boxes band detectors report for objects across
+ * the boundary of two bands at row 32
+ */
+public class BandBoxMergerTest {
+
+    private final BandBoxMerger mMerger = new BandBoxMerger();
+    private final RectBuffer mMerged = new RectBuffer(4);
+
+    @Test
+    public void uShape_isOneBox() throws Exception {
+        // the two arms are above the boundary, the bar joining them below it
+        RectBuffer upper = rects(100, 10, 10, 26, 140, 10, 10, 26);
+        RectBuffer lower = rects(100, 30, 50, 10);
+        assertEquals(1, mMerger.merge(new RectBuffer[]{upper, lower}, mMerged));
+        assertBox(0, 100, 10, 50, 30);
+    }
+
+    @Test
+    public void invertedVShape_isOneBox() throws Exception {
+        // the apex is above the boundary, the two legs below it
+        RectBuffer upper = rects(120, 10, 20, 26);
+        RectBuffer lower = rects(100, 30, 24, 20, 136, 30, 24, 20);
+        assertEquals(1, mMerger.merge(new RectBuffer[]{upper, lower}, mMerged));
+        assertBox(0, 100, 10, 60, 40);
+    }
+
+    @Test
+    public void objectAcrossThreeBands_isOneBox() throws Exception {
+        RectBuffer top = rects(10, 20, 10, 14);
+        RectBuffer middle = rects(10, 30, 10, 36);
+        RectBuffer bottom = rects(12, 62, 6, 10);
+        assertEquals(1, mMerger.merge(new RectBuffer[]{top, middle, bottom}, mMerged));
+        assertBox(0, 10, 20, 10, 52);
+    }
+
+    @Test
+    public void separateObjects_stayApart() throws Exception {
+        // side by side in the upper band, and one only in the lower band
+        RectBuffer upper = rects(10, 10, 10, 10, 40, 10, 10, 10);
+        RectBuffer lower = rects(200, 40, 10, 10);
+        assertEquals(3, mMerger.merge(new RectBuffer[]{upper, lower}, mMerged));
+        assertBox(0, 10, 10, 10, 10);
+        assertBox(1, 40, 10, 10, 10);
+        assertBox(2, 200, 40, 10, 10);
+    }
+
+    @Test
+    public void manyBoxes_growArrays() throws Exception {
+        RectBuffer upper = new RectBuffer(1);
+        RectBuffer lower = new RectBuffer(1);
+        for (int i = 0; i < 2 * DetectionConstants.MAX_MOVING_AREA_COUNT; i++) {
+            upper.add(i * 4, 0, 2, 2);
+            lower.add(i * 4, 40, 2, 2);
+        }
+        assertEquals(upper.size() + lower.size(), mMerger.merge(new RectBuffer[]{upper, lower}, mMerged));
+    }
+
+    private void assertBox(int index, int x, int y, int width, int height) {
+        assertEquals(x, mMerged.getX(index));
+        assertEquals(y, mMerged.getY(index));
+        assertEquals(width, mMerged.getWidth(index));
+        assertEquals(height, mMerged.getHeight(index));
+    }
+
+    private static RectBuffer rects(int... values) {
+        RectBuffer rects = new RectBuffer(values.length / 4);
+        for (int i = 0; i < values.length; i += 4) {
+            rects.add(values[i], values[i + 1], values[i + 2], values[i + 3]);
+        }
+        return rects;
+    }
+}
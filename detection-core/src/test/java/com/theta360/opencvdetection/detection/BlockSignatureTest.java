@@ -0,0 +1,44 @@
+package com.theta360.opencvdetection.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of BlockSignature
+ */
+public class BlockSignatureTest {
+
+    @Test
+    public void set_givesBlockMeansRowByRow() throws Exception {
+        BlockSignature signature = new BlockSignature(3, 2);
+        signature.set(new byte[] {0, 1, 2, 3, 4, (byte) 255});
+
+        assertEquals(0f, signature.getMean(0, 0), 1e-6);
+        assertEquals(2f, signature.getMean(2, 0), 1e-6);
+        assertEquals(3f, signature.getMean(0, 1), 1e-6);
+        assertEquals(255f, signature.getMean(2, 1), 1e-6);
+    }
+
+    @Test
+    public void maxDifference_isLargestBlockDifference() throws Exception {
+        BlockSignature first = new BlockSignature(2, 2);
+        first.set(new byte[] {10, 20, 30, 40});
+        BlockSignature second = new BlockSignature(2, 2);
+        second.set(new byte[] {12, 15, 30, 41});
+
+        assertEquals(5f, first.maxDifference(second), 1e-6);
+        assertEquals(5f, second.maxDifference(first), 1e-6);
+    }
+
+    @Test
+    public void copyFrom_givesSameMeans() throws Exception {
+        BlockSignature source = new BlockSignature(2, 1);
+        source.set(new byte[] {7, (byte) 200});
+        BlockSignature copy = new BlockSignature(2, 1);
+        copy.copyFrom(source);
+
+        assertEquals(0f, copy.maxDifference(source), 1e-6);
+        assertEquals(200f, copy.getMean(1, 0), 1e-6);
+    }
+}
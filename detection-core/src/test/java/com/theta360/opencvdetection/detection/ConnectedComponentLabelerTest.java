@@ -0,0 +1,173 @@
+package com.theta360.opencvdetection.detection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of ConnectedComponentLabeler
+ */
+public class ConnectedComponentLabelerTest {
+
+    private static final int WIDTH = 12;
+    private static final int HEIGHT = 8;
+
+    private ConnectedComponentLabeler mLabeler;
+    private BlobBuffer mBlobs;
+
+    @Before
+    public void setUp() throws Exception {
+        mLabeler = new ConnectedComponentLabeler(WIDTH, HEIGHT);
+        mBlobs = new BlobBuffer(4);
+    }
+
+    @Test
+    public void emptyMask_hasNoBlob() throws Exception {
+        assertEquals(0, mLabeler.label(new byte[WIDTH * HEIGHT], mBlobs));
+    }
+
+    @Test
+    public void separateRectangles_areSeparateBlobs() throws Exception {
+        byte[] mask = mask(
+                "XX..........",
+                "XX......XXX.",
+                "........XXX.",
+                "............",
+                "...X........",
+                "............",
+                "............",
+                "...........X");
+        assertEquals(4, mLabeler.label(mask, mBlobs));
+
+        assertBlob(0, 0, 0, 2, 2, 4);
+        assertBlob(1, 8, 1, 3, 2, 6);
+        assertBlob(2, 3, 4, 1, 1, 1);
+        assertBlob(3, 11, 7, 1, 1, 1);
+        assertEquals(9f, mBlobs.getCentroidX(1), 1e-6);
+        assertEquals(1.5f, mBlobs.getCentroidY(1), 1e-6);
+    }
+
+    @Test
+    public void diagonalNeighbors_areConnected() throws Exception {
+        byte[] mask = mask(
+                "X...........",
+                ".X..........",
+                "..X.........",
+                "...X.....X..",
+                "........X...",
+                ".......X....",
+                "............",
+                "............");
+        assertEquals(2, mLabeler.label(mask, mBlobs));
+        assertBlob(0, 0, 0, 4, 4, 4);
+        assertBlob(1, 7, 3, 3, 3, 3);
+    }
+
+    @Test
+    public void branchesJoinedLater_areMerged() throws Exception {
+        // the arms get different labels until the bottom row joins them
+        byte[] mask = mask(
+                "X.X.X.X.....",
+                "X.X.X.X.....",
+                "X.X.X.X.....",
+                "XXXXXXX.....",
+                "............",
+                "..........XX",
+                ".........XX.",
+                "X.......XX..");
+        assertEquals(3, mLabeler.label(mask, mBlobs));
+        assertBlob(0, 0, 0, 7, 4, 19);
+        assertEquals(3f, mBlobs.getCentroidX(0), 1e-6);
+        assertBlob(1, 8, 5, 4, 3, 6);
+        assertBlob(2, 0, 7, 1, 1, 1);
+
+        assertEquals(0, mLabeler.getBlobIndex(6, 0));
+        assertEquals(1, mLabeler.getBlobIndex(8, 7));
+        assertEquals(-1, mLabeler.getBlobIndex(1, 0));
+    }
+
+    @Test
+    public void manyLabels_growTheStorage() throws Exception {
+        ConnectedComponentLabeler labeler = new ConnectedComponentLabeler(1000, 2);
+        byte[] mask = new byte[2000];
+        for (int x = 0; x < 1000; x += 2) {
+            mask[x] = 1;
+        }
+        assertEquals(500, labeler.label(mask, mBlobs));
+        assertEquals(998, mBlobs.getX(499));
+    }
+
+    @Test
+    public void seamCrossingBlob_isWrapped() throws Exception {
+        mLabeler.setWrapAround(true);
+        byte[] mask = mask(
+                "............",
+                "XX.......XXX",
+                "X.........XX",
+                "............",
+                "...........X",
+                "X...........",
+                "............",
+                "...XX.......");
+        assertEquals(3, mLabeler.label(mask, mBlobs));
+        // 9..13 in unwrapped columns
+        assertBlob(0, 9, 1, 5, 2, 8);
+        assertEquals(11f, mBlobs.getCentroidX(0), 1e-6);
+        // diagonal across the seam
+        assertBlob(1, 11, 4, 2, 2, 2);
+        assertEquals(0, mLabeler.getBlobIndex(0, 2));
+        assertEquals(1, mLabeler.getBlobIndex(0, 5));
+        assertBlob(2, 3, 7, 2, 1, 2);
+    }
+
+    @Test
+    public void fullWidthBlob_isNotShifted() throws Exception {
+        mLabeler.setWrapAround(true);
+        byte[] mask = mask(
+                "XXXXXXXXXXXX",
+                "............",
+                "............",
+                "............",
+                "............",
+                "............",
+                "............",
+                "............");
+        assertEquals(1, mLabeler.label(mask, mBlobs));
+        assertBlob(0, 0, 0, WIDTH, 1, WIDTH);
+    }
+
+    @Test
+    public void withoutWrapAround_seamBlobsAreSeparate() throws Exception {
+        byte[] mask = mask(
+                "............",
+                "XX.......XXX",
+                "X.........XX",
+                "............",
+                "............",
+                "............",
+                "............",
+                "............");
+        assertEquals(2, mLabeler.label(mask, mBlobs));
+        assertBlob(0, 0, 1, 2, 2, 3);
+        assertBlob(1, 9, 1, 3, 2, 5);
+    }
+
+    private void assertBlob(int index, int x, int y, int width, int height, int pixelCount) {
+        assertEquals(x, mBlobs.getX(index));
+        assertEquals(y, mBlobs.getY(index));
+        assertEquals(width, mBlobs.getWidth(index));
+        assertEquals(height, mBlobs.getHeight(index));
+        assertEquals(pixelCount, mBlobs.getPixelCount(index));
+    }
+
+    private static byte[] mask(String... rows) {
+        byte[] mask = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                mask[y * WIDTH + x] = rows[y].charAt(x) == 'X' ? (byte) 255 : 0;
+            }
+        }
+        return mask;
+    }
+}
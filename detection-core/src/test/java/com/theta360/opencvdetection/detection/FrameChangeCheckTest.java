@@ -0,0 +1,143 @@
+package com.theta360.opencvdetection.detection;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the block signature computed by FrameChangeCheck on a frame of the preview
+ * size with the parameters of DetectionConstants, which needs the host build of the OpenCV
+ * native library
+ */
+public class FrameChangeCheckTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 320;
+    private static final int BLOCKS_X = WIDTH / DetectionConstants.SIGNATURE_BLOCK_SIZE;
+    private static final int BLOCKS_Y = HEIGHT / DetectionConstants.SIGNATURE_BLOCK_SIZE;
+    // the smallest box above THRESHOLD_AREA_SIZE, and the smallest difference the KNN model detects
+    private static final int OBJECT_SIZE = 8;
+    private static final int LOW_CONTRAST = 20;
+
+    private static Mat sGray;
+    private static Mat sBlocks;
+
+    @BeforeClass
+    public static void loadLibrary() {
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("OpenCV native library not found, set -PopencvLibraryPath", e);
+        }
+        sGray = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        sBlocks = new Mat();
+    }
+
+    @AfterClass
+    public static void release() {
+        if (sGray != null) {
+            sGray.release();
+            sBlocks.release();
+        }
+    }
+
+    @Test
+    public void computeSignature_givesBlockMeans() throws Exception {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        // left half 40, right half 200
+        for (int y = 0; y < HEIGHT; y++) {
+            Arrays.fill(luma, y * WIDTH, y * WIDTH + WIDTH / 2, (byte) 40);
+            Arrays.fill(luma, y * WIDTH + WIDTH / 2, (y + 1) * WIDTH, (byte) 200);
+        }
+        BlockSignature signature = signature(luma);
+
+        assertEquals(40f, signature.getMean(0, 0), 1e-6);
+        assertEquals(40f, signature.getMean(BLOCKS_X / 2 - 1, BLOCKS_Y - 1), 1e-6);
+        assertEquals(200f, signature.getMean(BLOCKS_X / 2, 0), 1e-6);
+        assertEquals(200f, signature.getMean(BLOCKS_X - 1, BLOCKS_Y - 1), 1e-6);
+    }
+
+    @Test
+    public void noise_staysBelowThreshold() throws Exception {
+        Random random = new Random(0);
+        for (int i = 0; i < 20; i++) {
+            BlockSignature first = signature(noisyFrame(random));
+            BlockSignature second = signature(noisyFrame(random));
+            assertFalse(first.maxDifference(second) > DetectionConstants.SIGNATURE_THRESHOLD);
+        }
+    }
+
+    @Test
+    public void highContrastSmallObject_exceedsThreshold() throws Exception {
+        Random random = new Random(0);
+        BlockSignature reference = signature(noisyFrame(random));
+        byte[] luma = noisyFrame(random);
+        addObject(luma, HEIGHT / 2 - OBJECT_SIZE / 2, WIDTH / 2 - OBJECT_SIZE / 2, 120);
+        assertTrue(signature(luma).maxDifference(reference) > DetectionConstants.SIGNATURE_THRESHOLD);
+    }
+
+    @Test
+    public void lowContrastSmallObject_exceedsThresholdAtEveryAlignment() throws Exception {
+        Random random = new Random(0);
+        BlockSignature reference = signature(noisyFrame(random));
+        byte[] background = noisyFrame(random);
+        // from aligned with a block to straddling four blocks equally
+        for (int offset = 0; offset < DetectionConstants.SIGNATURE_BLOCK_SIZE; offset++) {
+            byte[] luma = background.clone();
+            addObject(luma, HEIGHT / 2 + offset, WIDTH / 2 + offset, LOW_CONTRAST);
+            assertTrue("offset " + offset,
+                    signature(luma).maxDifference(reference) > DetectionConstants.SIGNATURE_THRESHOLD);
+        }
+    }
+
+    @Test
+    public void check_comparesWithPreviousCheckedFrame() throws Exception {
+        FrameChangeCheck check = new FrameChangeCheck(BLOCKS_X, BLOCKS_Y, DetectionConstants.SIGNATURE_THRESHOLD);
+        Random random = new Random(0);
+        byte[] luma = noisyFrame(random);
+        assertTrue(check.check(gray(luma)));
+        assertFalse(check.check(gray(noisyFrame(random))));
+
+        addObject(luma, 100, 100, LOW_CONTRAST);
+        assertTrue(check.check(gray(luma)));
+        assertFalse(check.check(signature(luma)));
+        check.release();
+    }
+
+    private static Mat gray(byte[] luma) {
+        sGray.put(0, 0, luma);
+        return sGray;
+    }
+
+    private static BlockSignature signature(byte[] luma) {
+        sGray.put(0, 0, luma);
+        return FrameChangeCheck.computeSignature(sGray, sBlocks, new byte[BLOCKS_X * BLOCKS_Y],
+                new Size(BLOCKS_X, BLOCKS_Y), new BlockSignature(BLOCKS_X, BLOCKS_Y));
+    }
+
+    private static byte[] noisyFrame(Random random) {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = (byte) (80 + random.nextInt(9) - 4);
+        }
+        return luma;
+    }
+
+    private static void addObject(byte[] luma, int top, int left, int contrast) {
+        for (int y = top; y < top + OBJECT_SIZE; y++) {
+            for (int x = left; x < left + OBJECT_SIZE; x++) {
+                luma[y * WIDTH + x] = (byte) ((luma[y * WIDTH + x] & 0xFF) + contrast);
+            }
+        }
+    }
+}
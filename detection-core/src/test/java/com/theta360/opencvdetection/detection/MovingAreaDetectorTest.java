@@ -0,0 +1,189 @@
+package com.theta360.opencvdetection.detection;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of MovingAreaDetector on frames of the preview size, which needs the host build
+ * of the OpenCV native library
+ */
+public class MovingAreaDetectorTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 320;
+    private static final int WARM_UP_FRAMES = 30;
+    private static final int RNG_SEED = 0x12345678;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private MovingAreaDetector mDetector;
+    private Mat mBackground;
+    private RectBuffer mRects;
+    private long mMovingFramesAllocation;
+
+    @BeforeClass
+    public static void loadLibrary() {
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("OpenCV native library not found, set -PopencvLibraryPath", e);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mDetector = new MovingAreaDetector(WIDTH, HEIGHT);
+        mBackground = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1, new Scalar(80));
+        mRects = new RectBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            mDetector.detect(mBackground, mRects);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mBackground.release();
+        mDetector.release();
+    }
+
+    @Test
+    public void staticFrame_allocatesNothing() throws Exception {
+        long before = allocatedBytes();
+        int count = 0;
+        for (int i = 0; i < 100; i++) {
+            count += mDetector.detect(mBackground, mRects);
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertEquals(0, count);
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    public void movingFrames_allocateNothingOnceWarm() throws Exception {
+        mDetector.setUseContours(false);
+        assertMovingFramesAllocateNothing();
+    }
+
+    @Test
+    public void movingFramesWithContours_allocateNothingOnceWarm() throws Exception {
+        // findContours fills PackedPoints, so no contour wrapper is allocated either
+        mDetector.setUseContours(true);
+        assertMovingFramesAllocateNothing();
+    }
+
+    @Test
+    public void movingObject_isDetected() throws Exception {
+        Mat frame = mBackground.clone();
+        Imgproc.rectangle(frame, new Point(100, 100), new Point(160, 150), new Scalar(250), -1);
+
+        int count = mDetector.detect(frame, mRects);
+        frame.release();
+
+        assertTrue(count >= 1);
+        assertTrue(mRects.getX(0) >= 90 && mRects.getRight(0) <= 170);
+        assertTrue(mRects.getY(0) >= 90 && mRects.getBottom(0) <= 160);
+    }
+
+    @Test
+    public void excludedArea_isIgnored() throws Exception {
+        DetectionMask detectionMask = new DetectionMask(WIDTH, HEIGHT);
+        detectionMask.excludeBelowPitch(0);
+        MovingAreaDetector detector = new MovingAreaDetector(WIDTH, HEIGHT, detectionMask);
+        detectionMask.release();
+        assertEquals(HEIGHT / 2, detector.getActiveRect().height);
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            detector.detect(mBackground, mRects);
+        }
+
+        Mat frame = mBackground.clone();
+        Imgproc.rectangle(frame, new Point(100, 200), new Point(160, 250), new Scalar(250), -1);
+        Imgproc.rectangle(frame, new Point(300, 50), new Point(360, 100), new Scalar(250), -1);
+        int count = detector.detect(frame, mRects);
+        frame.release();
+        detector.release();
+
+        assertEquals(1, count);
+        assertTrue(mRects.getX(0) >= 290 && mRects.getRight(0) <= 370);
+        assertTrue(mRects.getY(0) >= 40 && mRects.getBottom(0) <= 110);
+    }
+
+    @Test
+    public void pyramidMode_matchesFullResolution() throws Exception {
+        Mat frame = mBackground.clone();
+        Imgproc.rectangle(frame, new Point(101, 103), new Point(163, 150), new Scalar(250), -1);
+        RectBuffer expected = new RectBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+        mDetector.detect(frame, expected);
+        assertEquals(1, expected.size());
+
+        for (int scale : new int[]{2, 4}) {
+            PyramidMovingAreaDetector detector = new PyramidMovingAreaDetector(WIDTH, HEIGHT, scale, null, null);
+            for (int i = 0; i < WARM_UP_FRAMES; i++) {
+                detector.detect(mBackground, mRects);
+            }
+            int count = detector.detect(frame, mRects);
+            detector.release();
+
+            assertEquals(1, count);
+            assertEquals(expected.getX(0), mRects.getX(0));
+            assertEquals(expected.getY(0), mRects.getY(0));
+            assertEquals(expected.getRight(0), mRects.getRight(0));
+            assertEquals(expected.getBottom(0), mRects.getBottom(0));
+        }
+        frame.release();
+    }
+
+    private void assertMovingFramesAllocateNothing() {
+        Mat[] frames = new Mat[2];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = mBackground.clone();
+            int x = 100 + i * 200;
+            Imgproc.rectangle(frames[i], new Point(x, 100), new Point(x + 60, 150), new Scalar(250), -1);
+        }
+        // let the scratch arrays grow to the contour sizes of the whole run, then replay the same run
+        int warmCount = playMovingFrames(frames);
+        int count = playMovingFrames(frames);
+        long allocated = mMovingFramesAllocation;
+        for (Mat frame : frames) {
+            frame.release();
+        }
+
+        assertTrue(count > 0);
+        assertEquals(warmCount, count);
+        assertEquals(0, allocated);
+    }
+
+    private int playMovingFrames(Mat[] frames) {
+        // a restarted model with a seeded RNG gives the same masks, as the KNN subtractor samples with it
+        mDetector.setDetectionMask(null);
+        Core.setRNGSeed(RNG_SEED);
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            mDetector.detect(mBackground, mRects);
+        }
+        long before = allocatedBytes();
+        int count = 0;
+        for (int i = 0; i < 30; i++) {
+            count += mDetector.detect(frames[i % 2], mRects);
+        }
+        mMovingFramesAllocation = allocatedBytes() - before;
+        return count;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,153 @@
+package com.theta360.opencvdetection.detection;
+
+import com.theta360.opencvdetection.metrics.Metrics;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the gate of PreFilteredAreaDetector in front of a scripted detector, which
+ * needs the host build of the OpenCV native library for the block signature
+ */
+public class PreFilteredAreaDetectorTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 320;
+    private static final int BLOCK_SIZE = DetectionConstants.SIGNATURE_BLOCK_SIZE;
+    private static final int REFRESH_INTERVAL = 5;
+    private static final int HOLD_FRAMES = 3;
+
+    private ScriptedDetector mDetector;
+    private PreFilteredAreaDetector mPreFilter;
+    private Mat mGray;
+    private RectBuffer mRects;
+
+    @BeforeClass
+    public static void loadLibrary() {
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("OpenCV native library not found, set -PopencvLibraryPath", e);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mDetector = new ScriptedDetector();
+        mPreFilter = new PreFilteredAreaDetector(mDetector, WIDTH / BLOCK_SIZE, HEIGHT / BLOCK_SIZE,
+                DetectionConstants.SIGNATURE_THRESHOLD, REFRESH_INTERVAL, HOLD_FRAMES);
+        mGray = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1, new Scalar(96));
+        mRects = new RectBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        mPreFilter.release();
+        mGray.release();
+    }
+
+    @Test
+    public void unchangedFrames_areSkippedUntilRefresh() throws Exception {
+        detect();
+        assertEquals(1, mDetector.mRunCount);
+        for (int i = 0; i < REFRESH_INTERVAL; i++) {
+            assertEquals(0, detect());
+        }
+        assertEquals(1, mDetector.mRunCount);
+        // the model is refreshed after REFRESH_INTERVAL skipped frames
+        detect();
+        assertEquals(2, mDetector.mRunCount);
+        assertEquals(5.0 / 7, mPreFilter.getSkipRatio(), 1e-9);
+    }
+
+    @Test
+    public void changedFrame_runsDetector() throws Exception {
+        detect();
+        detect();
+        assertEquals(1, mDetector.mRunCount);
+        // the smallest object FrameChangeCheckTest shows above the threshold
+        Mat object = mGray.submat(new Rect(100, 100, 8, 8));
+        object.setTo(new Scalar(96 + 20));
+        object.release();
+        detect();
+        assertEquals(2, mDetector.mRunCount);
+    }
+
+    @Test
+    public void skippedFrame_clearsMovingAreas() throws Exception {
+        detect();
+        mRects.add(1, 2, 3, 4);
+        assertEquals(0, detect());
+        assertTrue(mRects.isEmpty());
+    }
+
+    @Test
+    public void lostObject_isDetectedDuringHold() throws Exception {
+        // a slow object found then lost by the detector, on frames the signature sees unchanged
+        mDetector.mNextCount = 1;
+        assertEquals(1, detect());
+        mDetector.mNextCount = 0;
+        for (int i = 0; i < HOLD_FRAMES - 1; i++) {
+            detect();
+        }
+        mDetector.mNextCount = 1;
+        assertEquals(1, detect());
+        assertEquals(1 + HOLD_FRAMES, mDetector.mRunCount);
+
+        // the hold restarts with the found frame and ends HOLD_FRAMES empty frames later
+        mDetector.mNextCount = 0;
+        for (int i = 0; i < HOLD_FRAMES; i++) {
+            detect();
+        }
+        assertEquals(1 + 2 * HOLD_FRAMES, mDetector.mRunCount);
+        detect();
+        assertEquals(1 + 2 * HOLD_FRAMES, mDetector.mRunCount);
+    }
+
+    private int detect() {
+        return mPreFilter.detect(mGray, mRects);
+    }
+
+    private static class ScriptedDetector implements AreaDetector {
+        int mNextCount;
+        int mRunCount;
+
+        @Override
+        public int detect(Mat gray, RectBuffer movingAreas) {
+            mRunCount++;
+            movingAreas.clear();
+            for (int i = 0; i < mNextCount; i++) {
+                movingAreas.add(10 * i, 10, 8, 8);
+            }
+            return mNextCount;
+        }
+
+        @Override
+        public Rect getActiveRect() {
+            return new Rect(0, 0, WIDTH, HEIGHT);
+        }
+
+        @Override
+        public long getAverageDetectNanos() {
+            return 0;
+        }
+
+        @Override
+        public void setMetrics(Metrics metrics) {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
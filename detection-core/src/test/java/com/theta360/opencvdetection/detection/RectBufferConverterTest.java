@@ -0,0 +1,96 @@
+package com.theta360.opencvdetection.detection;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of RectBufferConverter, which needs the host build of the OpenCV native library
+ */
+public class RectBufferConverterTest {
+
+    @BeforeClass
+    public static void loadLibrary() {
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("OpenCV native library not found, set -PopencvLibraryPath", e);
+        }
+    }
+
+    @Test
+    public void toMat_writesOnlyTheRectanglesInUse() throws Exception {
+        // the backing array holds more ints than the rectangles, the native put must stop at the Mat end
+        RectBuffer rects = new RectBuffer(8);
+        rects.add(1, 2, 3, 4);
+        rects.add(5, 6, 7, 8);
+        assertTrue(rects.array().length > rects.size() * RectBuffer.STRIDE);
+        MatOfRect mat = new MatOfRect();
+        RectBufferConverter.toMat(rects, mat);
+        assertEquals(CvType.CV_32SC4, mat.type());
+        Rect[] array = mat.toArray();
+        assertEquals(2, array.length);
+        assertEquals(new Rect(1, 2, 3, 4), array[0]);
+        assertEquals(new Rect(5, 6, 7, 8), array[1]);
+        mat.release();
+    }
+
+    @Test
+    public void toMat_emptyBufferGivesEmptyMat() throws Exception {
+        Mat mat = new MatOfRect(new Rect(1, 2, 3, 4));
+        RectBufferConverter.toMat(new RectBuffer(1), mat);
+        assertTrue(mat.empty());
+        assertEquals(CvType.CV_32SC4, mat.type());
+        mat.release();
+    }
+
+    @Test
+    public void fromMat_replacesContentAndAreas() throws Exception {
+        MatOfRect mat = new MatOfRect(new Rect(1, 2, 3, 4), new Rect(5, 6, 7, 8), new Rect(9, 10, 11, 12));
+        RectBuffer rects = new RectBuffer(1);
+        rects.add(100, 100, 100, 100);
+        RectBufferConverter.fromMat(mat, rects);
+        assertEquals("[1,2 3x4, 5,6 7x8, 9,10 11x12]", rects.toString());
+        assertEquals(132, rects.getArea(2));
+        mat.release();
+    }
+
+    @Test
+    public void fromMat_emptyMatClears() throws Exception {
+        RectBuffer rects = new RectBuffer(1);
+        rects.add(1, 2, 3, 4);
+        RectBufferConverter.fromMat(new MatOfRect(), rects);
+        assertTrue(rects.isEmpty());
+    }
+
+    @Test
+    public void roundTrip_keepsRectangles() throws Exception {
+        RectBuffer rects = new RectBuffer(1);
+        for (int i = 0; i < 10; i++) {
+            rects.add(i, 2 * i, 3 + i, 4 + i);
+        }
+        Mat mat = new Mat();
+        RectBufferConverter.toMat(rects, mat);
+        RectBuffer back = new RectBuffer(1);
+        RectBufferConverter.fromMat(mat, back);
+        assertEquals(rects.toString(), back.toString());
+        mat.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromMat_rejectsOtherType() throws Exception {
+        Mat mat = new Mat(2, 1, CvType.CV_32SC2);
+        try {
+            RectBufferConverter.fromMat(mat, new RectBuffer(1));
+        } finally {
+            mat.release();
+        }
+    }
+}
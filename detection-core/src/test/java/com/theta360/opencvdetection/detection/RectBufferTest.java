@@ -0,0 +1,112 @@
+package com.theta360.opencvdetection.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of RectBuffer
+ */
+public class RectBufferTest {
+
+    @Test
+    public void add_growsPastInitialCapacity() throws Exception {
+        RectBuffer rects = new RectBuffer(1);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, rects.add(i, 10 + i, 2 + i, 3));
+        }
+        assertEquals(5, rects.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, rects.getX(i));
+            assertEquals(10 + i, rects.getY(i));
+            assertEquals(2 + i, rects.getWidth(i));
+            assertEquals(3, rects.getHeight(i));
+            assertEquals((2 + i) * 3, rects.getArea(i));
+            assertEquals(i + 2 + i, rects.getRight(i));
+            assertEquals(13 + i, rects.getBottom(i));
+        }
+    }
+
+    @Test
+    public void remove_keepsOrderOfOthers() throws Exception {
+        RectBuffer rects = new RectBuffer(4);
+        rects.add(0, 0, 1, 1);
+        rects.add(1, 0, 2, 2);
+        rects.add(2, 0, 3, 3);
+        rects.remove(1);
+        assertEquals(2, rects.size());
+        assertEquals(0, rects.getX(0));
+        assertEquals(2, rects.getX(1));
+        assertEquals(9, rects.getArea(1));
+
+        // removing the last one moves nothing
+        rects.remove(1);
+        assertEquals(1, rects.size());
+        assertEquals(0, rects.getX(0));
+        rects.remove(0);
+        assertTrue(rects.isEmpty());
+    }
+
+    @Test
+    public void clear_keepsStorage() throws Exception {
+        RectBuffer rects = new RectBuffer(2);
+        rects.add(1, 2, 3, 4);
+        int[] array = rects.array();
+        rects.clear();
+        assertTrue(rects.isEmpty());
+        rects.add(5, 6, 7, 8);
+        assertSame(array, rects.array());
+        assertEquals(5, rects.getX(0));
+    }
+
+    @Test
+    public void copyFrom_growsAndReplacesContent() throws Exception {
+        RectBuffer source = new RectBuffer(4);
+        source.add(1, 2, 3, 4);
+        source.add(5, 6, 7, 8);
+        source.add(9, 10, 11, 12);
+        RectBuffer copy = new RectBuffer(1);
+        copy.add(100, 100, 100, 100);
+        copy.copyFrom(source);
+        assertEquals(source.toString(), copy.toString());
+        assertEquals(3, copy.size());
+        assertEquals(132, copy.getArea(2));
+
+        // later changes of the source are not seen
+        source.set(0, 0, 0, 1, 1);
+        assertEquals(1, copy.getX(0));
+        assertEquals(12, copy.getArea(0));
+    }
+
+    @Test
+    public void setSize_computesAreasOfBackingArray() throws Exception {
+        RectBuffer rects = new RectBuffer(2);
+        rects.ensureCapacity(2);
+        int[] array = rects.array();
+        int[] values = {1, 2, 3, 4, 5, 6, 7, 8};
+        System.arraycopy(values, 0, array, 0, values.length);
+        rects.setSize(2);
+        assertEquals(2, rects.size());
+        assertEquals(12, rects.getArea(0));
+        assertEquals(56, rects.getArea(1));
+        assertEquals(5, rects.getX(1));
+        assertEquals(8, rects.getHeight(1));
+    }
+
+    @Test
+    public void setSize_growsStorage() throws Exception {
+        RectBuffer rects = new RectBuffer(1);
+        rects.setSize(3);
+        assertEquals(3, rects.size());
+        assertTrue(rects.array().length >= 3 * RectBuffer.STRIDE);
+    }
+
+    @Test
+    public void toString_listsRectangles() throws Exception {
+        RectBuffer rects = new RectBuffer(2);
+        assertEquals("[]", rects.toString());
+        rects.add(1, 2, 3, 4);
+        rects.add(5, 6, 7, 8);
+        assertEquals("[1,2 3x4, 5,6 7x8]", rects.toString());
+    }
+}
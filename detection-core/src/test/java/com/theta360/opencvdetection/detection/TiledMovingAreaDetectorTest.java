@@ -0,0 +1,114 @@
+package com.theta360.opencvdetection.detection;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the failure handling of TiledMovingAreaDetector, with a background model
+ * failing on demand, which needs the host build of the OpenCV native library
+ */
+public class TiledMovingAreaDetectorTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 320;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final ExecutorService mCaller = Executors.newSingleThreadExecutor();
+    private final FailingModel[] mModels = new FailingModel[2];
+    private TiledMovingAreaDetector mDetector;
+    private Mat mGray;
+    private RectBuffer mRects;
+
+    @BeforeClass
+    public static void loadLibrary() {
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("OpenCV native library not found, set -PopencvLibraryPath", e);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        // the bands create their models in band order
+        final int[] created = new int[1];
+        mDetector = new TiledMovingAreaDetector(WIDTH, HEIGHT, 2, null, (width, height) -> {
+            FailingModel model = new FailingModel();
+            mModels[created[0]++] = model;
+            return model;
+        });
+        mGray = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1, new Scalar(96));
+        mRects = new RectBuffer(DetectionConstants.MAX_MOVING_AREA_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        mCaller.shutdownNow();
+        mDetector.release();
+        mGray.release();
+    }
+
+    @Test
+    public void workerBandFailure_isThrownByDetect() throws Exception {
+        mModels[1].mFail = true;
+        assertFailure();
+        // the worker is still there for the next frames
+        assertFailure();
+        mModels[1].mFail = false;
+        assertEquals(0, detect());
+    }
+
+    @Test
+    public void callingBandFailure_waitsForWorkers() throws Exception {
+        mModels[0].mFail = true;
+        assertFailure();
+        mModels[0].mFail = false;
+        // no permit of the failed frame is left for this one
+        assertEquals(0, detect());
+        assertEquals(0, detect());
+    }
+
+    private int detect() throws Exception {
+        return mCaller.submit(() -> mDetector.detect(mGray, mRects)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void assertFailure() throws Exception {
+        try {
+            detect();
+            fail("no failure");
+        } catch (ExecutionException e) {
+            assertEquals("model failed", e.getCause().getMessage());
+        }
+    }
+
+    private static class FailingModel implements BackgroundModel {
+        volatile boolean mFail;
+
+        @Override
+        public void apply(byte[] frame, byte[] foreground) {
+            if (mFail) {
+                throw new IllegalStateException("model failed");
+            }
+            Arrays.fill(foreground, (byte) 0);
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.theta360.opencvdetection.frame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of FrameBufferPool
+ */
+public class FrameBufferPoolTest {
+
+    @Test
+    public void acquireHandOverRelease_movesOwnership() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool(2, 16);
+        FrameBuffer buffer = pool.acquire();
+        assertTrue(pool.isOwnedByProducer(buffer));
+        assertEquals(16, buffer.getData().length);
+
+        pool.handOver(buffer);
+        assertFalse(pool.isOwnedByProducer(buffer));
+        assertEquals(1, pool.getConsumerCount());
+        assertEquals(1, pool.getHandOverCount());
+
+        buffer.release();
+        assertEquals(0, pool.getConsumerCount());
+        assertEquals(1, pool.getMaxConsumerCount());
+        assertFalse(pool.isOwnedByProducer(buffer));
+    }
+
+    @Test
+    public void exhaustion_isCountedOnAcquireOnly() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool(2, 16);
+        FrameBuffer first = pool.acquire();
+        FrameBuffer second = pool.acquire();
+        // handing over every buffer is not an exhaustion by itself
+        pool.handOver(first);
+        pool.handOver(second);
+        assertEquals(0, pool.getExhaustedCount());
+        assertEquals(2, pool.getMaxConsumerCount());
+
+        assertNull(pool.acquire());
+        assertNull(pool.acquire(1));
+        assertEquals(2, pool.getExhaustedCount());
+
+        first.release();
+        assertSame(first, pool.acquire());
+        assertEquals(2, pool.getExhaustedCount());
+    }
+
+    @Test
+    public void acquire_waitsForRelease() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool(1, 16, true);
+        final FrameBuffer buffer = pool.acquire();
+        assertTrue(buffer.isDirect());
+        pool.handOver(buffer);
+
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            buffer.release();
+        });
+        consumer.start();
+        assertSame(buffer, pool.acquire(5000));
+        consumer.join();
+    }
+
+    @Test
+    public void recycleListener_keepsBufferWithProducer() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool(2, 16);
+        final List<FrameBuffer> recycled = new ArrayList<>();
+        pool.setRecycleListener(recycled::add);
+        FrameBuffer buffer = pool.acquire();
+        pool.handOver(buffer);
+        buffer.release();
+
+        assertEquals(1, recycled.size());
+        assertSame(buffer, recycled.get(0));
+        assertTrue(pool.isOwnedByProducer(buffer));
+        // the recycled buffer did not return to the pool
+        assertNotNull(pool.acquire());
+        assertNull(pool.acquire());
+    }
+
+    @Test
+    public void find_returnsBufferOfArray() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool(2, 16);
+        FrameBuffer buffer = pool.get(1);
+        assertSame(buffer, pool.find(buffer.getData()));
+        assertNull(pool.find(new byte[16]));
+        assertNull(pool.find(null));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleRelease_isRejected() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool(1, 16);
+        FrameBuffer buffer = pool.acquire();
+        pool.handOver(buffer);
+        buffer.release();
+        buffer.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void handOverOfFreeBuffer_isRejected() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool(1, 16);
+        pool.handOver(pool.get(0));
+    }
+}
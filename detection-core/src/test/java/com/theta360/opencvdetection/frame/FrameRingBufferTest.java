@@ -0,0 +1,115 @@
+package com.theta360.opencvdetection.frame;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of FrameRingBuffer
+ */
+public class FrameRingBufferTest {
+
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+
+    @Test
+    public void capacity_followsMemoryBudget() throws Exception {
+        FrameRingBuffer luma = new FrameRingBuffer(WIDTH, HEIGHT, FrameRingBuffer.Format.LUMA, 1000);
+        assertEquals(128, luma.getFrameSize());
+        assertEquals(7, luma.getCapacity());
+        FrameRingBuffer nv21 = new FrameRingBuffer(WIDTH, HEIGHT, FrameRingBuffer.Format.NV21, 1000);
+        assertEquals(192, nv21.getFrameSize());
+        assertEquals(5, nv21.getCapacity());
+        FrameRingBuffer tiny = new FrameRingBuffer(WIDTH, HEIGHT, FrameRingBuffer.Format.NV21, 10);
+        assertEquals(1, tiny.getCapacity());
+    }
+
+    @Test
+    public void fullRing_evictsOldestFrames() throws Exception {
+        FrameRingBuffer ring = new FrameRingBuffer(WIDTH, HEIGHT, FrameRingBuffer.Format.LUMA, 3 * WIDTH * HEIGHT);
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int i = 0; i < 5; i++) {
+            Arrays.fill(frame, (byte) i);
+            ring.put(frame, 100 + i);
+        }
+        assertEquals(3, ring.size());
+        assertEquals(2, ring.getEvictedCount());
+
+        byte[] dst = new byte[ring.getFrameSize()];
+        for (int i = 2; i < 5; i++) {
+            assertEquals(100 + i, ring.poll(dst));
+            assertEquals(i, dst[0]);
+            assertEquals(i, dst[dst.length - 1]);
+        }
+        assertEquals(FrameRingBuffer.NONE, ring.poll(dst));
+    }
+
+    @Test
+    public void clear_dropsStoredFrames() throws Exception {
+        FrameRingBuffer ring = new FrameRingBuffer(WIDTH, HEIGHT, FrameRingBuffer.Format.LUMA, 4 * WIDTH * HEIGHT);
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        ring.put(frame, 1);
+        ring.put(frame, 2);
+        ring.clear();
+        assertEquals(0, ring.size());
+        ring.put(frame, 3);
+        assertEquals(3, ring.poll(new byte[WIDTH * HEIGHT]));
+    }
+
+    @Test
+    public void pollUntilSequence_leavesLaterFrames() throws Exception {
+        FrameRingBuffer ring = new FrameRingBuffer(WIDTH, HEIGHT, FrameRingBuffer.Format.LUMA, 3 * WIDTH * HEIGHT);
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        byte[] dst = new byte[WIDTH * HEIGHT];
+        ring.put(frame, 1);
+        ring.put(frame, 2);
+        long end = ring.getHeadSequence();
+        // stored while the earlier frames are taken; 4 evicts 1
+        ring.put(frame, 3);
+        ring.put(frame, 4);
+
+        assertEquals(2, ring.poll(dst, end));
+        assertEquals(FrameRingBuffer.NONE, ring.poll(dst, end));
+        assertEquals(2, ring.size());
+        assertEquals(3, ring.poll(dst));
+    }
+
+    @Test
+    public void concurrentReader_neverSeesTornFrames() throws Exception {
+        final FrameRingBuffer ring = new FrameRingBuffer(WIDTH, HEIGHT, FrameRingBuffer.Format.LUMA,
+                4 * WIDTH * HEIGHT);
+        final int frames = 200000;
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < frames; i++) {
+                    byte[] slot = ring.beginPut();
+                    Arrays.fill(slot, (byte) i);
+                    ring.commit(i);
+                }
+            }
+        });
+        writer.start();
+
+        byte[] dst = new byte[ring.getFrameSize()];
+        long last = -1;
+        int taken = 0;
+        while (writer.isAlive() || ring.size() > 0) {
+            long timestamp = ring.poll(dst);
+            if (timestamp == FrameRingBuffer.NONE) {
+                continue;
+            }
+            assertTrue(timestamp > last);
+            last = timestamp;
+            for (byte b : dst) {
+                assertEquals((byte) timestamp, b);
+            }
+            taken++;
+        }
+        writer.join();
+        assertEquals(frames - 1, last);
+        assertTrue(taken > 0);
+    }
+}
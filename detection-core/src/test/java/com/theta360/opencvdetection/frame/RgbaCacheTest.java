@@ -0,0 +1,88 @@
+package com.theta360.opencvdetection.frame;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of RgbaCache on a frame of the preview size, which needs the host build of the
+ * OpenCV native library
+ */
+public class RgbaCacheTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 320;
+
+    private Mat mYuv;
+    private RgbaCache mCache;
+
+    @BeforeClass
+    public static void loadLibrary() {
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("OpenCV native library not found, set -PopencvLibraryPath", e);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mYuv = new Mat(HEIGHT + HEIGHT / 2, WIDTH, CvType.CV_8UC1);
+        Core.randu(mYuv, 0, 256);
+        mCache = new RgbaCache(mYuv, WIDTH, HEIGHT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mCache.release();
+        mYuv.release();
+    }
+
+    @Test
+    public void rgba_convertsOncePerGeneration() throws Exception {
+        assertEquals(0, mCache.getConversionCount());
+        mCache.get();
+        mCache.get();
+        mCache.get(10, 10, 50, 50);
+        assertEquals(1, mCache.getConversionCount());
+
+        mCache.invalidate();
+        assertFalse(mCache.isConverted());
+        mCache.get();
+        assertEquals(2, mCache.getConversionCount());
+    }
+
+    @Test
+    public void region_matchesWholeFrameConversion() throws Exception {
+        Mat expected = new Mat();
+        Imgproc.cvtColor(mYuv, expected, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+
+        // odd coordinates are widened to the chroma grid
+        Mat rgba = mCache.get(101, 33, 77, 41);
+        assertEquals(1, mCache.getConversionCount());
+        assertFalse(mCache.isConverted());
+
+        Mat actualRegion = rgba.submat(32, 74, 100, 178);
+        Mat expectedRegion = expected.submat(32, 74, 100, 178);
+        Mat diff = new Mat();
+        Core.absdiff(actualRegion, expectedRegion, diff);
+        assertEquals(0, Core.countNonZero(diff.reshape(1)));
+
+        // a region inside the converted one is not converted again
+        mCache.get(110, 40, 10, 10);
+        assertEquals(1, mCache.getConversionCount());
+
+        diff.release();
+        expectedRegion.release();
+        actualRegion.release();
+        expected.release();
+    }
+}
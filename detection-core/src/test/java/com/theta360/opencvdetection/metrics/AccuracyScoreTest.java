@@ -0,0 +1,81 @@
+package com.theta360.opencvdetection.metrics;
+
+import com.theta360.opencvdetection.detection.RectBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of AccuracyScore
+ */
+public class AccuracyScoreTest {
+
+    private static final int WIDTH = 640;
+
+    @Test
+    public void iou_ofOverlappingBoxes() throws Exception {
+        AccuracyScore score = new AccuracyScore(WIDTH, 0.3f);
+        RectBuffer a = rects(0, 0, 10, 10);
+        RectBuffer b = rects(5, 0, 10, 10);
+        assertEquals(50f / 150f, score.iou(a, 0, b, 0), 1e-6);
+        assertEquals(1f, score.iou(a, 0, a, 0), 1e-6);
+        assertEquals(0f, score.iou(a, 0, rects(20, 20, 5, 5), 0), 1e-6);
+    }
+
+    @Test
+    public void iou_acrossSeam() throws Exception {
+        AccuracyScore score = new AccuracyScore(WIDTH, 0.3f);
+        // the same object, once extending past the right edge and once starting at the left edge
+        RectBuffer wrapped = rects(WIDTH - 10, 0, 20, 10);
+        RectBuffer left = rects(0, 0, 10, 10);
+        assertEquals(0.5f, score.iou(wrapped, 0, left, 0), 1e-6);
+        assertEquals(0.5f, score.iou(left, 0, wrapped, 0), 1e-6);
+    }
+
+    @Test
+    public void score_countsHitsAndMisses() throws Exception {
+        AccuracyScore score = new AccuracyScore(WIDTH, 0.3f);
+        RectBuffer truth = rects(0, 0, 10, 10, 100, 100, 20, 20);
+        RectBuffer detected = rects(1, 0, 10, 10, 300, 100, 10, 10);
+
+        assertEquals(1, score.score(detected, truth));
+        assertEquals(1, score.getTruePositives());
+        assertEquals(1, score.getFalsePositives());
+        assertEquals(1, score.getFalseNegatives());
+        assertEquals(90f / 110f, score.getLastIou(), 1e-6);
+
+        // an empty frame with nothing detected changes only the frame count
+        assertEquals(0, score.score(new RectBuffer(1), new RectBuffer(1)));
+        assertEquals(2, score.getFrameCount());
+        assertEquals(0.5, score.getPrecision(), 1e-9);
+        assertEquals(0.5, score.getRecall(), 1e-9);
+        assertEquals(90.0 / 110.0, score.getMeanIou(), 1e-6);
+    }
+
+    @Test
+    public void score_matchesEachBoxOnce() throws Exception {
+        AccuracyScore score = new AccuracyScore(WIDTH, 0.3f);
+        // two detections of one object: the better one is the hit, the other a false positive
+        RectBuffer truth = rects(0, 0, 10, 10);
+        RectBuffer detected = rects(2, 0, 10, 10, 0, 0, 10, 10);
+        assertEquals(1, score.score(detected, truth));
+        assertEquals(1.0, score.getLastIou(), 1e-6);
+        assertEquals(1, score.getFalsePositives());
+    }
+
+    @Test
+    public void emptySequence_isPerfect() throws Exception {
+        AccuracyScore score = new AccuracyScore(WIDTH, 0.3f);
+        assertEquals(1.0, score.getPrecision(), 0);
+        assertEquals(1.0, score.getRecall(), 0);
+    }
+
+    private static RectBuffer rects(int... values) {
+        RectBuffer rects = new RectBuffer(values.length / 4);
+        for (int i = 0; i < values.length; i += 4) {
+            rects.add(values[i], values[i + 1], values[i + 2], values[i + 3]);
+        }
+        return rects;
+    }
+}
@@ -0,0 +1,59 @@
+package com.theta360.opencvdetection.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of LatencyHistogram
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverValuesWithSmallError() throws Exception {
+        int previous = -1;
+        for (long value = 0; value < 1L << 20; value += 1 + value / 50) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index >= previous);
+            previous = index;
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value / 16);
+        }
+        int last = LatencyHistogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(last));
+    }
+
+    @Test
+    public void percentiles_ofUniformLatencies() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1..1000 microseconds
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500.0, histogram.getMean(), 1e-6);
+        assertEquals(500000, histogram.getPercentile(50), 500000 / 16);
+        assertEquals(950000, histogram.getPercentile(95), 950000 / 16);
+        assertEquals(990000, histogram.getPercentile(99), 990000 / 16);
+        assertEquals(1000000, histogram.getPercentile(100));
+        assertTrue(histogram.getPercentile(50) >= 500000);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void metrics_dumpRecordedStagesAndDrops() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.record(Metrics.Stage.DETECTION, 2000000);
+        metrics.drop(Metrics.Drop.PREVIEW);
+        metrics.drop(Metrics.Drop.PREVIEW);
+        String dump = metrics.dump();
+        assertTrue(dump, dump.startsWith("detection n=1 p50=2.00"));
+        assertFalse(dump, dump.contains("subtraction"));
+        assertTrue(dump, dump.endsWith("dropped preview=2 pipeline=0 window=0 clip=0"));
+    }
+}
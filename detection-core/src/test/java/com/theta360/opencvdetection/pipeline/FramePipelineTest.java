@@ -0,0 +1,241 @@
+package com.theta360.opencvdetection.pipeline;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of FramePipeline with plain items
+ */
+public class FramePipelineTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private FramePipeline<int[]> mPipeline;
+
+    @After
+    public void tearDown() {
+        if (mPipeline != null) {
+            mPipeline.stop();
+        }
+    }
+
+    @Test
+    public void stages_keepSubmissionOrder() throws Exception {
+        final List<Integer> first = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> second = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(20);
+        mPipeline = new FramePipeline<>(items(4));
+        mPipeline.addStage("first", 4, DropPolicy.BLOCK, item -> {
+            first.add(item[0]);
+            return true;
+        }).addStage("second", 4, DropPolicy.BLOCK, item -> {
+            second.add(item[0]);
+            done.countDown();
+            return true;
+        });
+        mPipeline.start();
+
+        for (int i = 0; i < 20; i++) {
+            int[] item = acquire(mPipeline);
+            item[0] = i;
+            mPipeline.submit(item);
+        }
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, (int) first.get(i));
+            assertEquals(i, (int) second.get(i));
+        }
+        assertFreeItems(4);
+    }
+
+    @Test
+    public void dropOldest_discardsOldestQueuedItem() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+        mPipeline = new FramePipeline<>(items(4));
+        mPipeline.addStage("detect", 2, DropPolicy.DROP_OLDEST, item -> {
+            entered.countDown();
+            await(gate);
+            processed.add(item[0]);
+            return false;
+        });
+        mPipeline.start();
+
+        submit(mPipeline, 0);
+        assertTrue(entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // the stage holds 0, the queue of two keeps the newest of 1, 2 and 3
+        submit(mPipeline, 1);
+        submit(mPipeline, 2);
+        submit(mPipeline, 3);
+        assertEquals(1, mPipeline.getStats().get(0).getDroppedCount());
+        // the dropped item is back in the pool
+        assertNotNull(mPipeline.acquire());
+
+        gate.countDown();
+        waitForProcessed(mPipeline, 3);
+        assertEquals(3, processed.size());
+        assertEquals(0, (int) processed.get(0));
+        assertEquals(2, (int) processed.get(1));
+        assertEquals(3, (int) processed.get(2));
+    }
+
+    @Test
+    public void block_waitsForFreeSlot() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        mPipeline = new FramePipeline<>(items(4));
+        mPipeline.addStage("write", 1, DropPolicy.BLOCK, item -> {
+            entered.countDown();
+            await(gate);
+            return false;
+        });
+        mPipeline.start();
+
+        submit(mPipeline, 0);
+        assertTrue(entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        submit(mPipeline, 1);
+
+        final AtomicBoolean submitted = new AtomicBoolean();
+        final int[] blocked = acquire(mPipeline);
+        Thread producer = new Thread(() -> {
+            mPipeline.submit(blocked);
+            submitted.set(true);
+        });
+        producer.start();
+        producer.join(200);
+        assertFalse(submitted.get());
+
+        gate.countDown();
+        producer.join(TIMEOUT_SECONDS * 1000);
+        assertTrue(submitted.get());
+        waitForProcessed(mPipeline, 3);
+        assertEquals(0, mPipeline.getStats().get(0).getDroppedCount());
+    }
+
+    @Test
+    public void stop_returnsQueuedItemsToPool() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        mPipeline = new FramePipeline<>(items(4));
+        mPipeline.addStage("detect", 4, DropPolicy.DROP_OLDEST, item -> {
+            entered.countDown();
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        });
+        mPipeline.start();
+
+        submit(mPipeline, 0);
+        assertTrue(entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        submit(mPipeline, 1);
+        submit(mPipeline, 2);
+        mPipeline.stop();
+        assertFreeItems(4);
+
+        // a stopped pipeline returns submitted items at once
+        submit(mPipeline, 3);
+        assertFreeItems(4);
+    }
+
+    @Test
+    public void throwingHandler_releasesItemAndGoesOn() throws Exception {
+        final List<Integer> forwarded = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(3);
+        mPipeline = new FramePipeline<>(items(2));
+        mPipeline.addStage("detect", 4, DropPolicy.BLOCK, item -> {
+            if (item[0] == 1) {
+                throw new IllegalStateException("detect failed");
+            }
+            return true;
+        }).addStage("annotate", 4, DropPolicy.BLOCK, item -> {
+            forwarded.add(item[0]);
+            done.countDown();
+            return true;
+        });
+        mPipeline.start();
+
+        // more items than the pool, so the failed one must have come back
+        submit(mPipeline, 0);
+        submit(mPipeline, 1);
+        submit(mPipeline, 2);
+        submit(mPipeline, 3);
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        waitForProcessed(mPipeline, 4);
+        assertEquals(1, mPipeline.getStats().get(0).getFailedCount());
+        assertTrue(forwarded.contains(0));
+        assertFalse(forwarded.contains(1));
+        assertTrue(forwarded.contains(3));
+        assertFreeItems(2);
+    }
+
+    @Test
+    public void acquire_countsFailures() throws Exception {
+        mPipeline = new FramePipeline<>(items(1));
+        assertNotNull(mPipeline.acquire());
+        assertNull(mPipeline.acquire());
+        assertEquals(1, mPipeline.getAcquireFailureCount());
+    }
+
+    private static List<int[]> items(int count) {
+        List<int[]> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(new int[1]);
+        }
+        return items;
+    }
+
+    private static int[] acquire(FramePipeline<int[]> pipeline) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        int[] item;
+        while ((item = pipeline.acquire()) == null) {
+            assertTrue("no free item", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+        return item;
+    }
+
+    private static void submit(FramePipeline<int[]> pipeline, int value) throws InterruptedException {
+        int[] item = acquire(pipeline);
+        item[0] = value;
+        pipeline.submit(item);
+    }
+
+    private static void waitForProcessed(FramePipeline<int[]> pipeline, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (pipeline.getStats().get(0).getProcessedCount() < count) {
+            assertTrue("not processed", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void assertFreeItems(int count) throws InterruptedException {
+        List<int[]> taken = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            taken.add(acquire(mPipeline));
+        }
+        assertNull(mPipeline.acquire());
+        for (int[] item : taken) {
+            mPipeline.release(item);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
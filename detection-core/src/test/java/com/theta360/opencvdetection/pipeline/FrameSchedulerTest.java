@@ -0,0 +1,94 @@
+package com.theta360.opencvdetection.pipeline;
+
+import com.theta360.opencvdetection.pipeline.FrameScheduler.Decision;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of FrameScheduler with a simulated 30 fps clock
+ */
+public class FrameSchedulerTest {
+
+    private static final long FRAME_NANOS = 33333333L;
+    private static final long MILLIS = 1000000L;
+
+    private FrameScheduler mScheduler;
+    private long mNow;
+
+    @Before
+    public void setUp() throws Exception {
+        // idle after 1 s, full detection at least every 500 ms, check every 3rd frame
+        mScheduler = new FrameScheduler(1000, 500, 3);
+        mNow = 0;
+    }
+
+    @Test
+    public void activeScene_processesEveryFrame() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Decision.PROCESS, nextFrame(5 * MILLIS, 1));
+        }
+        assertTrue(mScheduler.isActive());
+    }
+
+    @Test
+    public void slowProcessing_skipsFramesBetween() throws Exception {
+        int processed = 0;
+        for (int i = 0; i < 60; i++) {
+            if (nextFrame(80 * MILLIS, 1) == Decision.PROCESS) {
+                processed++;
+            }
+        }
+        // 80 ms per frame allows one frame out of three
+        assertTrue(processed >= 20 && processed <= 24);
+    }
+
+    @Test
+    public void idleScene_checksAndBoundsLatency() throws Exception {
+        for (int i = 0; i < 60; i++) {
+            nextFrame(5 * MILLIS, 0);
+        }
+        assertFalse(mScheduler.isActive());
+
+        long checks = mScheduler.getCount(Decision.CHECK);
+        long processed = mScheduler.getCount(Decision.PROCESS);
+        for (int i = 0; i < 90; i++) {
+            nextFrame(5 * MILLIS, 0);
+        }
+        // 3 s of idle frames: a check every 3rd frame and a detection every 500 ms
+        assertTrue(mScheduler.getCount(Decision.CHECK) - checks >= 25);
+        assertTrue(mScheduler.getCount(Decision.PROCESS) - processed >= 5);
+        assertTrue(mScheduler.getCount(Decision.PROCESS) - processed <= 7);
+        assertTrue(mScheduler.getMaxProcessGapNanos() <= 500 * MILLIS + FRAME_NANOS);
+    }
+
+    @Test
+    public void changedCheck_activatesScene() throws Exception {
+        for (int i = 0; i < 60; i++) {
+            nextFrame(5 * MILLIS, 0);
+        }
+        assertFalse(mScheduler.isActive());
+
+        Decision decision;
+        do {
+            decision = mScheduler.next(mNow += FRAME_NANOS);
+        } while (decision != Decision.CHECK);
+        mScheduler.onChecked(mNow, true);
+
+        assertTrue(mScheduler.isActive());
+        assertEquals(Decision.PROCESS, mScheduler.next(mNow += FRAME_NANOS));
+    }
+
+    private Decision nextFrame(long processNanos, int movingAreaCount) {
+        mNow += FRAME_NANOS;
+        Decision decision = mScheduler.next(mNow);
+        if (decision == Decision.PROCESS) {
+            mScheduler.onProcessed(mNow, processNanos, movingAreaCount);
+        } else if (decision == Decision.CHECK) {
+            mScheduler.onChecked(mNow, false);
+        }
+        return decision;
+    }
+}
@@ -0,0 +1,47 @@
+package com.theta360.opencvdetection.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of RunMeter with a simulated clock
+ */
+public class RunMeterTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void sample_measuresLastInterval() throws Exception {
+        RunMeter meter = new RunMeter("headless");
+        meter.start(0, 1000);
+        for (int i = 0; i < 30; i++) {
+            meter.onFrame();
+        }
+        // half a core busy for two seconds
+        meter.sample(2 * SECOND, 2000);
+        assertEquals(15.0, meter.getFps(), 1e-9);
+        assertEquals(50.0, meter.getCpuPercent(), 1e-9);
+
+        for (int i = 0; i < 10; i++) {
+            meter.onFrame();
+        }
+        meter.sample(3 * SECOND, 3500);
+        assertEquals(10.0, meter.getFps(), 1e-9);
+        assertEquals(150.0, meter.getCpuPercent(), 1e-9);
+
+        assertEquals(40.0 / 3, meter.getAverageFps(), 1e-9);
+        assertEquals(250.0 / 3, meter.getAverageCpuPercent(), 1e-9);
+        assertEquals(40, meter.getFrameCount());
+    }
+
+    @Test
+    public void sample_ignoresEmptyInterval() throws Exception {
+        RunMeter meter = new RunMeter("rendering");
+        meter.start(SECOND, 0);
+        meter.onFrame();
+        meter.sample(SECOND, 10);
+        assertEquals(0.0, meter.getFps(), 0);
+        assertEquals(0.0, meter.getAverageFps(), 0);
+    }
+}
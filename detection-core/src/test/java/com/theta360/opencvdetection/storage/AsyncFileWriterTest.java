@@ -0,0 +1,191 @@
+package com.theta360.opencvdetection.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of AsyncFileWriter on a temporary directory
+ */
+public class AsyncFileWriterTest {
+
+    private static final long LONG_INTERVAL = 60000;
+
+    private File mDir;
+    private final List<String> mWritten = Collections.synchronizedList(new ArrayList<String>());
+    private final AsyncFileWriter.Listener mListener = new AsyncFileWriter.Listener() {
+        @Override
+        public void onWritten(String path) {
+            mWritten.add(path);
+        }
+
+        @Override
+        public void onError(String path, IOException e) {
+            fail(path + ": " + e);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = Files.createTempDirectory("writer").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void write_copiesBeforeReturning() throws Exception {
+        AsyncFileWriter writer = new AsyncFileWriter(2, 1, 1, LONG_INTERVAL, mListener);
+        byte[] data = {1, 2, 3, 4, 5};
+        String path = new File(mDir, "a.bin").getPath();
+        assertTrue(writer.write(path, data, 1, 3));
+        // the producer reuses its buffer at once
+        data[2] = 9;
+        writer.close();
+
+        assertArrayEquals(new byte[]{2, 3, 4}, Files.readAllBytes(new File(path).toPath()));
+        assertEquals(1, mWritten.size());
+        assertEquals(1, writer.getWrittenCount());
+    }
+
+    @Test
+    public void fullQueue_dropsWithoutBlocking() throws Exception {
+        AsyncFileWriter writer = new AsyncFileWriter(1, 1, 1, LONG_INTERVAL, mListener);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch disk = new CountDownLatch(1);
+        WriteJob slowJob = new WriteJob() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                started.countDown();
+                try {
+                    disk.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                out.write(1);
+            }
+
+            @Override
+            public void recycle() {
+            }
+        };
+        assertTrue(writer.submit(new File(mDir, "slow.bin").getPath(), slowJob));
+        started.await();
+
+        // one file waits while the writer thread is stuck, the next is dropped
+        assertTrue(writer.write(new File(mDir, "b.bin").getPath(), new byte[]{1}, 0, 1));
+        assertFalse(writer.write(new File(mDir, "c.bin").getPath(), new byte[]{1}, 0, 1));
+        assertEquals(1, writer.getDroppedCount());
+
+        disk.countDown();
+        writer.close();
+        assertEquals(2, writer.getWrittenCount());
+        assertFalse(new File(mDir, "c.bin").exists());
+        assertFalse(writer.writeOwned(new File(mDir, "d.bin").getPath(), new byte[]{1}));
+    }
+
+    @Test
+    public void files_areSyncedInBatches() throws Exception {
+        AsyncFileWriter writer = new AsyncFileWriter(8, 1, 3, LONG_INTERVAL, mListener);
+        for (int i = 0; i < 4; i++) {
+            byte[] data = {(byte) i};
+            while (!writer.writeOwned(new File(mDir, i + ".bin").getPath(), data)) {
+                Thread.sleep(1);
+            }
+        }
+        writer.close();
+
+        // one full batch, and the remaining file at close
+        assertEquals(2, writer.getSyncCount());
+        assertEquals(4, writer.getWrittenCount());
+        assertEquals(4, mWritten.size());
+        assertEquals(0, writer.getFailedCount());
+    }
+
+    @Test
+    public void runtimeException_isReportedAndNextFileWritten() throws Exception {
+        final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+        AsyncFileWriter writer = new AsyncFileWriter(2, 1, 1, LONG_INTERVAL, new AsyncFileWriter.Listener() {
+            @Override
+            public void onWritten(String path) {
+                mWritten.add(path);
+            }
+
+            @Override
+            public void onError(String path, IOException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                failed.add(path);
+            }
+        });
+        final AtomicBoolean recycled = new AtomicBoolean();
+        WriteJob failingJob = new WriteJob() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                throw new IllegalStateException("encoder failed");
+            }
+
+            @Override
+            public void recycle() {
+                recycled.set(true);
+            }
+        };
+        String failedPath = new File(mDir, "failed.bin").getPath();
+        assertTrue(writer.submit(failedPath, failingJob));
+        assertTrue(writer.write(new File(mDir, "next.bin").getPath(), new byte[]{1}, 0, 1));
+        writer.close();
+
+        assertEquals(Collections.singletonList(failedPath), failed);
+        assertTrue(recycled.get());
+        assertEquals(1, writer.getFailedCount());
+        assertEquals(1, writer.getWrittenCount());
+        assertEquals(1, mWritten.size());
+    }
+
+    @Test
+    public void submitRacingClose_isWrittenOrRejected() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            final AsyncFileWriter writer = new AsyncFileWriter(4, 1, 1, LONG_INTERVAL, mListener);
+            final long[] accepted = new long[1];
+            final CountDownLatch started = new CountDownLatch(1);
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] data = {1};
+                    for (int i = 0; i < 1000; i++) {
+                        if (writer.write(new File(mDir, i % 8 + ".bin").getPath(), data, 0, 1)) {
+                            accepted[0]++;
+                        }
+                        started.countDown();
+                    }
+                }
+            });
+            producer.start();
+            started.await();
+            writer.close();
+            producer.join();
+
+            // an accepted file is never left behind the stop mark
+            assertEquals(accepted[0], writer.getWrittenCount());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.theta360.opencvdetection.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of AviMjpegWriter, reading the written file back
+ */
+public class AviMjpegWriterTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("clip", ".avi");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @Test
+    public void close_writesHeadersAndIndex() throws Exception {
+        AviMjpegWriter writer = new AviMjpegWriter(mFile, 640, 320, 15);
+        // an odd length to check the padding
+        byte[][] frames = {frame(101, (byte) 1), frame(64, (byte) 2), frame(77, (byte) 3)};
+        for (byte[] frame : frames) {
+            writer.addFrame(frame, frame.length);
+        }
+        writer.setFrameRate(12.5);
+        writer.close();
+
+        ByteBuffer avi = ByteBuffer.wrap(Files.readAllBytes(mFile.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RIFF", fourCc(avi, 0));
+        assertEquals(avi.limit() - 8, avi.getInt(4));
+        assertEquals("AVI ", fourCc(avi, 8));
+        assertEquals("avih", fourCc(avi, 24));
+        assertEquals(80000, avi.getInt(32));
+        assertEquals(3, avi.getInt(48));
+        assertEquals(640, avi.getInt(64));
+        assertEquals(320, avi.getInt(68));
+        assertEquals("MJPG", fourCc(avi, 112));
+        assertEquals(1000, avi.getInt(128));
+        assertEquals(12500, avi.getInt(132));
+        assertEquals(3, avi.getInt(140));
+        assertEquals("movi", fourCc(avi, 220));
+
+        int moviSize = avi.getInt(216);
+        int index = 220 + moviSize;
+        assertEquals("idx1", fourCc(avi, index));
+        assertEquals(3 * 16, avi.getInt(index + 4));
+        for (int i = 0; i < frames.length; i++) {
+            int entry = index + 8 + i * 16;
+            assertEquals("00dc", fourCc(avi, entry));
+            int chunk = 220 + avi.getInt(entry + 8);
+            int size = avi.getInt(entry + 12);
+            assertEquals(frames[i].length, size);
+            assertEquals("00dc", fourCc(avi, chunk));
+            assertEquals(size, avi.getInt(chunk + 4));
+            assertEquals(frames[i][0], avi.get(chunk + 8));
+            assertEquals(frames[i][size - 1], avi.get(chunk + 8 + size - 1));
+            assertEquals(0, chunk % 2);
+        }
+    }
+
+    private static byte[] frame(int length, byte value) {
+        byte[] frame = new byte[length];
+        Arrays.fill(frame, value);
+        return frame;
+    }
+
+    private static String fourCc(ByteBuffer buffer, int offset) {
+        char[] chars = new char[4];
+        for (int i = 0; i < 4; i++) {
+            chars[i] = (char) buffer.get(offset + i);
+        }
+        return new String(chars);
+    }
+}
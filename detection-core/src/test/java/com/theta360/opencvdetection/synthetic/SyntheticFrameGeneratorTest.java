@@ -0,0 +1,141 @@
+package com.theta360.opencvdetection.synthetic;
+
+import com.theta360.opencvdetection.detection.RectBuffer;
+import com.theta360.opencvdetection.frame.FrameBuffer;
+import com.theta360.opencvdetection.frame.FrameSource;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of SyntheticFrameGenerator and SyntheticFrameSource
+ */
+public class SyntheticFrameGeneratorTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+    private static final int FRAME_SIZE = WIDTH * HEIGHT * 3 / 2;
+
+    @Test
+    public void object_isDrawnInsideItsBox() throws Exception {
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 1);
+        generator.addObject(10, 4, 8, 6, 2, 1, 250);
+        byte[] frame = new byte[FRAME_SIZE];
+        RectBuffer truth = new RectBuffer(1);
+
+        generator.next(frame, truth);
+        assertEquals(1, truth.size());
+        assertEquals(10, truth.getX(0));
+        assertEquals(4, truth.getY(0));
+        assertEquals(250, frame[5 * WIDTH + 12] & 0xFF);
+        assertEquals(96, frame[5 * WIDTH + 9] & 0xFF);
+        assertEquals(96, frame[5 * WIDTH + 18] & 0xFF);
+
+        // moved by its speed
+        generator.next(frame, truth);
+        assertEquals(12, truth.getX(0));
+        assertEquals(5, truth.getY(0));
+        assertEquals(2, generator.getFrameIndex());
+    }
+
+    @Test
+    public void seamCrossingObject_extendsPastRightEdge() throws Exception {
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 1);
+        generator.addSeamCrossingObject(8, 10, 4, 1, 250);
+        byte[] frame = new byte[FRAME_SIZE];
+        RectBuffer truth = new RectBuffer(1);
+
+        generator.next(frame, truth);
+        assertEquals(WIDTH - 5, truth.getX(0));
+        assertEquals(WIDTH + 5, truth.getRight(0));
+        // both parts are drawn
+        assertEquals(250, frame[9 * WIDTH + WIDTH - 1] & 0xFF);
+        assertEquals(250, frame[9 * WIDTH] & 0xFF);
+        assertEquals(250, frame[9 * WIDTH + 4] & 0xFF);
+        assertEquals(96, frame[9 * WIDTH + 5] & 0xFF);
+    }
+
+    @Test
+    public void verticalMotion_bouncesOffEdges() throws Exception {
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 1);
+        generator.addObject(0, HEIGHT - 10, 4, 8, 0, 3, 250);
+        RectBuffer truth = new RectBuffer(1);
+        byte[] frame = new byte[FRAME_SIZE];
+        for (int i = 0; i < 50; i++) {
+            generator.next(frame, truth);
+            assertTrue(truth.getY(0) >= 0);
+            assertTrue(truth.getBottom(0) <= HEIGHT);
+        }
+    }
+
+    @Test
+    public void noiseAndDrift_stayWithinAmplitude() throws Exception {
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 1);
+        generator.setNoise(3);
+        generator.setIlluminationDrift(10, 8);
+        byte[] frame = new byte[FRAME_SIZE];
+        int min = 255;
+        int max = 0;
+        for (int i = 0; i < 16; i++) {
+            generator.next(frame, null);
+            for (int p = 0; p < WIDTH * HEIGHT; p++) {
+                min = Math.min(min, frame[p] & 0xFF);
+                max = Math.max(max, frame[p] & 0xFF);
+            }
+            assertEquals(128, frame[WIDTH * HEIGHT] & 0xFF);
+        }
+        assertTrue(min >= 96 - 13 && min < 96 - 3);
+        assertTrue(max <= 96 + 13 && max > 96 + 3);
+    }
+
+    @Test
+    public void sameSeed_givesSameFrames() throws Exception {
+        byte[] first = generate(7);
+        byte[] second = generate(7);
+        assertArrayEquals(first, second);
+        assertFalse(Arrays.equals(first, generate(8)));
+    }
+
+    @Test
+    public void source_deliversFramesWithTruth() throws Exception {
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 1);
+        generator.addObject(10, 4, 8, 6, 1, 0, 250);
+        final SyntheticFrameSource source = new SyntheticFrameSource(generator);
+        source.setFrameLimit(5);
+        assertTrue(source.open());
+        final CountDownLatch done = new CountDownLatch(5);
+        final int[] lefts = new int[5];
+        final RectBuffer truth = new RectBuffer(1);
+        source.start(new FrameSource.FrameListener() {
+            @Override
+            public void onFrame(FrameBuffer frame) {
+                source.getGroundTruth(frame, truth);
+                lefts[(int) (5 - done.getCount())] = truth.getX(0);
+                assertEquals(250, frame.getDirectData().get(5 * WIDTH + truth.getX(0)) & 0xFF);
+                frame.release();
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        source.close();
+        assertArrayEquals(new int[] {10, 11, 12, 13, 14}, lefts);
+        assertEquals(5, source.getDeliveredFrameCount());
+    }
+
+    private static byte[] generate(long seed) {
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, seed);
+        generator.setBackground(SyntheticFrameGenerator.Texture.RANDOM, 100, 40);
+        generator.setNoise(2);
+        generator.addRandomObjects(3, 4, 8, 2);
+        byte[] frame = new byte[FRAME_SIZE];
+        for (int i = 0; i < 4; i++) {
+            generator.next(frame, null);
+        }
+        return frame;
+    }
+}
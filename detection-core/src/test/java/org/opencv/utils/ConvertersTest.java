@@ -0,0 +1,141 @@
+package org.opencv.utils;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the scratch-array and packed-point paths of Converters against the
+ * allocating converters, which needs the host build of the OpenCV native library
+ */
+public class ConvertersTest {
+
+    @BeforeClass
+    public static void loadLibrary() {
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException("OpenCV native library not found, set -PopencvLibraryPath", e);
+        }
+    }
+
+    @Test
+    public void points_roundTrip() throws Exception {
+        List<Point> points = Arrays.asList(new Point(1, 2), new Point(-3, 4), new Point(640, 320));
+        Mat expected = Converters.vector_Point_to_Mat(points);
+        Mat actual = new Mat();
+        int[] buff = Converters.vector_Point_to_Mat(points, actual, new int[1]);
+        assertTrue(buff.length >= 6);
+        assertArrayEquals(readInts(expected), readInts(actual));
+
+        // a longer list shrinks and a shorter one grows, reusing the Point objects
+        List<Point> reference = new ArrayList<>();
+        Converters.Mat_to_vector_Point(expected, reference);
+        List<Point> longer = new ArrayList<>(Arrays.asList(new Point(), new Point(), new Point(), new Point()));
+        Point reused = longer.get(0);
+        Converters.Mat_to_vector_Point(actual, longer, buff);
+        assertEquals(reference, longer);
+        assertSame(reused, longer.get(0));
+        List<Point> shorter = new ArrayList<>(Arrays.asList(new Point()));
+        Converters.Mat_to_vector_Point(actual, shorter, null);
+        assertEquals(reference, shorter);
+
+        expected.release();
+        actual.release();
+    }
+
+    @Test
+    public void rects_roundTrip() throws Exception {
+        List<Rect> rects = Arrays.asList(new Rect(1, 2, 3, 4), new Rect(600, 10, 80, 20));
+        Mat expected = Converters.vector_Rect_to_Mat(rects);
+        Mat actual = new Mat();
+        int[] buff = Converters.vector_Rect_to_Mat(rects, actual, null);
+        assertArrayEquals(readInts(expected), readInts(actual));
+
+        List<Rect> reference = new ArrayList<>();
+        Converters.Mat_to_vector_Rect(expected, reference);
+        List<Rect> reused = new ArrayList<>(Arrays.asList(new Rect(), new Rect(), new Rect()));
+        Converters.Mat_to_vector_Rect(actual, reused, buff);
+        assertEquals(reference, reused);
+
+        expected.release();
+        actual.release();
+    }
+
+    @Test
+    public void emptyList_releasesMat() throws Exception {
+        Mat actual = new Mat(2, 1, CvType.CV_32SC2);
+        int[] buff = new int[4];
+        assertSame(buff, Converters.vector_Point_to_Mat(new ArrayList<Point>(), actual, buff));
+        assertTrue(actual.empty());
+        actual.release();
+    }
+
+    @Test
+    public void contours_matchAllocatingFindContours() throws Exception {
+        Mat image = Mat.zeros(120, 200, CvType.CV_8UC1);
+        Imgproc.rectangle(image, new Point(10, 10), new Point(40, 30), new Scalar(255), -1);
+        Imgproc.circle(image, new Point(120, 60), 25, new Scalar(255), -1);
+        Imgproc.rectangle(image, new Point(160, 90), new Point(190, 110), new Scalar(255), -1);
+        Mat hierarchy = new Mat();
+
+        List<MatOfPoint> expected = new ArrayList<>();
+        Imgproc.findContours(image.clone(), expected, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+        // one packed list is reused for two frames
+        PackedPoints packed = new PackedPoints(1, 1);
+        Mat scratch = new Mat();
+        for (int frame = 0; frame < 2; frame++) {
+            Imgproc.findContours(image.clone(), packed, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE,
+                    scratch);
+            assertEquals(expected.size(), packed.count());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(readInts(expected.get(i)),
+                        Arrays.copyOfRange(packed.points(), packed.start(i) * 2, packed.end(i) * 2));
+            }
+        }
+
+        // and written back into holder Mats, as vector_vector_Point_to_Mat does for MatOfPoint
+        List<MatOfPoint> holders = new ArrayList<>();
+        Mat addresses = new Mat();
+        Converters.vector_vector_Point_to_Mat(packed, holders, addresses, null);
+        assertEquals(packed.count(), addresses.rows());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(readInts(expected.get(i)), readInts(holders.get(i)));
+        }
+        List<Mat> mats = new ArrayList<>();
+        Mat reference = Converters.vector_vector_Point_to_Mat(holders, mats);
+        assertArrayEquals(readInts(reference), readInts(addresses));
+
+        for (MatOfPoint contour : expected) {
+            contour.release();
+        }
+        for (MatOfPoint holder : holders) {
+            holder.release();
+        }
+        reference.release();
+        addresses.release();
+        scratch.release();
+        hierarchy.release();
+        image.release();
+    }
+
+    private static int[] readInts(Mat m) {
+        int[] values = new int[(int) m.total() * m.channels()];
+        m.get(0, 0, values);
+        return values;
+    }
+}
@@ -0,0 +1,31 @@
+package org.opencv.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of PackedPoints
+ */
+public class PackedPointsTest {
+
+    @Test
+    public void add_growsAndClearKeepsArrays() throws Exception {
+        PackedPoints packed = new PackedPoints(1, 1);
+        packed.add(new int[]{1, 2, 3, 4}, 2);
+        packed.add(new int[]{5, 6, 7, 8, 9, 10}, 3);
+        packed.add(new int[0], 0);
+        assertEquals(3, packed.count());
+        assertEquals(5, packed.totalPoints());
+        assertEquals(2, packed.start(1));
+        assertEquals(5, packed.end(1));
+        assertEquals(0, packed.size(2));
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, Arrays.copyOf(packed.points(), 10));
+
+        packed.clear();
+        assertEquals(0, packed.count());
+        assertEquals(0, packed.totalPoints());
+    }
+}
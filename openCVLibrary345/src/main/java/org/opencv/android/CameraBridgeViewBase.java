@@ -39,6 +39,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     private CvCameraViewListener2 mListener;
     private boolean mSurfaceExist;
     private final Object mSyncObject = new Object();
+    private final Object mDrawLock = new Object();
 
     protected int mFrameWidth;
     protected int mFrameHeight;
@@ -48,7 +49,9 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected int mPreviewFormat = RGBA;
     protected int mCameraIndex = CAMERA_ID_ANY;
     protected boolean mEnabled;
+    protected boolean mHeadless;
     protected FpsMeter mFpsMeter = null;
+    private DrawListener mDrawListener;
 
     public static final int CAMERA_ID_ANY   = -1;
     public static final int CAMERA_ID_BACK  = 99;
@@ -255,6 +258,40 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             mFpsMeter = null;
     }
 
+    /**
+     * This method selects the headless mode, in which frames are only delivered to the listener:
+     * no RGBA conversion, no cache bitmap and no drawing on the surface.
+     * It takes effect when the camera is connected, so call it before enableView().
+     * @param headless - true to skip rendering entirely
+     */
+    public void setHeadless(boolean headless) {
+        mHeadless = headless;
+    }
+
+    public boolean isHeadless() {
+        return mHeadless;
+    }
+
+    /**
+     * This interface receives the cost of every drawn frame, e.g. to keep latency histograms.
+     * It is called on the drawing thread with the draw lock held, so it must be short.
+     */
+    public interface DrawListener {
+        /**
+         * @param uploadNanos - time to copy the frame into the cache bitmap
+         * @param drawNanos - time from locking the canvas to posting it
+         */
+        public void onFrameDrawn(long uploadNanos, long drawNanos);
+    }
+
+    /**
+     * This method sets the listener of the draw timings, or removes it with null
+     * @param listener
+     */
+    public void setDrawListener(DrawListener listener) {
+        mDrawListener = listener;
+    }
+
     /**
      *
      * @param listener
@@ -374,8 +411,10 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     private void onExitStartedState() {
         disconnectCamera();
-        if (mCacheBitmap != null) {
-            mCacheBitmap.recycle();
+        synchronized (mDrawLock) {
+            if (mCacheBitmap != null) {
+                mCacheBitmap.recycle();
+            }
         }
     }
 
@@ -383,30 +422,53 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      * This method shall be called by the subclasses when they have valid
      * object and want it to be delivered to external client (via callback) and
      * then displayed on the screen.
+     * If the listener returns null, nothing is drawn; the client is then expected
+     * to call drawFrame() itself, possibly from another thread.
      * @param frame - the current frame to be delivered
      */
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
         Mat modified;
 
+        if (mHeadless) {
+            // nothing is displayed, so whatever the listener returns is not converted or drawn
+            if (mListener != null)
+                mListener.onCameraFrame(frame);
+            return;
+        }
+
         if (mListener != null) {
             modified = mListener.onCameraFrame(frame);
         } else {
             modified = frame.rgba();
         }
 
-        boolean bmpValid = true;
         if (modified != null) {
+            drawFrame(modified);
+        }
+    }
+
+    /**
+     * This method converts the given RGBA frame to the cache bitmap and draws it on the surface.
+     * It may be called from any thread, but not concurrently with itself.
+     * @param modified - the frame to be displayed
+     */
+    public void drawFrame(Mat modified) {
+        synchronized (mDrawLock) {
+            if (mCacheBitmap == null || mCacheBitmap.isRecycled()) {
+                return;
+            }
+
+            long uploadStart = System.nanoTime();
             try {
                 Utils.matToBitmap(modified, mCacheBitmap);
             } catch(Exception e) {
                 Log.e(TAG, "Mat type: " + modified);
                 Log.e(TAG, "Bitmap type: " + mCacheBitmap.getWidth() + "*" + mCacheBitmap.getHeight());
                 Log.e(TAG, "Utils.matToBitmap() throws an exception: " + e.getMessage());
-                bmpValid = false;
+                return;
             }
-        }
 
-        if (bmpValid && mCacheBitmap != null) {
+            long drawStart = System.nanoTime();
             Canvas canvas = getHolder().lockCanvas();
             if (canvas != null) {
                 canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
@@ -433,6 +495,11 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 }
                 getHolder().unlockCanvasAndPost(canvas);
             }
+
+            DrawListener listener = mDrawListener;
+            if (listener != null) {
+                listener.onFrameDrawn(drawStart - uploadStart, System.nanoTime() - drawStart);
+            }
         }
     }
 
@@ -454,7 +521,11 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // NOTE: On Android 4.1.x the function must be called before SurfaceTexture constructor!
     protected void AllocateCache()
     {
-        mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+        synchronized (mDrawLock) {
+            // without a cache bitmap drawFrame() returns immediately, so headless mode never draws
+            if (!mHeadless)
+                mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+        }
     }
 
     public interface ListItemAccessor {
@@ -945,6 +945,48 @@ public class Mat {
         return retVal;
     }
 
+    //
+    // Access to a Mat known only by its native address, such as an element of a
+    // vector_Mat filled by a native call, without creating a Java Mat for it
+    //
+
+    // javadoc: Mat::total() of the Mat at addr
+    public static long total(long addr)
+    {
+        return n_total(addr);
+    }
+
+    // javadoc: Mat::get(row,col,data) of the Mat at addr; copies at most count ints
+    public static int get(long addr, int row, int col, int[] data, int count)
+    {
+        if (data == null || count > data.length)
+            throw new java.lang.IllegalArgumentException("count exceeds the array length");
+        return nGetI(addr, row, col, count, data);
+    }
+
+    // javadoc: Mat::get(row,col,data) of the 8-bit Mat at addr; copies at most count bytes,
+    // e.g. a part of a row without an array of the exact length
+    public static int get(long addr, int row, int col, byte[] data, int count)
+    {
+        if (data == null || count > data.length)
+            throw new java.lang.IllegalArgumentException("count exceeds the array length");
+        return nGetB(addr, row, col, count, data);
+    }
+
+    // javadoc: Mat::put(0,0,data) of the Mat at addr; copies at most count ints
+    public static int put(long addr, int[] data, int count)
+    {
+        if (data == null || count > data.length)
+            throw new java.lang.IllegalArgumentException("count exceeds the array length");
+        return nPutI(addr, 0, 0, count, data);
+    }
+
+    // javadoc: deletes the Mat at addr; the address must not be used afterwards
+    public static void delete(long addr)
+    {
+        n_delete(addr);
+    }
+
     @Override
     protected void finalize() throws Throwable {
         n_delete(nativeObj);
@@ -21,6 +21,7 @@ import org.opencv.core.TermCriteria;
 import org.opencv.imgproc.CLAHE;
 import org.opencv.imgproc.LineSegmentDetector;
 import org.opencv.utils.Converters;
+import org.opencv.utils.PackedPoints;
 
 // C++: class Imgproc
 //javadoc: Imgproc
@@ -2767,6 +2768,15 @@ public class Imgproc {
         return;
     }
 
+    //javadoc: findContours(image, contours, hierarchy, mode, method)
+    // writes the contours into packed points; contours_mat is a scratch Mat reused between calls
+    public static void findContours(Mat image, PackedPoints contours, Mat hierarchy, int mode, int method, Mat contours_mat)
+    {
+        findContours_1(image.nativeObj, contours_mat.nativeObj, hierarchy.nativeObj, mode, method);
+        Converters.Mat_to_vector_vector_Point(contours_mat, contours);
+        return;
+    }
+
 
     //
     // C++:  void cv::fitLine(Mat points, Mat& line, int distType, double param, double reps, double aeps)
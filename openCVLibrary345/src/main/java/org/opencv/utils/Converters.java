@@ -190,6 +190,49 @@ public class Converters {
         }
     }
 
+    // Fast paths: the caller owns the scratch array, which is returned grown if it is too small,
+    // and the Point objects already in the list are reused.
+
+    public static int[] vector_Point_to_Mat(List<Point> pts, Mat dst, int[] buff) {
+        int count = (pts != null) ? pts.size() : 0;
+        if (count == 0) {
+            dst.release();
+            return buff;
+        }
+        buff = scratch(buff, 2 * count);
+        for (int i = 0; i < count; i++) {
+            Point p = pts.get(i);
+            buff[i * 2] = (int) p.x;
+            buff[i * 2 + 1] = (int) p.y;
+        }
+        dst.create(count, 1, CvType.CV_32SC2);
+        Mat.put(dst.nativeObj, buff, 2 * count);
+        return buff;
+    }
+
+    public static int[] Mat_to_vector_Point(Mat m, List<Point> pts, int[] buff) {
+        if (pts == null)
+            throw new java.lang.IllegalArgumentException("Output List can't be null");
+        if (m.type() != CvType.CV_32SC2 || m.cols() != 1)
+            throw new java.lang.IllegalArgumentException("Input Mat should be a CV_32SC2 column\n" + m);
+
+        int count = m.rows();
+        buff = scratch(buff, 2 * count);
+        Mat.get(m.nativeObj, 0, 0, buff, 2 * count);
+        for (int i = 0; i < count; i++) {
+            if (i < pts.size()) {
+                Point p = pts.get(i);
+                p.x = buff[i * 2];
+                p.y = buff[i * 2 + 1];
+            } else {
+                pts.add(new Point(buff[i * 2], buff[i * 2 + 1]));
+            }
+        }
+        while (pts.size() > count)
+            pts.remove(pts.size() - 1);
+        return buff;
+    }
+
     public static void Mat_to_vector_Point3i(Mat m, List<Point3> pts) {
         Mat_to_vector_Point3(m, pts);
     }
@@ -438,6 +481,51 @@ public class Converters {
         }
     }
 
+    public static int[] vector_Rect_to_Mat(List<Rect> rs, Mat dst, int[] buff) {
+        int count = (rs != null) ? rs.size() : 0;
+        if (count == 0) {
+            dst.release();
+            return buff;
+        }
+        buff = scratch(buff, 4 * count);
+        for (int i = 0; i < count; i++) {
+            Rect r = rs.get(i);
+            buff[4 * i] = r.x;
+            buff[4 * i + 1] = r.y;
+            buff[4 * i + 2] = r.width;
+            buff[4 * i + 3] = r.height;
+        }
+        dst.create(count, 1, CvType.CV_32SC4);
+        Mat.put(dst.nativeObj, buff, 4 * count);
+        return buff;
+    }
+
+    public static int[] Mat_to_vector_Rect(Mat m, List<Rect> rs, int[] buff) {
+        if (rs == null)
+            throw new java.lang.IllegalArgumentException("rs == null");
+        int count = m.rows();
+        if (CvType.CV_32SC4 != m.type() || m.cols() != 1)
+            throw new java.lang.IllegalArgumentException(
+                    "CvType.CV_32SC4 != m.type() ||  m.cols()!=1\n" + m);
+
+        buff = scratch(buff, 4 * count);
+        Mat.get(m.nativeObj, 0, 0, buff, 4 * count);
+        for (int i = 0; i < count; i++) {
+            if (i < rs.size()) {
+                Rect r = rs.get(i);
+                r.x = buff[4 * i];
+                r.y = buff[4 * i + 1];
+                r.width = buff[4 * i + 2];
+                r.height = buff[4 * i + 3];
+            } else {
+                rs.add(new Rect(buff[4 * i], buff[4 * i + 1], buff[4 * i + 2], buff[4 * i + 3]));
+            }
+        }
+        while (rs.size() > count)
+            rs.remove(rs.size() - 1);
+        return buff;
+    }
+
     public static Mat vector_Rect2d_to_Mat(List<Rect2d> rs) {
         Mat res;
         int count = (rs != null) ? rs.size() : 0;
@@ -545,6 +633,76 @@ public class Converters {
         mats.clear();
     }
 
+    // Reads the points of a vector_vector_Point Mat returned by a native call, e.g. the contours
+    // of findContours, into pts without creating a Java object per list or per point.
+    // The native Mats of the lists are owned by m's producer and are deleted here, so m must not
+    // be converted again afterwards.
+    public static void Mat_to_vector_vector_Point(Mat m, PackedPoints pts) {
+        if (pts == null)
+            throw new java.lang.IllegalArgumentException("Output PackedPoints can't be null");
+
+        if (m == null)
+            throw new java.lang.IllegalArgumentException("Input Mat can't be null");
+
+        pts.clear();
+        int count = m.rows();
+        if (count == 0)
+            return;
+        if (CvType.CV_32SC2 != m.type() || m.cols() != 1)
+            throw new java.lang.IllegalArgumentException(
+                    "CvType.CV_32SC2 != m.type() ||  m.cols()!=1\n" + m);
+
+        int[] addrs = pts.addrs = scratch(pts.addrs, count * 2);
+        Mat.get(m.nativeObj, 0, 0, addrs, count * 2);
+        int i = 0;
+        try {
+            for (; i < count; i++) {
+                long addr = (((long) addrs[i * 2]) << 32) | (((long) addrs[i * 2 + 1]) & 0xffffffffL);
+                int n = (int) Mat.total(addr);
+                int[] buff = pts.scratch = scratch(pts.scratch, n * 2);
+                if (n > 0)
+                    Mat.get(addr, 0, 0, buff, n * 2);
+                pts.add(buff, n);
+                Mat.delete(addr);
+            }
+        } finally {
+            for (i++; i < count; i++)
+                Mat.delete((((long) addrs[i * 2]) << 32) | (((long) addrs[i * 2 + 1]) & 0xffffffffL));
+        }
+    }
+
+    // Writes the lists of pts into the reused holder Mats, growing holders as needed, and their
+    // addresses into dst, so the result can be passed to e.g. drawContours. holders must stay
+    // alive while dst is used.
+    public static int[] vector_vector_Point_to_Mat(PackedPoints pts, List<MatOfPoint> holders, Mat dst, int[] buff) {
+        int count = (pts != null) ? pts.count() : 0;
+        if (count == 0) {
+            dst.release();
+            return buff;
+        }
+        int[] points = pts.points();
+        buff = scratch(buff, 2 * Math.max(count, pts.totalPoints()));
+        for (int i = 0; i < count; i++) {
+            if (i == holders.size())
+                holders.add(new MatOfPoint());
+            MatOfPoint holder = holders.get(i);
+            int n = pts.size(i);
+            holder.create(n, 1, CvType.CV_32SC2);
+            if (n > 0) {
+                System.arraycopy(points, pts.start(i) * 2, buff, 0, n * 2);
+                Mat.put(holder.nativeObj, buff, n * 2);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            long addr = holders.get(i).nativeObj;
+            buff[i * 2] = (int) (addr >> 32);
+            buff[i * 2 + 1] = (int) (addr & 0xffffffff);
+        }
+        dst.create(count, 1, CvType.CV_32SC2);
+        Mat.put(dst.nativeObj, buff, count * 2);
+        return buff;
+    }
+
     // vector_vector_Point2f
     public static void Mat_to_vector_vector_Point2f(Mat m, List<MatOfPoint2f> pts) {
         if (pts == null)
@@ -809,4 +967,11 @@ public class Converters {
             rs.add(new RotatedRect(new Point(buff[5 * i], buff[5 * i + 1]), new Size(buff[5 * i + 2], buff[5 * i + 3]), buff[5 * i + 4]));
         }
     }
+
+    // returns buff if it holds at least length ints, a larger array otherwise
+    static int[] scratch(int[] buff, int length) {
+        if (buff != null && buff.length >= length)
+            return buff;
+        return new int[Math.max(length, buff != null ? buff.length * 2 : 0)];
+    }
 }
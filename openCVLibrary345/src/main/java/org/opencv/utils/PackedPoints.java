@@ -0,0 +1,129 @@
+/**
+ * Copyright 2018 Ricoh Company, Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencv.utils;
+
+import java.util.Arrays;
+
+/**
+ * Flat representation of a vector_vector_Point: the x, y pairs of all point lists in one
+ * int array, and the start of each list in an offset array. It is meant to be cleared and
+ * refilled, e.g. with the contours of every frame, and only allocates when it grows.
+ */
+public class PackedPoints {
+
+    private int[] points;
+    private int[] offsets;
+    private int count;
+
+    /** Scratch array of the native addresses, used by Converters.Mat_to_vector_vector_Point */
+    int[] addrs;
+    /** Scratch array of the points of one list, used by Converters.Mat_to_vector_vector_Point */
+    int[] scratch;
+
+    /**
+     * Constructor with room for 16 lists and 256 points
+     */
+    public PackedPoints() {
+        this(16, 256);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param listCapacity Initial number of lists
+     * @param pointCapacity Initial number of points of all lists
+     */
+    public PackedPoints(int listCapacity, int pointCapacity) {
+        points = new int[Math.max(pointCapacity, 1) * 2];
+        offsets = new int[Math.max(listCapacity, 1) + 1];
+    }
+
+    /**
+     * Remove all lists, keeping the arrays
+     */
+    public void clear() {
+        count = 0;
+        offsets[0] = 0;
+    }
+
+    /**
+     * Acquire the number of point lists
+     * @return Number of lists
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Acquire the number of points in all lists
+     * @return Number of points
+     */
+    public int totalPoints() {
+        return offsets[count];
+    }
+
+    /**
+     * Acquire the first point of a list; the x of point p is points()[2 * p]
+     * @param i Index of the list
+     * @return Index of the first point of the list
+     */
+    public int start(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * Acquire the end of a list
+     * @param i Index of the list
+     * @return Index after the last point of the list
+     */
+    public int end(int i) {
+        return offsets[i + 1];
+    }
+
+    /**
+     * Acquire the length of a list
+     * @param i Index of the list
+     * @return Number of points in the list
+     */
+    public int size(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * Acquire the points of all lists
+     * @return Interleaved x, y of all points; only the first 2 * totalPoints() ints are valid
+     */
+    public int[] points() {
+        return points;
+    }
+
+    /**
+     * Append a list
+     * @param xy Points as interleaved x, y
+     * @param n Number of points of xy to append
+     */
+    public void add(int[] xy, int n) {
+        int start = offsets[count];
+        if ((start + n) * 2 > points.length)
+            points = Arrays.copyOf(points, Math.max((start + n) * 2, points.length * 2));
+        if (count + 2 > offsets.length)
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        System.arraycopy(xy, 0, points, start * 2, n * 2);
+        offsets[count + 1] = start + n;
+        count++;
+    }
+}